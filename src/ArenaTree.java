@@ -0,0 +1,375 @@
+//package MCTS;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * A Monte Carlo tree whose nodes, edges, and table are held outside the Java heap in TreeArenas, so its size is
+ * limited by disk and page cache rather than -Xmx, and the garbage collector never scans it (see IdTree for its
+ * operations).
+ * <p>
+ * Each node and each edge is a fixed-size record, and the arenas grow by whole segments as records are needed. The
+ * arenas are only released by compact (or close), so the tree is compacted after each real move: the game loop
+ * keeps only the subtree of the new position (see afterMove). The bytes in use and the compactions are counted with
+ * the other statistics of the tree (see SearchTree).
+ * <p>
+ * Select it for a game with the tree=arena argument of MonteCarloTreeSearch, and arenaDir to map the arenas onto
+ * files in a directory instead of direct memory.
+ */
+
+public class ArenaTree extends IdTree {
+
+	/*
+	 * The fields of a node record: the score, times reached, parents, first edge (or the next free node), depth,
+	 * edge count, solved action and value, and leaf flag, then the state words.
+	 */
+
+	private static final int NODE_SCORE = 0;
+	private static final int NODE_REACHED = 4;
+	private static final int NODE_PARENTS = 8;
+	private static final int NODE_FIRST = 12;
+	private static final int NODE_DEPTH = 16;
+	private static final int NODE_COUNT = 18;
+	private static final int NODE_SOLVED_ACTION = 20;
+	private static final int NODE_SOLVED_VALUE = 22;
+	private static final int NODE_LEAF = 23;
+	private static final int NODE_BITS = 24;
+
+	/*
+	 * The fields of an edge record: the rewards, child (or the next free run), times chosen, and action.
+	 */
+
+	private static final int EDGE_REWARDS = 0;
+	private static final int EDGE_CHILD = 8;
+	private static final int EDGE_CHOSEN = 12;
+	private static final int EDGE_ACTION = 16;
+	private static final int EDGE_BYTES = 24;
+
+	/**
+	 * The directory of the arena files, or null for direct memory.
+	 */
+	private final File directory;
+
+	/**
+	 * The size of the arena segments in bytes.
+	 */
+	private final int segmentBytes;
+
+	/**
+	 * The size of a node record in bytes.
+	 */
+	private final int nodeBytes;
+
+	/**
+	 * The node records.
+	 */
+	private TreeArena nodes;
+
+	/**
+	 * The edge records.
+	 */
+	private TreeArena edges;
+
+	/**
+	 * The table slots, or null before the table is sized.
+	 */
+	private TreeArena slots;
+
+	/**
+	 * Constructor for the ArenaTree.
+	 *
+	 * @param game
+	 *            MCGame to be used by this tree.
+	 * @param state
+	 *            The state of the root node.
+	 * @param stateWords
+	 *            The number of 64-bit words in a state of the game.
+	 * @param directory
+	 *            The directory of the arena files, or null to hold the tree in direct memory.
+	 * @throws IOException
+	 *             If the arena files cannot be created.
+	 */
+	public ArenaTree(MCGame game, GameState state, int stateWords, File directory) throws IOException {
+		this(game, state, stateWords, directory, TreeArena.SEGMENT_BYTES);
+	}
+
+	/**
+	 * Constructor for the ArenaTree.
+	 *
+	 * @param game
+	 *            MCGame to be used by this tree.
+	 * @param state
+	 *            The state of the root node.
+	 * @param stateWords
+	 *            The number of 64-bit words in a state of the game.
+	 * @param directory
+	 *            The directory of the arena files, or null to hold the tree in direct memory.
+	 * @param segmentBytes
+	 *            The size of the arena segments in bytes.
+	 * @throws IOException
+	 *             If the arena files cannot be created.
+	 */
+	public ArenaTree(MCGame game, GameState state, int stateWords, File directory, int segmentBytes)
+			throws IOException {
+		super(game, stateWords, state instanceof GameStateScored);
+
+		this.directory = directory;
+		this.segmentBytes = segmentBytes;
+		this.nodeBytes = NODE_BITS + 8 * stateWords;
+
+		nodes = new TreeArena(nodeBytes, segmentBytes, directory);
+		edges = new TreeArena(EDGE_BYTES, segmentBytes, directory);
+		sizeTable();
+
+		root = addNode(state, 0);
+	}
+
+	/**
+	 * Constructor for an empty ArenaTree with the settings of another (see emptyCopy).
+	 *
+	 * @param tree
+	 *            The tree.
+	 * @throws IOException
+	 *             If the arena files cannot be created.
+	 */
+	private ArenaTree(ArenaTree tree) throws IOException {
+		super(tree.game, tree.stateWords, tree.scored);
+
+		this.directory = tree.directory;
+		this.segmentBytes = tree.segmentBytes;
+		this.nodeBytes = tree.nodeBytes;
+
+		nodes = new TreeArena(nodeBytes, segmentBytes, directory);
+		edges = new TreeArena(EDGE_BYTES, segmentBytes, directory);
+	}
+
+	@Override
+	protected void ensureNodes(int count) {
+		nodes.ensure(count);
+	}
+
+	@Override
+	protected void ensureEdges(int count) {
+		edges.ensure(count);
+	}
+
+	@Override
+	protected void allocateTable(int size) {
+		if (slots != null) {
+			slots.close();
+		}
+
+		try {
+			slots = new TreeArena(4, segmentBytes, directory);
+		} catch (IOException e) {
+			throw new IllegalStateException("cannot create the table", e);
+		}
+
+		slots.ensure(size);
+	}
+
+	@Override
+	protected int getSlot(int slot) {
+		return slots.getInt(slot, 0);
+	}
+
+	@Override
+	protected void setSlot(int slot, int entry) {
+		slots.putInt(slot, 0, entry);
+	}
+
+	@Override
+	protected long getBits(int node, int word) {
+		return nodes.getLong(node, NODE_BITS + 8 * word);
+	}
+
+	@Override
+	protected void setBits(int node, int word, long value) {
+		nodes.putLong(node, NODE_BITS + 8 * word, value);
+	}
+
+	@Override
+	protected int getScore(int node) {
+		return nodes.getInt(node, NODE_SCORE);
+	}
+
+	@Override
+	protected void setScore(int node, int score) {
+		nodes.putInt(node, NODE_SCORE, score);
+	}
+
+	@Override
+	public int getTimesReached(int node) {
+		return nodes.getInt(node, NODE_REACHED);
+	}
+
+	@Override
+	protected void setTimesReached(int node, int reached) {
+		nodes.putInt(node, NODE_REACHED, reached);
+	}
+
+	@Override
+	public int getDepth(int node) {
+		return nodes.getShort(node, NODE_DEPTH);
+	}
+
+	@Override
+	protected void setDepth(int node, int depth) {
+		nodes.putShort(node, NODE_DEPTH, (short) depth);
+	}
+
+	@Override
+	public int getParents(int node) {
+		return nodes.getInt(node, NODE_PARENTS);
+	}
+
+	@Override
+	protected void setParents(int node, int count) {
+		nodes.putInt(node, NODE_PARENTS, count);
+	}
+
+	@Override
+	protected int getFirstEdge(int node) {
+		return nodes.getInt(node, NODE_FIRST);
+	}
+
+	@Override
+	protected void setFirstEdge(int node, int edge) {
+		nodes.putInt(node, NODE_FIRST, edge);
+	}
+
+	@Override
+	protected int getEdgeCount(int node) {
+		return nodes.getShort(node, NODE_COUNT);
+	}
+
+	@Override
+	protected void setEdgeCount(int node, int count) {
+		nodes.putShort(node, NODE_COUNT, (short) count);
+	}
+
+	@Override
+	public boolean isLeaf(int node) {
+		return nodes.getByte(node, NODE_LEAF) != 0;
+	}
+
+	@Override
+	protected void setLeaf(int node, boolean value) {
+		nodes.putByte(node, NODE_LEAF, (byte) (value ? 1 : 0));
+	}
+
+	@Override
+	protected int getSolvedAction(int node) {
+		return nodes.getShort(node, NODE_SOLVED_ACTION);
+	}
+
+	@Override
+	protected void setSolvedAction(int node, int action) {
+		nodes.putShort(node, NODE_SOLVED_ACTION, (short) action);
+	}
+
+	@Override
+	protected int getSolvedValue(int node) {
+		return nodes.getByte(node, NODE_SOLVED_VALUE);
+	}
+
+	@Override
+	protected void setSolvedValue(int node, int value) {
+		nodes.putByte(node, NODE_SOLVED_VALUE, (byte) value);
+	}
+
+	@Override
+	protected int getAction(int edge) {
+		return edges.getShort(edge, EDGE_ACTION);
+	}
+
+	@Override
+	protected void setAction(int edge, int action) {
+		edges.putShort(edge, EDGE_ACTION, (short) action);
+	}
+
+	@Override
+	protected int getChild(int edge) {
+		return edges.getInt(edge, EDGE_CHILD);
+	}
+
+	@Override
+	protected void setChild(int edge, int child) {
+		edges.putInt(edge, EDGE_CHILD, child);
+	}
+
+	@Override
+	protected int getChosen(int edge) {
+		return edges.getInt(edge, EDGE_CHOSEN);
+	}
+
+	@Override
+	protected void setChosen(int edge, int chosen) {
+		edges.putInt(edge, EDGE_CHOSEN, chosen);
+	}
+
+	@Override
+	protected double getEdgeRewards(int edge) {
+		return edges.getDouble(edge, EDGE_REWARDS);
+	}
+
+	@Override
+	protected void setEdgeRewards(int edge, double value) {
+		edges.putDouble(edge, EDGE_REWARDS, value);
+	}
+
+	@Override
+	protected int getNodeBytes() {
+		return nodeBytes;
+	}
+
+	@Override
+	protected int getEdgeBytes() {
+		return EDGE_BYTES;
+	}
+
+	@Override
+	public long getAllocatedBytes() {
+		return nodes.getBytes() + edges.getBytes() + slots.getBytes();
+	}
+
+	@Override
+	protected IdTree emptyCopy() {
+		try {
+			return new ArenaTree(this);
+		} catch (IOException e) {
+			throw new IllegalStateException("cannot create the arenas", e);
+		}
+	}
+
+	@Override
+	protected void adopt(IdTree copy) {
+		ArenaTree tree = (ArenaTree) copy;
+
+		close();
+
+		nodes = tree.nodes;
+		edges = tree.edges;
+		slots = tree.slots;
+	}
+
+	/**
+	 * Keeps only the subtree of the new position, releasing the arenas of the old tree.
+	 */
+	@Override
+	public void afterMove(TreePath position) {
+		Path path = (Path) position;
+
+		path.reset(compact(path.getNode()));
+	}
+
+	/**
+	 * Releases the arenas and deletes their files. The tree must not be used afterwards.
+	 */
+	@Override
+	public void close() {
+		nodes.close();
+		edges.close();
+		slots.close();
+	}
+}
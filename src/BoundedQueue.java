@@ -0,0 +1,147 @@
+//package MCTS;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A bounded queue which any number of threads may add to and take from at once, without locking. Used to connect
+ * the stages of a PipelinedSearch.
+ * <p>
+ * The elements are held in a ring of slots. Each slot has a sequence number which tells whether it is ready to be
+ * filled for a given position of the tail or to be emptied for a given position of the head, so a thread claims a
+ * slot with a single compareAndSet on the tail (or head) and then fills (or empties) it. offer and poll never wait:
+ * they fail if the queue is full or empty.
+ *
+ * @param <E>
+ *            The type of the elements.
+ */
+
+public class BoundedQueue<E> {
+
+	/**
+	 * The elements. Empty slots are null.
+	 */
+	private final AtomicReferenceArray<E> items;
+
+	/**
+	 * The sequence number of each slot: its position when it is ready to be filled, or its position plus one when it
+	 * is ready to be emptied.
+	 */
+	private final AtomicLongArray sequences;
+
+	/**
+	 * The number of slots minus one (the capacity is a power of two).
+	 */
+	private final int mask;
+
+	/**
+	 * The position of the next element to be added.
+	 */
+	private final AtomicLong tail = new AtomicLong();
+
+	/**
+	 * The position of the next element to be taken.
+	 */
+	private final AtomicLong head = new AtomicLong();
+
+	/**
+	 * Constructor for the BoundedQueue.
+	 *
+	 * @param capacity
+	 *            The largest number of elements. Rounded up to a power of two.
+	 */
+	public BoundedQueue(int capacity) {
+		int slots = Integer.highestOneBit(Math.max(capacity, 2) - 1) << 1;
+
+		items = new AtomicReferenceArray<E>(slots);
+		sequences = new AtomicLongArray(slots);
+		mask = slots - 1;
+
+		for (int i = 0; i < slots; i++) {
+			sequences.set(i, i);
+		}
+	}
+
+	/**
+	 * Adds an element at the tail of the queue if there is room.
+	 *
+	 * @param item
+	 *            The element. Must not be null.
+	 * @return True if the element was added, false if the queue is full.
+	 */
+	public boolean offer(E item) {
+		long position = tail.get();
+
+		while (true) {
+			int slot = (int) position & mask;
+			long difference = sequences.get(slot) - position;
+
+			if (difference == 0) {
+				if (tail.compareAndSet(position, position + 1)) {
+					items.set(slot, item);
+					sequences.lazySet(slot, position + 1);
+					return true;
+				}
+
+				position = tail.get();
+			} else if (difference < 0) {
+				/* the slot still holds the element of the previous lap */
+				return false;
+			} else {
+				position = tail.get();
+			}
+		}
+	}
+
+	/**
+	 * Takes the element at the head of the queue if there is one.
+	 *
+	 * @return The element, or null if the queue is empty.
+	 */
+	public E poll() {
+		long position = head.get();
+
+		while (true) {
+			int slot = (int) position & mask;
+			long difference = sequences.get(slot) - (position + 1);
+
+			if (difference == 0) {
+				if (head.compareAndSet(position, position + 1)) {
+					E item = items.get(slot);
+
+					items.set(slot, null);
+					sequences.lazySet(slot, position + mask + 1);
+					return item;
+				}
+
+				position = head.get();
+			} else if (difference < 0) {
+				/* the slot has not been filled yet */
+				return null;
+			} else {
+				position = head.get();
+			}
+		}
+	}
+
+	/**
+	 * Gets the number of elements in the queue. Only exact while no other thread uses the queue.
+	 *
+	 * @return The number of elements.
+	 */
+	public int size() {
+		long size = tail.get() - head.get();
+
+		return (int) Math.max(0, Math.min(size, mask + 1));
+	}
+
+	/**
+	 * Gets the largest number of elements.
+	 *
+	 * @return The capacity of the queue.
+	 */
+	public int capacity() {
+		return mask + 1;
+	}
+}
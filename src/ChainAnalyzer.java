@@ -0,0 +1,547 @@
+//package MCTS;
+
+import java.util.Arrays;
+
+/**
+ * Finds the chains and loops of a Dots and Boxes position.
+ * <p>
+ * A box is in a chain or loop when exactly two of its sides are free. Two such boxes are linked when they share a
+ * free side. A chain is a maximal path of linked boxes which ends, at both ends, in a free side leading to the edge of
+ * the board or to a box without exactly two free sides. A loop is a cycle of linked boxes. Lengths are counted in
+ * boxes.
+ * <p>
+ * The boxes with two free sides are kept in a bitset. Chains are walked from their ends and loops from any remaining
+ * box, clearing each box as it is visited, so the analysis is iterative and allocates nothing. The values of sets of
+ * components already searched are remembered in a fixed open-addressing table of primitive keys, which is cleared
+ * when it becomes half full. An analyzer is tied to one board size and is not thread-safe.
+ * <p>
+ * When every unfinished box is in a chain of at least three boxes or a loop (of at least four), the player to move
+ * must open one of them, and the value of the position follows from chain theory (see getEndgameValue).
+ */
+
+public class ChainAnalyzer {
+
+	/**
+	 * Returned by getEndgameValue when the position is not made only of long chains and loops.
+	 */
+	public static final int NOT_ENDGAME = Integer.MIN_VALUE;
+
+	/**
+	 * The number of slots of the table of remembered values. Must be a power of two.
+	 */
+	private static final int MEMO_SLOTS = 4096;
+
+	/**
+	 * The game (board) analyzed.
+	 */
+	private final DotsAndBoxes game;
+
+	/**
+	 * The number of boxes on the board.
+	 */
+	private final int boxes;
+
+	/**
+	 * The state bit of each side of each box. Position (box * 4 + side).
+	 */
+	private final int[] sideBits;
+
+	/**
+	 * The box on the other side of each side of each box, or -1 for the edge of the board. Position (box * 4 + side).
+	 */
+	private final int[] across;
+
+	/**
+	 * The free sides of each box in the last position analyzed, as a 4-bit mask.
+	 */
+	private final int[] freeSides;
+
+	/**
+	 * The boxes with two free sides which have not been visited yet.
+	 */
+	private final long[] remaining;
+
+	/**
+	 * The boxes with two free sides, as they were before any were visited.
+	 */
+	private final long[] linked;
+
+	/**
+	 * The number of boxes with each number of free sides (0 - 4) in the last position analyzed.
+	 */
+	private final int[] boxCounts = new int[5];
+
+	/**
+	 * The number of chains found in the last position analyzed.
+	 */
+	private int chainCount;
+
+	/**
+	 * The number of loops found in the last position analyzed.
+	 */
+	private int loopCount;
+
+	/**
+	 * The words of the state being analyzed, lowest word first.
+	 */
+	private final long[] words;
+
+	/**
+	 * The lengths of the chains found by getEndgameValue.
+	 */
+	private final int[] chainBuffer;
+
+	/**
+	 * The lengths of the loops found by getEndgameValue.
+	 */
+	private final int[] loopBuffer;
+
+	/**
+	 * The components left at each depth of the endgame search, as sorted codes (length * 2, plus 1 for a loop).
+	 */
+	private final int[][] levels;
+
+	/**
+	 * The key of each slot of the table of remembered values: the codes of a set of components already searched,
+	 * packed one per byte, or 0 for an empty slot (no code is 0).
+	 */
+	private final long[] memoKeys = new long[MEMO_SLOTS];
+
+	/**
+	 * The value of the set of components in each slot of the table of remembered values.
+	 */
+	private final int[] memoValues = new int[MEMO_SLOTS];
+
+	/**
+	 * The number of filled slots of the table of remembered values.
+	 */
+	private int memoSize = 0;
+
+	/**
+	 * Constructor for the ChainAnalyzer.
+	 *
+	 * @param game
+	 *            The game (board) to analyze.
+	 */
+	public ChainAnalyzer(DotsAndBoxes game) {
+		this.game = game;
+		this.boxes = game.boxEdges.length;
+		this.sideBits = new int[boxes * 4];
+		this.across = new int[boxes * 4];
+		this.freeSides = new int[boxes];
+		this.remaining = new long[(boxes + 63) >>> 6];
+		this.linked = new long[remaining.length];
+		this.words = new long[game.stateWords];
+		this.chainBuffer = new int[boxes];
+		this.loopBuffer = new int[boxes / 4 + 1];
+		this.levels = new int[boxes / 3 + 2][boxes / 3 + 1];
+
+		for (int b = 0; b < boxes; b++) {
+			for (int s = 0; s < 4; s++) {
+				int edge = game.boxEdges[b][s];
+				int other = -1;
+
+				for (int box : game.edgeBoxes[edge]) {
+					if (box != b) {
+						other = box;
+					}
+				}
+
+				sideBits[b * 4 + s] = game.edges - edge - 1;
+				across[b * 4 + s] = other;
+			}
+		}
+	}
+
+	/**
+	 * Checks whether this analyzer can be used for a game.
+	 *
+	 * @param other
+	 *            The game.
+	 * @return True if the game is played on a board of the same size.
+	 */
+	public boolean fits(DotsAndBoxes other) {
+		return other.height == game.height && other.width == game.width;
+	}
+
+	/**
+	 * Finds the chains and loops of a position.
+	 *
+	 * @param state
+	 *            The state of the board.
+	 * @param chains
+	 *            Receives the length of each chain. Must hold at least as many entries as there are boxes.
+	 * @param loops
+	 *            Receives the length of each loop. Must hold at least a quarter as many entries as there are boxes.
+	 */
+	public void analyze(GameState state, int[] chains, int[] loops) {
+		for (int w = 0; w < words.length; w++) {
+			words[w] = state.getWord(w);
+		}
+
+		analyze(words, chains, loops);
+	}
+
+	/**
+	 * Finds the chains and loops of a position.
+	 *
+	 * @param state
+	 *            The words of the state of the board, lowest word first.
+	 * @param chains
+	 *            Receives the length of each chain. Must hold at least as many entries as there are boxes.
+	 * @param loops
+	 *            Receives the length of each loop. Must hold at least a quarter as many entries as there are boxes.
+	 */
+	public void analyze(long[] state, int[] chains, int[] loops) {
+		chainCount = 0;
+		loopCount = 0;
+
+		for (int i = 0; i < boxCounts.length; i++) {
+			boxCounts[i] = 0;
+		}
+
+		for (int w = 0; w < remaining.length; w++) {
+			remaining[w] = 0;
+		}
+
+		/* the free sides of each box */
+		for (int b = 0; b < boxes; b++) {
+			int free = 0;
+
+			for (int s = 0; s < 4; s++) {
+				int bit = sideBits[b * 4 + s];
+
+				if (((state[bit >>> 6] >>> bit) & 1L) == 0) {
+					free |= 1 << s;
+				}
+			}
+
+			freeSides[b] = free;
+			int count = Integer.bitCount(free);
+			boxCounts[count]++;
+
+			if (count == 2) {
+				remaining[b >>> 6] |= 1L << b;
+			}
+		}
+
+		System.arraycopy(remaining, 0, linked, 0, remaining.length);
+
+		/* walk every chain from one of its ends */
+		for (int w = 0; w < linked.length; w++) {
+			for (long bits = linked[w]; bits != 0; bits &= bits - 1) {
+				int box = (w << 6) + Long.numberOfTrailingZeros(bits);
+
+				if (isRemaining(box)) {
+					int outlet = getOutlet(box);
+
+					if (outlet >= 0) {
+						chains[chainCount] = walk(box, outlet, -1);
+						chainCount++;
+					}
+				}
+			}
+		}
+
+		/* the boxes left form loops */
+		for (int w = 0; w < remaining.length; w++) {
+			while (remaining[w] != 0) {
+				int box = (w << 6) + Long.numberOfTrailingZeros(remaining[w]);
+
+				loops[loopCount] = walk(box, Integer.numberOfTrailingZeros(freeSides[box]), box);
+				loopCount++;
+			}
+		}
+	}
+
+	/**
+	 * Finds the value of a position made only of long chains and loops. The player to move must open a chain or
+	 * loop. The opponent then either takes every box and moves next, or takes all but two boxes of a chain (all but
+	 * four of a loop) and gives those away to keep control, whichever is better for the opponent.
+	 *
+	 * @param state
+	 *            The state of the board.
+	 * @return The net score the player to move will gain from here under perfect play, or NOT_ENDGAME if some
+	 *         unfinished box is not in a chain of at least three boxes or a loop.
+	 */
+	public int getEndgameValue(GameState state) {
+		for (int w = 0; w < words.length; w++) {
+			words[w] = state.getWord(w);
+		}
+
+		return getEndgameValue(words);
+	}
+
+	/**
+	 * Finds the value of a position made only of long chains and loops. @see getEndgameValue(GameState)
+	 *
+	 * @param state
+	 *            The words of the state of the board, lowest word first.
+	 * @return The net score the player to move will gain from here under perfect play, or NOT_ENDGAME.
+	 */
+	public int getEndgameValue(long[] state) {
+		analyze(state, chainBuffer, loopBuffer);
+
+		if (!isSimple()) {
+			return NOT_ENDGAME;
+		}
+
+		int[] codes = levels[0];
+		int count = 0;
+
+		for (int i = 0; i < chainCount; i++) {
+			if (chainBuffer[i] < 3) {
+				return NOT_ENDGAME;
+			}
+
+			codes[count] = chainBuffer[i] * 2;
+			count++;
+		}
+
+		for (int i = 0; i < loopCount; i++) {
+			codes[count] = loopBuffer[i] * 2 + 1;
+			count++;
+		}
+
+		/* insertion sort, so equal sets of components have equal codes */
+		for (int i = 1; i < count; i++) {
+			int code = codes[i];
+			int j = i - 1;
+
+			for (; j >= 0 && codes[j] > code; j--) {
+				codes[j + 1] = codes[j];
+			}
+
+			codes[j + 1] = code;
+		}
+
+		return solve(0, count);
+	}
+
+	/**
+	 * Finds the value of a set of long chains and loops for the player who must open one of them.
+	 *
+	 * @param depth
+	 *            The index in levels of the sorted codes of the components.
+	 * @param count
+	 *            The number of components.
+	 * @return The net score the player to move will gain under perfect play.
+	 */
+	private int solve(int depth, int count) {
+		if (count == 0) {
+			return 0;
+		}
+
+		int[] codes = levels[depth];
+		long key = 0;
+
+		/* sets of up to eight short components are remembered */
+		if (count <= 8 && codes[count - 1] < 256) {
+			for (int i = 0; i < count; i++) {
+				key = (key << 8) | codes[i];
+			}
+
+			int slot = find(key);
+
+			if (memoKeys[slot] == key) {
+				return memoValues[slot];
+			}
+		}
+
+		int[] next = levels[depth + 1];
+		int best = Integer.MIN_VALUE;
+
+		for (int i = 0; i < count; i++) {
+			/* opening either of two equal components is the same */
+			if (i > 0 && codes[i] == codes[i - 1]) {
+				continue;
+			}
+
+			int index = 0;
+
+			for (int j = 0; j < count; j++) {
+				if (j != i) {
+					next[index] = codes[j];
+					index++;
+				}
+			}
+
+			int rest = solve(depth + 1, count - 1);
+			int length = codes[i] >> 1;
+			int kept = (codes[i] & 1) == 1 ? 8 : 4;
+
+			/* the opponent takes everything, or keeps control by giving two boxes (four for a loop) back */
+			int value = Math.min(-length - rest, kept - length + rest);
+
+			if (value > best) {
+				best = value;
+			}
+		}
+
+		if (key != 0) {
+			remember(key, best);
+		}
+
+		return best;
+	}
+
+	/**
+	 * Finds the slot of the table of remembered values holding a key.
+	 *
+	 * @param key
+	 *            The packed codes of a set of components.
+	 * @return The slot holding the key, or the empty slot ending its probe sequence.
+	 */
+	private int find(long key) {
+		long hash = GameState.mix(key);
+		int slot = (int) (hash ^ (hash >>> 32)) & (MEMO_SLOTS - 1);
+
+		while (memoKeys[slot] != 0 && memoKeys[slot] != key) {
+			slot = (slot + 1) & (MEMO_SLOTS - 1);
+		}
+
+		return slot;
+	}
+
+	/**
+	 * Remembers the value of a set of components. The table is cleared first if it is half full, so it never grows.
+	 *
+	 * @param key
+	 *            The packed codes of the set of components.
+	 * @param value
+	 *            The value of the set.
+	 */
+	private void remember(long key, int value) {
+		if (memoSize >= MEMO_SLOTS / 2) {
+			Arrays.fill(memoKeys, 0);
+			memoSize = 0;
+		}
+
+		int slot = find(key);
+
+		if (memoKeys[slot] != key) {
+			memoKeys[slot] = key;
+			memoSize++;
+		}
+
+		memoValues[slot] = value;
+	}
+
+	/**
+	 * Checks whether a box has two free sides and has not been visited.
+	 *
+	 * @param box
+	 *            The box.
+	 * @return True if the box is still to be visited.
+	 */
+	private boolean isRemaining(int box) {
+		return ((remaining[box >>> 6] >>> box) & 1L) != 0;
+	}
+
+	/**
+	 * Finds a free side of a box which does not lead to another box with two free sides.
+	 *
+	 * @param box
+	 *            A box with two free sides.
+	 * @return The side, or -1 if both free sides lead to such boxes.
+	 */
+	private int getOutlet(int box) {
+		for (int free = freeSides[box]; free != 0; free &= free - 1) {
+			int side = Integer.numberOfTrailingZeros(free);
+			int next = across[box * 4 + side];
+
+			if (next < 0 || Integer.bitCount(freeSides[next]) != 2) {
+				return side;
+			}
+		}
+
+		return -1;
+	}
+
+	/**
+	 * Walks a chain or loop, clearing each box visited.
+	 *
+	 * @param box
+	 *            The box to start from.
+	 * @param side
+	 *            The free side of the starting box through which the walk does not go.
+	 * @param stop
+	 *            The box at which a loop closes, or -1 for a chain.
+	 * @return The number of boxes visited.
+	 */
+	private int walk(int box, int side, int stop) {
+		int length = 0;
+
+		while (true) {
+			remaining[box >>> 6] &= ~(1L << box);
+			length++;
+
+			/* leave through the other free side */
+			int out = Integer.numberOfTrailingZeros(freeSides[box] & ~(1 << side));
+			int next = across[box * 4 + out];
+
+			if (next < 0 || next == stop || Integer.bitCount(freeSides[next]) != 2) {
+				return length;
+			}
+
+			/* the side of the next box which is shared with this one */
+			side = 0;
+
+			while (across[next * 4 + side] != box || sideBits[next * 4 + side] != sideBits[box * 4 + out]) {
+				side++;
+			}
+
+			box = next;
+		}
+	}
+
+	/**
+	 * Gets the number of chains found in the last position analyzed.
+	 *
+	 * @return The number of chains.
+	 */
+	public int getChainCount() {
+		return chainCount;
+	}
+
+	/**
+	 * Gets the number of loops found in the last position analyzed.
+	 *
+	 * @return The number of loops.
+	 */
+	public int getLoopCount() {
+		return loopCount;
+	}
+
+	/**
+	 * Gets the number of boxes with a given number of free sides in the last position analyzed.
+	 *
+	 * @param free
+	 *            The number of free sides (0 - 4).
+	 * @return The number of boxes.
+	 */
+	public int getBoxCount(int free) {
+		return boxCounts[free];
+	}
+
+	/**
+	 * Gets the free sides of a box in the last position analyzed.
+	 *
+	 * @param box
+	 *            The box.
+	 * @return The free sides as a mask, with bit s set if side s (in the order of DotsAndBoxes.boxEdges) is free.
+	 */
+	public int getFreeSides(int box) {
+		return freeSides[box];
+	}
+
+	/**
+	 * Checks whether every unfinished box in the last position analyzed has exactly two free sides, so that the
+	 * position consists only of chains and loops.
+	 *
+	 * @return True if the position consists only of chains and loops.
+	 */
+	public boolean isSimple() {
+		return boxCounts[1] == 0 && boxCounts[3] == 0 && boxCounts[4] == 0;
+	}
+}
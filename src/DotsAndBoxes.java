@@ -1,7 +1,7 @@
 //package MCTS;
 
-import java.math.BigInteger;
 import java.util.Arrays;
+import java.util.Hashtable;
 
 /**
  * A Dots and Boxes MCTSGame.
@@ -30,6 +30,10 @@ public class DotsAndBoxes extends MCGame{
 	 */
 	public int edges;
 	
+	/** The number of 64-bit words needed to hold a state of this board (1 when a state fits in a long).
+	 */
+	public int stateWords;
+	
 	/** A boolean which is true if the game uses scored states and false otherwise.
 	 */
 	public boolean scored;
@@ -48,15 +52,23 @@ public class DotsAndBoxes extends MCGame{
 	 */
 	public int[][] boxEdges;
 	
+	/** A 2D array of bitmasks used to detect completed boxes.
+	 *  Position i contains, for each box adjoining edge i (in the order of edgeBoxes[i]), stateWords words
+	 *  with the bits of the other three edges of that box set.
+	 */
+	public long[][] completionMasks;
+	
 	/** A 2D array which maps each edge (in square boards of size 1 - 9) to its position after a single rotation of the board.
 	 *  Position i contains the map for a square board of size i + 1.
 	 *  Position j in i contains an integer representing the edge which edge j will become after rotation.
+	 *  These hand-written tables are kept for reference only. The maps used by the game are generated by getSymmetryMap
+	 *  and checked against these tables by verifySymmetryTables.
 	 */
 	public static int[][] rotationMap = {
 		{2,0,3,1},
 		{4,9,1,6,11,3,8,0,5,10,2,7},
 		{6,13,20,2,9,16,23,5,12,19,1,8,15,22,4,11,18,0,7,14,21,3,10,17},
-		{8,17,26,35,3,12,21,30,39,7,16,23,34,2,11,20,29,38,6,15,24,33,1,10,19,28,37,5,14,23,32,0,9,18,27,36,4,13,22,31},
+		{8,17,26,35,3,12,21,30,39,7,16,25,34,2,11,20,29,38,6,15,24,33,1,10,19,28,37,5,14,23,32,0,9,18,27,36,4,13,22,31},
 		{10,21,32,43,54,4,15,26,37,48,59,9,20,31,42,53,3,14,25,36,47,58,8,19,30,41,52,2,13,24,35,46,57,7,18,29,40,51,1,12,23,34,45,56,6,17,28,39,50,0,11,22,33,44,55,5,16,27,38,49},
 		{12,25,38,51,64,77,5,18,31,44,57,70,83,11,24,37,50,63,76,4,17,30,43,56,69,82,10,23,36,49,62,75,3,16,29,42,55,68,81,9,22,35,48,61,74,2,15,28,41,54,67,80,8,21,34,47,60,73,1,14,27,40,53,66,79,7,20,33,46,59,72,0,13,26,39,52,65,78,6,19,32,45,58,71},
 		{14,29,44,59,74,89,104,6,21,36,51,66,81,96,111,13,28,43,58,73,88,103,5,20,35,50,65,80,95,110,12,27,42,57,72,87,102,4,19,34,49,64,79,94,109,11,26,41,56,71,86,101,3,18,33,48,63,78,93,108,10,25,40,55,70,85,100,2,17,32,47,62,77,92,107,9,24,39,54,69,84,99,1,16,31,46,61,76,91,106,8,23,38,53,68,83,98,0,15,30,45,60,75,90,105,7,22,37,52,67,82,97},
@@ -68,6 +80,8 @@ public class DotsAndBoxes extends MCGame{
 	/** A 2D array which maps each edge (in square boards of size 1 - 9) to its position after a reflection of the board.
 	 *  Position i contains the map for a square board of size i + 1.
 	 *  Position j in i contains an integer representing the edge which edge j will become after reflection.
+	 *  Kept for reference only (see rotationMap). The maps for sizes 1 and 4 are rotations by 180 degrees rather than
+	 *  reflections, and the maps for sizes 2 and 3 reflect top to bottom rather than left to right.
 	 */
 	public static int[][] reflectionMap = {
 		{3,2,1,0},
@@ -81,55 +95,98 @@ public class DotsAndBoxes extends MCGame{
 		{8,7,6,5,4,3,2,1,0,18,17,16,15,14,13,12,11,10,9,27,26,25,24,23,22,21,20,19,37,36,35,34,33,32,31,30,29,28,46,45,44,43,42,41,40,39,38,56,55,54,53,52,51,50,49,48,47,65,64,63,62,61,60,59,58,57,75,74,73,72,71,70,69,68,67,66,84,83,82,81,80,79,78,77,76,94,93,92,91,90,89,88,87,86,85,103,102,101,100,99,98,97,96,95,113,112,111,110,109,108,107,106,105,104,122,121,120,119,118,117,116,115,114,132,131,130,129,128,127,126,125,124,123,141,140,139,138,137,136,135,134,133,151,150,149,148,147,146,145,144,143,142,160,159,158,157,156,155,154,153,152,170,169,168,167,166,165,164,163,162,161,179,178,177,176,175,174,173,172,171}
 	};
 	
+	/** The symmetries of the board other than the identity, as maps of edges.
+	 *  Position j of each map contains the edge which becomes edge j under that symmetry.
+	 *  Square boards have 7 symmetries and rectangular boards have 3.
+	 */
+	public int[][] symmetryMaps;
+	
+	/** The canonicalizer which applies the symmetries of the board to states.
+	 */
+	public SymmetryCanonicalizer canonicalizer;
+	
+	/** Finds the chains and loops of states of this board. Not thread-safe.
+	 */
+	public ChainAnalyzer chainAnalyzer;
+	
+	/** The map of each edge to its position after a single rotation of the board (null on rectangular boards).
+	 */
+	private int[] rotation;
+	
+	/** The map of each edge to its position after a reflection of the board.
+	 */
+	private int[] reflection;
+	
+	/** The generated symmetry maps for each board size, keyed by "height x width". @see getSymmetryMaps
+	 */
+	private static Hashtable<String, int[][]> symmetryCache = new Hashtable<String, int[][]>();
+	
 	/**
-	 * Creates an array representing a map of edges to edges when rotating the board 90 degrees.
-	 * This works only on square boards.
+	 * Creates an array representing a map of edges to edges under a symmetry of the board.
+	 * The map is derived from the edge numbering of initializeEdgeToBoxMaps: each edge is turned into the two dots it
+	 * joins, the dots are rotated and reflected, and the transformed dots are turned back into an edge.
 	 * 
-	 * @param width The width of the board.
-	 * @return The map.
+	 * @param height The height (in boxes) of the board.
+	 * @param width The width (in boxes) of the board.
+	 * @param rotations The number of clockwise quarter turns. Must be even unless the board is square.
+	 * @param reflection True if the board is reflected left to right after the rotations.
+	 * @return The map. Position j contains the edge which edge j becomes.
 	 */
-	public static int[] getRotationMap(int width){
-		int[] map = new int[width * (width+1) * 2];
-		
-		int gap = (2*width + 1);
-	
-		//set the edges on the top, 0 - (width - 1)
-		for(int i = 0; i < width; i++){
-			map[i] = (i+1) * (2 * width) + i;
+	public static int[] getSymmetryMap(int height, int width, int rotations, boolean reflection){
+		if(height != width && rotations % 2 != 0){
+			throw new IllegalArgumentException("A rectangular board cannot be rotated by a quarter turn.");
 		}
 		
-		//set the edges in every other (horizontal) row
-		for(int i = 1; i <= width; i++){
+		int[] map = new int[(height * (width + 1)) + (width * (height + 1))];
+		int gap = (2 * width + 1);
+		
+		for(int edge = 0; edge < map.length; edge++){
+			int row = edge / gap;
+			int column = edge % gap;
+			
+			//the dots at either end of the edge, as {row, column}
+			int[][] dots;
 			
-			//set each edge in the row to the value of the above edge - 1
-			for(int b = 0; b < width; b++){
-				map[b + (gap * i)] = map[b + (gap * (i - 1))] - 1;
+			if(column < width){
+				dots = new int[][] {{row, column}, {row, column + 1}};
+			} else {
+				dots = new int[][] {{row, column - width}, {row + 1, column - width}};
 			}
-		}
-		
-		//set the edges in the first interior row
-		for(int i = width; i <= 2 * width; i++){
-			map[i] = (width - 1) + (2*width + 1) * (i - width);
-		}
-		
-		//set the edges in the other vertical rows
-		for(int i = 1; i < width; i++){
-			for(int b = 0; b <= width; b++){
-				map[b + (width + (i * 2 * width) + i)] = map[b + (width + ((i - 1) * 2 * width) + (i - 1))] - 1;
+			
+			for(int[] dot : dots){
+				for(int i = 0; i < rotations % 4; i++){
+					//a clockwise quarter turn of a square board
+					int r = dot[0];
+					dot[0] = dot[1];
+					dot[1] = (i % 2 == 0 ? height : width) - r;
+				}
+				
+				if(reflection){
+					dot[1] = width - dot[1];
+				}
+			}
+			
+			if(dots[0][0] == dots[1][0]){
+				map[edge] = gap * dots[0][0] + Math.min(dots[0][1], dots[1][1]);
+			} else {
+				map[edge] = gap * Math.min(dots[0][0], dots[1][0]) + width + dots[0][1];
 			}
 		}
 		
-		/*
-		System.out.print("{");
-		for(int i = 0; i < map.length; i++){
-			System.out.print(map[i] + ",");
-		}
-		System.out.print("}");
-		*/
-		
 		return map;
 	}
 	
+	/**
+	 * Creates an array representing a map of edges to edges when rotating the board 90 degrees.
+	 * This works only on square boards.
+	 * 
+	 * @param width The width of the board.
+	 * @return The map.
+	 */
+	public static int[] getRotationMap(int width){
+		return getSymmetryMap(width, width, 1, false);
+	}
+	
 	/**
 	 * Creates an array representing a map of edges to edges when reflecting the board.
 	 * This works only on square boards.
@@ -138,33 +195,56 @@ public class DotsAndBoxes extends MCGame{
 	 * @return The map.
 	 */
 	public static int[] getReflectionMap(int width){
-		int[] map = new int[width * (width+1) * 2];
-		
-		int gap = (2*width + 1);
+		return getSymmetryMap(width, width, 0, true);
+	}
+	
+	/**
+	 * Creates an array representing a map of edges to edges when mirroring a (possibly rectangular) board.
+	 * Mirroring both the rows and the columns is a rotation by 180 degrees.
+	 * Each of these maps is its own inverse.
+	 * 
+	 * @param height The height (in boxes) of the board.
+	 * @param width The width (in boxes) of the board.
+	 * @param flipRows True if the board is mirrored top to bottom.
+	 * @param flipColumns True if the board is mirrored left to right.
+	 * @return The map.
+	 */
+	public static int[] getMirrorMap(int height, int width, boolean flipRows, boolean flipColumns){
+		//mirroring the rows is a half turn followed by mirroring the columns
+		return getSymmetryMap(height, width, flipRows ? 2 : 0, flipRows != flipColumns);
+	}
+	
+	/**
+	 * Checks the generated maps against the hand-written tables (rotationMap and reflectionMap). Each rotation table
+	 * must be the generated rotation, and each reflection table must be one of the generated symmetries of the board
+	 * (some are half turns, see reflectionMap). Prints each table which does not pass.
+	 * 
+	 * @return True if every table passes, false otherwise.
+	 */
+	public static boolean verifySymmetryTables(){
+		boolean passed = true;
 		
-		for(int c = 0; c < width + 1; c++){
-			int start = gap * c;
-			for(int i = 0; i < width; i++){
-				map[i + start] = start + (width - i - 1);
+		for(int n = 1; n <= rotationMap.length; n++){
+			if(!Arrays.equals(rotationMap[n - 1], getRotationMap(n))){
+				System.out.println("rotationMap for " + n + "x" + n + " differs from the generated rotation.");
+				passed = false;
 			}
-		}
-		
-		for(int c = 0; c < width; c++){
-			int start = (width + (c * 2 * width) + c);
-			for(int i = 0; i < width + 1; i++){
-				map[i + (width + (c * 2 * width) + c)] = start + (width - i);
+			
+			boolean symmetry = false;
+			
+			for(int i = 1; i < 8; i++){
+				if(Arrays.equals(reflectionMap[n - 1], getSymmetryMap(n, n, i % 4, i >= 4))){
+					symmetry = true;
+				}
+			}
+			
+			if(!symmetry){
+				System.out.println("reflectionMap for " + n + "x" + n + " is not a symmetry of the board.");
+				passed = false;
 			}
 		}
 		
-		/*
-		System.out.print("{");
-		for(int i = 0; i < map.length; i++){
-			System.out.print(map[i] + ",");
-		}
-		System.out.print("}");
-		*/
-		
-		return map;
+		return passed;
 	}
 	
 	/**
@@ -182,14 +262,86 @@ public class DotsAndBoxes extends MCGame{
 		this.asymmetrical = asymmetrical;
 		this.scored = scored;
 		
-		if(height != width && asymmetrical){
-			System.out.println("Cannot remove symmetries on a rectangular board.");
-			asymmetrical = false;
-		}
-		
 		edges = (height * (width + 1)) + (width * (height + 1));
+		stateWords = (edges + 63) / 64;
 		
 		initializeEdgeToBoxMaps();
+		
+		if(height == width){
+			rotation = getRotationMap(width);
+		}
+		
+		reflection = getReflectionMap(height, width);
+		symmetryMaps = getSymmetryMaps(height, width);
+		canonicalizer = new SymmetryCanonicalizer(edges, symmetryMaps);
+		chainAnalyzer = new ChainAnalyzer(this);
+	}
+	
+	/**
+	 * Creates an array representing a map of edges to edges when reflecting a (possibly rectangular) board left to right.
+	 * 
+	 * @param height The height (in boxes) of the board.
+	 * @param width The width (in boxes) of the board.
+	 * @return The map.
+	 */
+	private static int[] getReflectionMap(int height, int width){
+		return getSymmetryMap(height, width, 0, true);
+	}
+	
+	/**
+	 * Gets the symmetries of a board as maps of edges. Position j of each map contains the edge which becomes edge j
+	 * under that symmetry. On a square board these are, in order, three rotations, one reflection, and three more
+	 * rotations (the order in which removeSymmetries originally visited them). A rectangular board has only the
+	 * rotation by 180 degrees and the two mirror images. The maps are generated once per board size and cached.
+	 * 
+	 * @param height The height (in boxes) of the board.
+	 * @param width The width (in boxes) of the board.
+	 * @return The maps of the symmetries other than the identity.
+	 */
+	public static int[][] getSymmetryMaps(int height, int width){
+		String size = height + "x" + width;
+		int[][] maps = symmetryCache.get(size);
+		
+		if(maps != null){
+			return maps;
+		}
+		
+		if(height != width){
+			maps = new int[][] {
+				getMirrorMap(height, width, true, true),
+				getMirrorMap(height, width, false, true),
+				getMirrorMap(height, width, true, false)
+			};
+		}
+		
+		else {
+			int edges = 2 * width * (width + 1);
+			int[] rotation = getRotationMap(width);
+			int[] reflection = getReflectionMap(width);
+			int[] current = new int[edges];
+			
+			for(int i = 0; i < edges; i++){
+				current[i] = i;
+			}
+			
+			maps = new int[7][];
+			
+			for(int i = 0; i < 7; i++){
+				int[] map = i == 3 ? reflection : rotation;
+				int[] next = new int[edges];
+				
+				for(int j = 0; j < edges; j++){
+					next[j] = current[map[j]];
+				}
+				
+				maps[i] = next;
+				current = next;
+			}
+		}
+		
+		symmetryCache.put(size, maps);
+		
+		return maps;
 	}
 	
 	/**
@@ -253,10 +405,26 @@ public class DotsAndBoxes extends MCGame{
 				edgeBoxes[i] = box;
 			}
 		}
+		
+		/* masks of the other three edges of each box adjoining each edge */
+		completionMasks = new long[edges][];
+		
+		for(int i = 0; i < edges; i++){
+			completionMasks[i] = new long[edgeBoxes[i].length * stateWords];
+			
+			for(int b = 0; b < edgeBoxes[i].length; b++){
+				for(int edge : boxEdges[edgeBoxes[i][b]]){
+					if(edge != i){
+						int bit = edges - edge - 1;
+						completionMasks[i][b * stateWords + (bit >>> 6)] |= 1L << bit;
+					}
+				}
+			}
+		}
 	}
 	
 	/**
-	 * Finds the position of an edge after transformation.
+	 * Finds the position of an edge after transformation. This works only on square boards.
 	 * 
 	 * @param  edge The starting edge.
 	 * @param  rotation The number of rotations to perform.
@@ -265,16 +433,77 @@ public class DotsAndBoxes extends MCGame{
 	 */
 	public int getTransformedAction(int edge, int rotation, boolean reflection){
 		for(int i = 0; i < rotation; i++){
-			edge = rotationMap[height - 1][edge];
+			edge = this.rotation[edge];
 		}
 		
 		if(reflection){
-			edge = reflectionMap[height - 1][edge];
+			edge = this.reflection[edge];
 		}
 		
 		return edge;
 	}
 
+	/**
+	 * Computes the Zobrist key of the image of a state under a transformation of the board.
+	 * The image contains edge getTransformedAction(e, rotation, reflection) for every edge e of the state.
+	 * 
+	 * @param  state The state to transform.
+	 * @param  rotation The number of rotations to perform.
+	 * @param  reflection True if the board is to be reflected.
+	 * @return The key of the transformed state (including the net score for scored states).
+	 */
+	public long getTransformedKey(GameState state, int rotation, boolean reflection){
+		long key = 0;
+		
+		for(int i = 0; i < edges; i++){
+			if(state.testBit(edges - i - 1)){
+				key ^= Zobrist.bitKey(edges - getTransformedAction(i, rotation, reflection) - 1);
+			}
+		}
+		
+		if(state instanceof GameStateScored){
+			key ^= Zobrist.scoreKey(((GameStateScored) state).playerNetScore);
+		}
+		
+		return key;
+	}
+	
+	/**
+	 * Computes the Zobrist keys of all images of a state under the symmetries of the board.
+	 * Position 0 holds the key of the state itself and position t + 1 holds the key of its image under symmetryMaps[t]
+	 * (8 keys on a square board, 4 on a rectangular one).
+	 * 
+	 * @param  state The state to transform.
+	 * @return The keys of the images of the state (including the net score for scored states).
+	 */
+	public long[] getSymmetryKeys(GameState state){
+		long[] keys = new long[symmetryMaps.length + 1];
+		
+		for(int i = 0; i < edges; i++){
+			if(state.testBit(edges - i - 1)){
+				keys[0] ^= Zobrist.bitKey(edges - i - 1);
+			}
+		}
+		
+		for(int t = 0; t < symmetryMaps.length; t++){
+			for(int j = 0; j < edges; j++){
+				if(state.testBit(edges - symmetryMaps[t][j] - 1)){
+					keys[t + 1] ^= Zobrist.bitKey(edges - j - 1);
+				}
+			}
+		}
+		
+		if(state instanceof GameStateScored){
+			long scoreKey = Zobrist.scoreKey(((GameStateScored) state).playerNetScore);
+			
+			for(int i = 0; i < keys.length; i++){
+				keys[i] ^= scoreKey;
+			}
+		}
+		
+		return keys;
+	}
+	
 	/**
 	 * Finds the number of boxes connected to the given edge which are complete (assuming the edge is taken).
 	 * 
@@ -282,17 +511,36 @@ public class DotsAndBoxes extends MCGame{
 	 * @param  state The state of the board.
 	 * @return The number of boxes connected to edge with n edges (0 - 2)
 	 */
-	// UZI fixed
 	public int completedBoxesForEdge(int edge, GameState state){
-		int[] boxes = boxPerEdge(edge, state);
-
-		if(boxes.length == 1){
-			return boxes[0] == 4 ? 1 : 0;
-		} else {
-			int res = boxes[0] == 4 ?  1 : 0;
-			res = res + (boxes[1] == 4 ? 1 : 0);
-			return res;
+		long[] masks = completionMasks[edge];
+		int completed = 0;
+		
+		if(stateWords == 1){
+			long bits = state.longState;
+			
+			for(int i = 0; i < masks.length; i++){
+				if((bits & masks[i]) == masks[i]){
+					completed++;
+				}
+			}
+			
+			return completed;
 		}
+		
+		/* a box is complete when every word of its mask is covered */
+		for(int i = 0; i < masks.length; i += stateWords){
+			boolean complete = true;
+			
+			for(int w = 0; w < stateWords && complete; w++){
+				complete = (state.getWord(w) & masks[i + w]) == masks[i + w];
+			}
+			
+			if(complete){
+				completed++;
+			}
+		}
+		
+		return completed;
 	}
 
 	
@@ -307,8 +555,6 @@ public class DotsAndBoxes extends MCGame{
 	public int[] boxPerEdge(int edge, GameState state){
 		int[] boxes = new int[edgeBoxes[edge].length];
 
-		String s = state.getBinaryString();
-
 		/* check each box attached to the edge */
 		for(int i = 0; i < edgeBoxes[edge].length; i++){			
 			int index = edgeBoxes[edge][i];
@@ -322,13 +568,7 @@ public class DotsAndBoxes extends MCGame{
 					continue;		
 				}
 
-				//edge not found
-				if(s.length() < edges - boxEdges[index][b]){
-					// this  box was not completed ==> stop checking it
-					break;
-				}
-
-				if(s.charAt(boxEdges[index][b] - (edges - s.length())) == '1'){
+				if(state.testBit(edges - boxEdges[index][b] - 1)){
 					boxes[i]++;
 				}
 			}
@@ -341,34 +581,22 @@ public class DotsAndBoxes extends MCGame{
 	 * Creates a 2D array which represents the edges of each box for a given state.
 	 * 
 	 * @param state The state of the board.
-	 * @return A 2D array representing the edges of each box.
+	 * @return A 2D array representing the edges of each box. Each entry holds the four edges of the box (in the order of boxEdges) as bits, the first edge being the most significant.
 	 */
-	public int[][] stateToBoard(GameState state){		
-		String str = state.getBinaryString();
-		int[] boxes = new int[width * height];
-		
-		int totalEdges = edgeBoxes.length;
-		int length = str.length();
-		
-		//add extra leading zeros
-		for(int i = 0; i < totalEdges - length; i++){
-			str = '0' + str;
-		}
-		
-		//get the orientation of the box as an integer
-		for(int i = 0; i < boxes.length; i++){
-			int[] edges = boxEdges[i];
-			
-			boxes[i] = Integer.parseInt("" + str.charAt(edges[0]) + str.charAt(edges[1]) + str.charAt(edges[2]) + str.charAt(edges[3]), 2);
-		}
-		
+	public int[][] stateToBoard(GameState state){
 		int[][] board = new int[width][height];
 		int index = 0;
 		
 		//change boxes into a 2D array board
-		for(int i = 0; i < board.length; i++){
-			for(int j = 0; j < board[0].length; j++){
-				board[j][i] = boxes[index];
+		for(int i = 0; i < height; i++){
+			for(int j = 0; j < width; j++){
+				int orientation = 0;
+				
+				for(int edge : boxEdges[index]){
+					orientation = (orientation << 1) | (state.testBit(edges - edge - 1) ? 1 : 0);
+				}
+				
+				board[j][i] = orientation;
 				index++;
 			}
 		}
@@ -377,202 +605,131 @@ public class DotsAndBoxes extends MCGame{
 	}
 	
 	/**
-	 * Finds the number and length of all loops and chains on the board.
+	 * Finds the number and length of all loops and chains on the board. @see ChainAnalyzer
 	 * 
 	 * @param state The state of the board.
 	 * @param width The width of the board (in boxes).
 	 * @param height The height of the board (in boxes).
-	 * @return A 2D array or all the chains and loops on a board.
+	 * @return A 2D array or all the chains and loops on a board. Position 0 holds the length of each chain and position 1 the length of each loop.
 	 */
 	public int[][] getChainsAndLoops(GameState state, int width, int height){
-		int[][] chainsAndLoops = new int[2][];
-		int[] chains = new int[(width * height) / 2];
+		int[] chains = new int[width * height];
 		int[] loops = new int[(width * height) / 4];
 		
-		int board[][] = stateToBoard(state);
-		
-		int cIndex = 0;
-		int lIndex = 0;
-		
-		boolean[][] visited = new boolean[width][height];
-		int length = 0;
-		
-		//check every square for intersections
-		for(int i = 0; i < board.length; i++){
-			for(int j = 0; j < board[0].length; j++){
-				//if it's unvisited, measure the chain
-				if(!visited[i][j]){
-					int orientation = board[i][j];
-					
-					//this is an intersection
-					if((orientation == 0 || orientation == 1 || orientation == 2 || orientation == 4 || orientation == 8)){
-						int[] intersection = measureIntersection(board, visited, i, j, 0);
-						
-						Arrays.sort(intersection);
-						
-						for(int b = 0; b < intersection.length - 2; b++){
-							chains[cIndex] = intersection[b];
-							cIndex++;
-						}
-						
-						//combine the last two chains
-						chains[cIndex] = intersection[intersection.length - 1] + intersection[intersection.length - 2] + 1;
-						cIndex++;
-					}
-				}
-			}
-		}
+		chainAnalyzer.analyze(state, chains, loops);
 		
-		//check every square
-		for(int i = 0; i < board.length; i++){
-			for(int j = 0; j < board[0].length; j++){
-				
-				//if it's unvisited, measure the chain
-				if(!visited[i][j]){
-					
-					length = measureChain(board, visited, i, j, 0, false);
-					
-					if(length < 0){
-						loops[lIndex] = -length;
-						lIndex++;
-					} else {
-						chains[cIndex] = length;
-						cIndex++;
-					}
-				}
-			}
-		}
-		
-		chainsAndLoops[0] = chains;
-		chainsAndLoops[1] = loops;
-		
-		return chainsAndLoops;
+		return new int[][] {Arrays.copyOf(chains, chainAnalyzer.getChainCount()), Arrays.copyOf(loops, chainAnalyzer.getLoopCount())};
 	}
 	
-	public int[] measureIntersection(int[][] board, boolean[][] visited, int i, int j, int depth){
-		int[] result;
-		int index = 0;
-		
-		int orientation = board[i][j];
-		
-		visited[i][j] = true;
-		
-		//this is a 3-way intersection
-		if(orientation == 1 || orientation == 2 || orientation == 4 || orientation == 8){
-			result = new int[3];
+	/**
+	 * Gets the possible actions for the game from a given state. Each free edge is a possible action. If the game uses asymmetrical states, this method returns only asymmetrical actions.
+	 * 
+	 * @param  state The state before the move is selected.
+	 * @return An integer array representing all possible moves from the given state.
+	 */
+	public int[] getActions(GameState state) {
+		if(asymmetrical){
+			return getActionsSymmetrical(state);
 		} else {
-			result = new int[4];
-		}
-		
-		//left
-		if((orientation == 0 || orientation == 1 || orientation == 2 || orientation == 8) && i > 0){
-			result[index] = measureChain(board, visited, i - 1, j, 0, true);
-			index++;
-		}
-		
-		//top
-		if((orientation == 0 || orientation == 1 || orientation == 2 || orientation == 4) && j > 0){
-			result[index] = measureChain(board, visited, i, j - 1, 0, true);
-			index++;
-		}
-		
-		//right
-		if((orientation == 0 || orientation == 1 || orientation == 4 || orientation == 8) && i < board.length - 1){
-			result[index] = measureChain(board, visited, i + 1, j, 0, true);
-			index++;
-		}
-		
-		//bottom
-		if((orientation == 0 || orientation == 2 || orientation == 4 || orientation == 8) && j < board[0].length - 1){
-			result[index] = measureChain(board, visited, i, j + 1, 0, true);
-			index++;
+			return getAllActions(state, edges);
 		}
-		
-		return result;
 	}
 	
 	/**
-	 * Measures the length of the chain or loop of which the given box is a part.
-	 * Assumes the box is a part of a chain or loop.
+	 * Gets the terminal state of the game, in which every edge is taken.
 	 * 
-	 * @param board A 2D array representing the edges in each box on the board. @see stateToBoard
-	 * @param visited A 2D array representing whether each box on the board has been counted already.
-	 * @param i The column index of the box.
-	 * @param j The row index of the box.
-	 * @param depth The depth in the search. Should be called with '0'.
-	 * @param intersection True if the given chain is part of an intersection.
-	 * @return The length of the chain or loop of which the box is a part. Negative values signify the box is part of a loop.
+	 * @return The state with all edges taken.
 	 */
-	public int measureChain(int[][] board, boolean[][] visited, int i, int j, int depth, boolean intersection){
-		
-		//this prevents recounting
-		if(visited[i][j]){
-			return 0;
-		}
-		
-		int orientation = board[i][j];
-		
-		//don't measure finished squares
-		if(orientation == 15){
-			return 0;
-		}
-		
-		//stop if this is an intersection
-		if((orientation == 0 || orientation == 1 || orientation == 2 || orientation == 4 || orientation == 8)){
-			return 0;
+	public GameState getTerminalState(){
+		if(stateWords == 1){
+			return new GameState(-1L >>> (64 - edges));
 		}
 		
-		visited[i][j] = true;
-		
-		int[] lengths = new int[2];
-		int index = 0;
+		long[] words = new long[stateWords];
 		
-		//left
-		if((orientation == 3 || orientation == 9 || orientation == 10) && i > 0){
-			lengths[index] += measureChain(board, visited, i - 1, j, depth + 1, intersection);
-			index++;
+		for(int i = 0; i < edges; i++){
+			words[i >>> 6] |= 1L << i;
 		}
 		
-		//top
-		if((orientation == 3 || orientation == 5 || orientation == 6) && j > 0){
-			lengths[index] += measureChain(board, visited, i, j - 1, depth + 1, intersection);
-			index++;
-		}
-		
-		//right
-		if((orientation == 5 || orientation == 9 || orientation == 12) && i < board.length - 1){
-			lengths[index] += measureChain(board, visited, i + 1, j, depth + 1, intersection);
-			index++;
-		}
+		return new GameState(words);
+	}
+	
+	/**
+	 * Gets the free edges in one word of a state as a mask. Bit b of word w stands for the action (edges - 64w - b - 1).
+	 * 
+	 * @param  state The state.
+	 * @param  edges The total number of edges on the board.
+	 * @param  word The index of the word (0 is the lowest).
+	 * @return The mask of the free edges in the word.
+	 */
+	public static long getFreeMask(GameState state, int edges, int word){
+		long free = ~state.getWord(word);
+		int bits = edges - (word << 6);
 		
-		//bottom
-		if((orientation == 6 || orientation == 10 || orientation == 12) && j < board[0].length - 1){
-			lengths[index] += measureChain(board, visited, i, j + 1, depth + 1, intersection);
-			index++;
-		}
+		return bits >= 64 ? free : free & ((1L << bits) - 1);
+	}
+	
+	/**
+	 * Gets the number of free edges (possible actions) in the given state.
+	 * 
+	 * @param  state The state.
+	 * @param  edges The total number of edges on the board.
+	 * @return The number of free edges.
+	 */
+	public static int getFreeEdgeCount(GameState state, int edges){
+		return edges - state.getBitCount();
+	}
+	
+	/**
+	 * Selects a single free edge without building the list of actions. Free edges are counted from the least
+	 * significant bit, so k = 0 is the free edge with the highest action number.
+	 * 
+	 * @param  state The state.
+	 * @param  edges The total number of edges on the board.
+	 * @param  k The index of the free edge, between 0 and getFreeEdgeCount(state, edges) - 1.
+	 * @return The action of the k-th free edge.
+	 */
+	public static int getFreeEdge(GameState state, int edges, int k){
+		int word = 0;
+		long free = getFreeMask(state, edges, 0);
+		int count = Long.bitCount(free);
 		
-		//if this is the first level and two sides were checked and one of the
-		//sides was already visited, return a negative to signify a loop
-		//does not happen when this is an intersection chain
-		if(depth == 0 && index == 2 && (lengths[1] == 0 || lengths[0] == 0) && !intersection){
-			return -(lengths[0] + 1);
+		//skip whole words
+		while(k >= count){
+			k -= count;
+			word++;
+			free = getFreeMask(state, edges, word);
+			count = Long.bitCount(free);
 		}
 		
-		return lengths[0] + lengths[1] + 1;		
+		return edges - (word << 6) - selectBit(free, k) - 1;
 	}
 	
 	/**
-	 * Gets the possible actions for the game from a given state. Each free edge is a possible action. If the game uses asymmetrical states, this method returns only asymmetrical actions.
+	 * Finds the k-th set bit of a word, counting from the least significant bit.
 	 * 
-	 * @param  state The state before the move is selected.
-	 * @return An integer array representing all possible moves from the given state.
+	 * @param  word The word. Must have more than k bits set.
+	 * @param  k The index of the set bit.
+	 * @return The position of the bit (0 is the least significant).
 	 */
-	public int[] getActions(GameState state) {
-		if(asymmetrical){
-			return getActionsSymmetrical(state);
-		} else {
-			return getAllActions(state, edges);
+	public static int selectBit(long word, int k){
+		//skip whole bytes
+		int shift = 0;
+		int count = Long.bitCount(word & 0xFF);
+		
+		while(k >= count){
+			k -= count;
+			shift += 8;
+			count = Long.bitCount((word >>> shift) & 0xFF);
 		}
+		
+		word >>>= shift;
+		
+		for(; k > 0; k--){
+			word &= word - 1;
+		}
+		
+		return shift + Long.numberOfTrailingZeros(word);
 	}
 	
 	/**
@@ -580,122 +737,50 @@ public class DotsAndBoxes extends MCGame{
 	 * 
 	 * @param  state The state before the move is selected.
 	 * @param  edges The total number of edges on the board.
-	 * @return An integer array representing all possible moves from the given state.
+	 * @return An integer array representing all possible moves from the given state, in increasing order.
 	 */
 	public static int[] getAllActions(GameState state, int edges){
-		int[] temp = new int[edges];
-		int index = 0;
+		int[] actions = new int[getFreeEdgeCount(state, edges)];
+		int index = actions.length;
 		
-		/* all zeros are possible actions*/
+		/* the lowest bits are the highest actions, so fill the array from the end */
 		
-		if(state.bigState != null){
-			for(int i = 0; i < edges; i++){
-				if(!state.bigState.testBit(edges - i - 1)){
-					temp[index] = i;
-					index++;
-				}
+		for(int w = 0; w < (edges + 63) >>> 6; w++){
+			for(long free = getFreeMask(state, edges, w); free != 0; free &= free - 1){
+				index--;
+				actions[index] = edges - (w << 6) - Long.numberOfTrailingZeros(free) - 1;
 			}
 		}
 		
-		else {
-			String binary = state.getBinaryString();
-	
-			/* all leading zeros are possible moves */
-			
-			int b = binary.length();
-			for (int i = 0; i < (edges - b); i++) {
-				temp[index] = i;
-				index++;
-			}
-	
-			/* check every digit */
-			for (int i = 0; i < b; i++) {
-				
-				/* add all zero indexes to temp*/
-				if (binary.charAt(i) == '0') {
-					temp[index] = i + (edges - b);
-					index++;
-				}
-			}
-		}
-
-		/* resize the array */
-		
-		int[] actions = new int[index];
-
-		for (int i = 0; i < index; i++) {
-			actions[i] = temp[i];
-		}
-		
 		return actions;
 	}
 	
 	/**
 	 * Gets all the possible asymmetrical actions from the given state. Each free edge is a possible action. Each asymmetrical action leads to a asymmetrical state.
+	 * <p>
+	 * The symmetries which fix the state are found once. Two free edges which one of those symmetries maps onto each
+	 * other lead to equivalent states, so only the first edge of each orbit is kept. This does not catch the rare pair
+	 * of moves whose successors are equivalent only under a symmetry which does not fix the state itself.
 	 * 
 	 * @param  state The state before the move is selected.
 	 * @return An integer array representing all possible moves from the given state.
 	 */
 	public int[] getActionsSymmetrical(GameState state){
+		boolean[] fixed = canonicalizer.getStabilizer(state);
+		boolean[] covered = new boolean[edges];
 		int[] temp = new int[edges];
-		GameState[] tempStates = new GameState[edges];
-		GameState tempState;
-		int tempStateIndex = 0;
 		int index = 0;
 		
-		if(state.bigState != null){
-			for(int i = 0; i < edges; i++){
-				if(!state.bigState.testBit(edges - i - 1)){
-					
-					tempState = getSuccessorState(state, i);
-					boolean used = false;
-					
-					for(int b = 0; b < tempStateIndex; b++){
-						if(tempStates[b].equals(tempState)){
-							used = true;
-							break;
-						}
-					}
-					
-					if(!used){
-						tempStates[tempStateIndex] = tempState;
-						temp[index] = i;
-						tempStateIndex++;
-						index++;
-					}
-				}
-			}
-		}
-		
-		else {
-			String binary = state.getBinaryString();
-	
-			// add extra leading zeros
-			int b = binary.length();
-			for (int i = 0; i < (edges - b); i++) {
-				binary = "0" + binary;
-			}
-			
-			// for every character
-			for (int i = 0; i < edges; i++) {
-				// if it is zero, add index to temp
-				if (binary.charAt(i) == '0') {
-					
-					tempState = getSuccessorState(state, i);
-					boolean used = false;
-					
-					for(int j = 0; j < tempStateIndex; j++){
-						if(tempStates[j].equals(tempState)){
-							used = true;
-							break;
-						}
-					}
-					
-					if(!used){
-						tempStates[tempStateIndex] = tempState;
-						temp[index] = i;
-						tempStateIndex++;
-						index++;
+		for(int i = 0; i < edges; i++){
+			// if the edge is free and not the image of an earlier edge, add index to temp
+			if(!covered[i] && !state.testBit(edges - i - 1)){
+				temp[index] = i;
+				index++;
+				
+				// the stabilizer is a group, so this covers the whole orbit of the edge
+				for(int t = 0; t < fixed.length; t++){
+					if(fixed[t]){
+						covered[symmetryMaps[t][i]] = true;
 					}
 				}
 			}
@@ -743,26 +828,7 @@ public class DotsAndBoxes extends MCGame{
 	 * @return The state after the move is made.
 	 */
 	public GameState getSimpleSuccessorState(GameState state, int action){
-		GameState returnState = null;
-		
-		if(state.bigState != null){
-			BigInteger newState = new BigInteger(state.bigState.toString());
-			newState = newState.flipBit(edges - action - 1);
-			returnState = new GameState(newState);
-		}
-		
-		else if(edges - action - 2 > 61){
-			BigInteger newState = new BigInteger(Long.toString(state.longState));
-			newState = newState.flipBit(edges - action - 1);
-			returnState = new GameState(newState);
-		}
-		
-		else{
-			long newState = (long) (state.longState + ((long) Math.pow(2, edges - action - 1)));
-			returnState = new GameState(newState);
-		}
-		
-		return returnState;
+		return state.setBit(edges - action - 1, stateWords);
 	}
 
 	/**
@@ -802,42 +868,10 @@ public class DotsAndBoxes extends MCGame{
 	 */
 	public GameState getSimpleSuccessorState(GameState state, int [] actions){
                 System.out.println ("in getSimpleSuccessorState " + state.getString () + " " + Arrays.toString(actions));
-		GameState returnState = null;
+		GameState returnState = state;
 		
-		if(state.bigState != null){
-			BigInteger newState = new BigInteger(state.bigState.toString());
-			for (int action : actions)
-				newState = newState.flipBit(edges - action - 1);
-			returnState = new GameState(newState);
-		}
-	
-		// find min action
-		int min = actions[0];
 		for (int action : actions)
-		   if (action < min)
-			min = action;
-
-	
-		if(edges - min - 2 > 61){
-			BigInteger newState = new BigInteger(Long.toString(state.longState));
-			for (int action : actions)
-				newState = newState.flipBit(edges - action - 1);
-			returnState = new GameState(newState);
-		}
-		
-		else{
-			System.out.println (" in long only section ");
-			long newState = (long) (state.longState) ; // + ((long) Math.pow(2, edges - action - 1))); 
-			long toAdd = 0L;
-			for (int action : actions) {
-			      System.out.print (" adding action " + action + " ");
-			      toAdd = (1 << (edges -action-1));
-			      System.out.print (toAdd + " ");
-			      newState = newState | toAdd;
-			      System.out.println (" results in " + newState);
-			}
-			returnState = new GameState(newState);
-		}
+			returnState = returnState.setBit(edges - action - 1, stateWords);
 		
 		return returnState;
 	}
@@ -847,49 +881,14 @@ public class DotsAndBoxes extends MCGame{
 	 * Gets the asymmetrical canonical representation of a given state.
 	 * 
 	 * @param  state The state to transform.
-	 * @return The canonical representation of state.
+	 * @return The canonical representation of state (with the same net score if state is scored).
 	 */
 	public GameState removeSymmetries(GameState state){
-		
-		String stateString = state.getBinaryString();
-		
-		/* add extra leading zeros */
-		int b = stateString.length();
-		for (int index = 0; index < (edges - b); index++) {
-			stateString = "0" + stateString;
-		}
-		
-		String returnState = stateString;
-		
-		/* three rotations */
-		
-		for(int j = 0; j < 3; j++){
-			stateString = rotate(stateString);
-
-			if(first(stateString, returnState)){
-				returnState = stateString;
-			}
-		}
-		
-		/* one reflection */
-		
-		stateString = reflect(stateString);
-		
-		if(first(stateString, returnState)){
-			returnState = stateString;
-		}
-
-		/* three more rotations */
-		
-		for(int j = 0; j < 3; j++){
-			stateString = rotate(stateString);
-			
-			if(first(stateString, returnState)){
-				returnState = stateString;
-			}
+		if(state instanceof GameStateScored){
+			return canonicalizer.canonicalize((GameStateScored) state);
 		}
 		
-		return new GameState(returnState, true);
+		return canonicalizer.canonicalize(state);
 	}
 	
 	/**
@@ -899,46 +898,7 @@ public class DotsAndBoxes extends MCGame{
 	 * @return The canonical representation of state.
 	 */
 	public GameStateScored removeSymmetries(GameStateScored state){
-		
-		String stateString = state.getBinaryString();
-		
-		/* add extra leading zeros */
-		int b = stateString.length();
-		for (int index = 0; index < (edges - b); index++) {
-			stateString = "0" + stateString;
-		}
-		
-		String returnState = stateString;
-		
-		/* three rotations */
-		
-		for(int j = 0; j < 3; j++){
-			stateString = rotate(stateString);
-
-			if(first(stateString, returnState)){
-				returnState = stateString;
-			}
-		}
-		
-		/* one reflection */
-		
-		stateString = reflect(stateString);
-		
-		if(first(stateString, returnState)){
-			returnState = stateString;
-		}
-
-		/* three more rotations */
-		
-		for(int j = 0; j < 3; j++){
-			stateString = rotate(stateString);
-			
-			if(first(stateString, returnState)){
-				returnState = stateString;
-			}
-		}
-		
-		return new GameStateScored(returnState, state.playerNetScore, true);
+		return canonicalizer.canonicalize(state);
 	}
 	
 	/**
@@ -1016,23 +976,18 @@ public class DotsAndBoxes extends MCGame{
 			score = -score;
 		}
 		
-		if(state.bigState != null){
-			BigInteger newState = new BigInteger(state.bigState.toString());
-			newState = newState.flipBit(edges - action - 1);
-			returnState = new GameStateScored(newState, score);
-		}
-		
-		else if(edges - action - 2 > 62){
-			BigInteger newState = new BigInteger(Long.toString(state.longState));
-			newState = newState.flipBit(edges - action - 1);
+		if(stateWords == 1){
+			long newState = state.longState | (1L << (edges - action - 1));
 			returnState = new GameStateScored(newState, score);
 		}
 		
 		else{
-			long newState = (long) (state.longState + ((long) Math.pow(2, edges - action - 1)));
+			long[] newState = state.setBitWords(edges - action - 1, stateWords);
 			returnState = new GameStateScored(newState, score);
 		}
 		
+		returnState.setBitsKey(state.getBitsKey() ^ Zobrist.bitKey(edges - action - 1));
+		
 		return returnState;
 	}
 }
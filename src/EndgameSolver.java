@@ -0,0 +1,337 @@
+//package MCTS;
+
+/**
+ * Solves Dots and Boxes positions with few free edges exactly, by a negamax search with alpha-beta pruning over the
+ * net score still to be won.
+ * <p>
+ * The search runs on a PlayoutContext, applying and undoing moves in place. Moves which complete a box are searched
+ * first, then moves which give no box a third side, then the rest. Positions made only of long chains and loops are
+ * valued directly by chain theory (see ChainAnalyzer.getEndgameValue).
+ * <p>
+ * Results are kept in a transposition table keyed on the canonical state (the largest image under the symmetries of
+ * the board), since the net score still to be won depends only on the edges taken. The table is used on boards of up
+ * to 64 edges; larger boards are searched without it. A solver is tied to one board size and is not thread-safe.
+ */
+
+public class EndgameSolver {
+
+	/**
+	 * A table entry holding the exact value.
+	 */
+	private static final int EXACT = 1;
+
+	/**
+	 * A table entry holding a lower bound on the value.
+	 */
+	private static final int LOWER = 2;
+
+	/**
+	 * A table entry holding an upper bound on the value.
+	 */
+	private static final int UPPER = 3;
+
+	/**
+	 * Larger than the magnitude of any value.
+	 */
+	private static final int INFINITY = 1 << 20;
+
+	/**
+	 * The game (board) solved.
+	 */
+	private final DotsAndBoxes game;
+
+	/**
+	 * The largest number of free edges for which positions are solved.
+	 */
+	private final int maxFreeEdges;
+
+	/**
+	 * True if the transposition table is used (the board has at most 64 edges).
+	 */
+	private final boolean useTable;
+
+	/**
+	 * The canonical state of each table entry.
+	 */
+	private final long[] keys;
+
+	/**
+	 * The value of each table entry shifted left by 2, with the kind of entry (EXACT, LOWER, or UPPER) in the lowest
+	 * 2 bits. Empty entries are 0.
+	 */
+	private final int[] entries;
+
+	/**
+	 * The number of table entries minus one (the size is a power of two).
+	 */
+	private final int mask;
+
+	/**
+	 * The ordered moves at each depth of the search.
+	 */
+	private final int[][] moves;
+
+	/**
+	 * The best root move found by the last call to solve with a list of actions.
+	 */
+	private int bestAction = -1;
+
+	/**
+	 * The number of positions searched.
+	 */
+	private long nodes = 0;
+
+	/**
+	 * The number of positions answered by the transposition table.
+	 */
+	private long hits = 0;
+
+	/**
+	 * Constructor for the EndgameSolver.
+	 *
+	 * @param game
+	 *            The game (board) to solve.
+	 * @param maxFreeEdges
+	 *            The largest number of free edges for which positions are solved.
+	 * @param tableBits
+	 *            The transposition table holds 2^tableBits entries.
+	 */
+	public EndgameSolver(DotsAndBoxes game, int maxFreeEdges, int tableBits) {
+		this.game = game;
+		this.maxFreeEdges = maxFreeEdges;
+		this.useTable = game.stateWords == 1;
+		this.keys = new long[useTable ? 1 << tableBits : 0];
+		this.entries = new int[keys.length];
+		this.mask = keys.length - 1;
+		this.moves = new int[maxFreeEdges + 1][maxFreeEdges];
+	}
+
+	/**
+	 * Checks whether this solver can be used for a game.
+	 *
+	 * @param other
+	 *            The game.
+	 * @return True if the game is played on a board of the same size.
+	 */
+	public boolean fits(DotsAndBoxes other) {
+		return other.height == game.height && other.width == game.width;
+	}
+
+	/**
+	 * Checks whether a position has few enough free edges to be solved.
+	 *
+	 * @param context
+	 *            The position.
+	 * @return True if the position can be solved.
+	 */
+	public boolean canSolve(PlayoutContext context) {
+		return context.getFreeEdgeCount() <= maxFreeEdges;
+	}
+
+	/**
+	 * Solves a position. The context is left as it was.
+	 *
+	 * @param context
+	 *            The position, with at most maxFreeEdges free edges.
+	 * @return The net score the player to move will gain from here under perfect play.
+	 */
+	public int solve(PlayoutContext context) {
+		return search(context, -INFINITY, INFINITY, 0);
+	}
+
+	/**
+	 * Solves a position, choosing the first move among the given actions. The best of them is then available from
+	 * getBestAction. The context is left as it was.
+	 *
+	 * @param context
+	 *            The position, with at most maxFreeEdges free edges.
+	 * @param actions
+	 *            The actions which may be played first (free edges of the position).
+	 * @return The net score the player to move will gain from here under perfect play, starting with one of the
+	 *         given actions.
+	 */
+	public int solve(PlayoutContext context, int[] actions) {
+		int best = -INFINITY;
+		bestAction = -1;
+
+		for (int action : actions) {
+			int value = play(context, action, best, INFINITY, 0);
+
+			if (value > best) {
+				best = value;
+				bestAction = action;
+			}
+		}
+
+		return best;
+	}
+
+	/**
+	 * Gets the best first move found by the last call to solve with a list of actions.
+	 *
+	 * @return The action, or -1 if there was none.
+	 */
+	public int getBestAction() {
+		return bestAction;
+	}
+
+	/**
+	 * Plays a move and searches the position after it.
+	 *
+	 * @param context
+	 *            The position.
+	 * @param action
+	 *            The move.
+	 * @param alpha
+	 *            The value the player to move is already assured of.
+	 * @param beta
+	 *            The value above which the opponent will avoid this position.
+	 * @param depth
+	 *            The number of moves made since the search began.
+	 * @return The value of the move for the player making it.
+	 */
+	private int play(PlayoutContext context, int action, int alpha, int beta, int depth) {
+		int taken = context.apply(action);
+		int value;
+
+		/* the same player moves again after completing a box */
+		if (taken > 0) {
+			value = taken + search(context, alpha - taken, beta - taken, depth + 1);
+		} else {
+			value = -search(context, -beta, -alpha, depth + 1);
+		}
+
+		context.undo();
+
+		return value;
+	}
+
+	/**
+	 * Searches a position.
+	 *
+	 * @param context
+	 *            The position.
+	 * @param alpha
+	 *            The value the player to move is already assured of.
+	 * @param beta
+	 *            The value above which the opponent will avoid this position.
+	 * @param depth
+	 *            The number of moves made since the search began.
+	 * @return The value of the position for the player to move, exact if it lies between alpha and beta, otherwise a
+	 *         bound on the same side.
+	 */
+	private int search(PlayoutContext context, int alpha, int beta, int depth) {
+		if (context.isTerminal()) {
+			return 0;
+		}
+
+		nodes++;
+
+		int chains = context.getEndgameValue();
+
+		if (chains != ChainAnalyzer.NOT_ENDGAME) {
+			return chains;
+		}
+
+		int slot = -1;
+		long key = 0;
+
+		if (useTable) {
+			key = game.canonicalizer.canonical(context.getWord(0));
+			slot = (int) GameState.mix(key) & mask;
+
+			if (keys[slot] == key && entries[slot] != 0) {
+				int value = entries[slot] >> 2;
+				int kind = entries[slot] & 3;
+
+				if (kind == EXACT || (kind == LOWER && value >= beta) || (kind == UPPER && value <= alpha)) {
+					hits++;
+					return value;
+				}
+			}
+		}
+
+		int[] ordered = moves[depth];
+		int count = orderMoves(context, ordered);
+		int start = alpha;
+		int best = -INFINITY;
+
+		for (int i = 0; i < count && alpha < beta; i++) {
+			int value = play(context, ordered[i], alpha, beta, depth);
+
+			if (value > best) {
+				best = value;
+
+				if (value > alpha) {
+					alpha = value;
+				}
+			}
+		}
+
+		if (useTable) {
+			int kind = best <= start ? UPPER : best >= beta ? LOWER : EXACT;
+
+			keys[slot] = key;
+			entries[slot] = (best << 2) | kind;
+		}
+
+		return best;
+	}
+
+	/**
+	 * Lists the free edges of a position: moves which complete a box first, then moves which give no box a third
+	 * side, then the rest.
+	 *
+	 * @param context
+	 *            The position.
+	 * @param ordered
+	 *            Receives the moves.
+	 * @return The number of moves.
+	 */
+	private int orderMoves(PlayoutContext context, int[] ordered) {
+		int count = context.getFreeEdges(ordered);
+		int front = 0;
+		int back = count;
+
+		/* moves which complete a box go to the front, moves which give a third side to the back */
+		for (int i = 0; i < back; i++) {
+			int action = ordered[i];
+			int most = 0;
+
+			for (int box : game.edgeBoxes[action]) {
+				most = Math.max(most, context.getSides(box));
+			}
+
+			if (most == 3) {
+				ordered[i] = ordered[front];
+				ordered[front] = action;
+				front++;
+			} else if (most == 2) {
+				back--;
+				ordered[i] = ordered[back];
+				ordered[back] = action;
+				i--;
+			}
+		}
+
+		return count;
+	}
+
+	/**
+	 * Gets the number of positions searched.
+	 *
+	 * @return The number of positions searched.
+	 */
+	public long getNodes() {
+		return nodes;
+	}
+
+	/**
+	 * Gets the number of positions answered by the transposition table.
+	 *
+	 * @return The number of table hits.
+	 */
+	public long getHits() {
+		return hits;
+	}
+}
@@ -0,0 +1,372 @@
+//package MCTS;
+
+import java.util.Arrays;
+
+/**
+ * A Monte Carlo tree stored in flat primitive arrays rather than MCNode and ActionLink objects (see IdTree for its
+ * operations).
+ * <p>
+ * The fields of node n are at index n of the node arrays, and the state bits of node n are at stateWords * n to
+ * stateWords * (n + 1) - 1 of the bits array. The fields of edge e are at index e of the edge arrays. A node costs
+ * 8 * stateWords + 26 bytes (plus its table slots) and an edge 18 bytes, with no object headers or references.
+ * TreeMemoryBenchmark measures about 880 heap bytes per node on a 4x4 board against 1840 for MCTree, and 420
+ * against 1080 on a 3x3 board. The arrays double in size as ids are needed.
+ * <p>
+ * Select it for a game with the tree=flat argument of MonteCarloTreeSearch.
+ */
+
+public class FlatTree extends IdTree {
+
+	/**
+	 * The state bits of each node, stateWords words per node, lowest word first.
+	 */
+	private long[] bits;
+
+	/**
+	 * The net score of the state of each node (null if the states are not scored).
+	 */
+	private int[] scores;
+
+	/**
+	 * The number of times each node has been reached - N(s).
+	 */
+	private int[] timesReached;
+
+	/**
+	 * The depth of each node.
+	 */
+	private int[] depths;
+
+	/**
+	 * The number of edges linked to each node.
+	 */
+	private int[] parents;
+
+	/**
+	 * The id of the first edge of each node (or the next free node).
+	 */
+	private int[] firstEdge;
+
+	/**
+	 * The number of edges (possible actions) of each node.
+	 */
+	private short[] edgeCounts;
+
+	/**
+	 * True for each node which has no children.
+	 */
+	private boolean[] leaf;
+
+	/**
+	 * The best action from each node as proven by the endgame solver, or -1.
+	 */
+	private short[] solvedActions;
+
+	/**
+	 * The perfect-play value of each solved node.
+	 */
+	private byte[] solvedValues;
+
+	/**
+	 * The action of each edge.
+	 */
+	private short[] actions;
+
+	/**
+	 * The id of the successor node of each edge (or the next free run), or NONE.
+	 */
+	private int[] children;
+
+	/**
+	 * The number of times each edge was chosen.
+	 */
+	private int[] timesChosen;
+
+	/**
+	 * The total rewards resulting from selecting each edge.
+	 */
+	private double[] rewards;
+
+	/**
+	 * The table slots.
+	 */
+	private int[] slots;
+
+	/**
+	 * Constructor for the FlatTree.
+	 *
+	 * @param game
+	 *            MCGame to be used by this tree.
+	 * @param state
+	 *            The state of the root node.
+	 * @param stateWords
+	 *            The number of 64-bit words in a state of the game.
+	 */
+	public FlatTree(MCGame game, GameState state, int stateWords) {
+		super(game, stateWords, state instanceof GameStateScored);
+
+		allocateNodes(INITIAL_CAPACITY);
+		allocateEdges(INITIAL_CAPACITY * 8);
+		sizeTable();
+
+		root = addNode(state, 0);
+	}
+
+	/**
+	 * Constructor for an empty FlatTree with the settings of another (see emptyCopy).
+	 *
+	 * @param tree
+	 *            The tree.
+	 */
+	private FlatTree(FlatTree tree) {
+		super(tree.game, tree.stateWords, tree.scored);
+
+		allocateNodes(INITIAL_CAPACITY);
+		allocateEdges(INITIAL_CAPACITY * 8);
+	}
+
+	/**
+	 * Grows the node arrays.
+	 *
+	 * @param capacity
+	 *            The new number of nodes.
+	 */
+	private void allocateNodes(int capacity) {
+		bits = bits == null ? new long[capacity * stateWords] : Arrays.copyOf(bits, capacity * stateWords);
+		scores = !scored ? null : scores == null ? new int[capacity] : Arrays.copyOf(scores, capacity);
+		timesReached = timesReached == null ? new int[capacity] : Arrays.copyOf(timesReached, capacity);
+		depths = depths == null ? new int[capacity] : Arrays.copyOf(depths, capacity);
+		parents = parents == null ? new int[capacity] : Arrays.copyOf(parents, capacity);
+		firstEdge = firstEdge == null ? new int[capacity] : Arrays.copyOf(firstEdge, capacity);
+		edgeCounts = edgeCounts == null ? new short[capacity] : Arrays.copyOf(edgeCounts, capacity);
+		leaf = leaf == null ? new boolean[capacity] : Arrays.copyOf(leaf, capacity);
+		solvedActions = solvedActions == null ? new short[capacity] : Arrays.copyOf(solvedActions, capacity);
+		solvedValues = solvedValues == null ? new byte[capacity] : Arrays.copyOf(solvedValues, capacity);
+	}
+
+	/**
+	 * Grows the edge arrays.
+	 *
+	 * @param capacity
+	 *            The new number of edges.
+	 */
+	private void allocateEdges(int capacity) {
+		actions = actions == null ? new short[capacity] : Arrays.copyOf(actions, capacity);
+		children = children == null ? new int[capacity] : Arrays.copyOf(children, capacity);
+		timesChosen = timesChosen == null ? new int[capacity] : Arrays.copyOf(timesChosen, capacity);
+		rewards = rewards == null ? new double[capacity] : Arrays.copyOf(rewards, capacity);
+	}
+
+	@Override
+	protected void ensureNodes(int count) {
+		if (count > timesReached.length) {
+			allocateNodes(Math.max(count, timesReached.length * 2));
+		}
+	}
+
+	@Override
+	protected void ensureEdges(int count) {
+		if (count > actions.length) {
+			allocateEdges(Math.max(count, actions.length * 2));
+		}
+	}
+
+	@Override
+	protected void allocateTable(int size) {
+		slots = new int[size];
+	}
+
+	@Override
+	protected int getSlot(int slot) {
+		return slots[slot];
+	}
+
+	@Override
+	protected void setSlot(int slot, int entry) {
+		slots[slot] = entry;
+	}
+
+	@Override
+	protected long getBits(int node, int word) {
+		return bits[node * stateWords + word];
+	}
+
+	@Override
+	protected void setBits(int node, int word, long value) {
+		bits[node * stateWords + word] = value;
+	}
+
+	@Override
+	protected int getScore(int node) {
+		return scored ? scores[node] : 0;
+	}
+
+	@Override
+	protected void setScore(int node, int score) {
+		if (scored) {
+			scores[node] = score;
+		}
+	}
+
+	@Override
+	public int getTimesReached(int node) {
+		return timesReached[node];
+	}
+
+	@Override
+	protected void setTimesReached(int node, int reached) {
+		timesReached[node] = reached;
+	}
+
+	@Override
+	public int getDepth(int node) {
+		return depths[node];
+	}
+
+	@Override
+	protected void setDepth(int node, int depth) {
+		depths[node] = depth;
+	}
+
+	@Override
+	public int getParents(int node) {
+		return parents[node];
+	}
+
+	@Override
+	protected void setParents(int node, int count) {
+		parents[node] = count;
+	}
+
+	@Override
+	protected int getFirstEdge(int node) {
+		return firstEdge[node];
+	}
+
+	@Override
+	protected void setFirstEdge(int node, int edge) {
+		firstEdge[node] = edge;
+	}
+
+	@Override
+	protected int getEdgeCount(int node) {
+		return edgeCounts[node];
+	}
+
+	@Override
+	protected void setEdgeCount(int node, int count) {
+		edgeCounts[node] = (short) count;
+	}
+
+	@Override
+	public boolean isLeaf(int node) {
+		return leaf[node];
+	}
+
+	@Override
+	protected void setLeaf(int node, boolean value) {
+		leaf[node] = value;
+	}
+
+	@Override
+	protected int getSolvedAction(int node) {
+		return solvedActions[node];
+	}
+
+	@Override
+	protected void setSolvedAction(int node, int action) {
+		solvedActions[node] = (short) action;
+	}
+
+	@Override
+	protected int getSolvedValue(int node) {
+		return solvedValues[node];
+	}
+
+	@Override
+	protected void setSolvedValue(int node, int value) {
+		solvedValues[node] = (byte) value;
+	}
+
+	@Override
+	protected int getAction(int edge) {
+		return actions[edge];
+	}
+
+	@Override
+	protected void setAction(int edge, int action) {
+		actions[edge] = (short) action;
+	}
+
+	@Override
+	protected int getChild(int edge) {
+		return children[edge];
+	}
+
+	@Override
+	protected void setChild(int edge, int child) {
+		children[edge] = child;
+	}
+
+	@Override
+	protected int getChosen(int edge) {
+		return timesChosen[edge];
+	}
+
+	@Override
+	protected void setChosen(int edge, int chosen) {
+		timesChosen[edge] = chosen;
+	}
+
+	@Override
+	protected double getEdgeRewards(int edge) {
+		return rewards[edge];
+	}
+
+	@Override
+	protected void setEdgeRewards(int edge, double value) {
+		rewards[edge] = value;
+	}
+
+	@Override
+	protected int getNodeBytes() {
+		return 8 * stateWords + (scored ? 4 : 0) + 4 * 4 + 2 + 1 + 2 + 1;
+	}
+
+	@Override
+	protected int getEdgeBytes() {
+		return 2 + 4 + 4 + 8;
+	}
+
+	@Override
+	public long getAllocatedBytes() {
+		return (long) timesReached.length * getNodeBytes() + (long) actions.length * getEdgeBytes()
+				+ 4L * slots.length;
+	}
+
+	@Override
+	protected IdTree emptyCopy() {
+		return new FlatTree(this);
+	}
+
+	@Override
+	protected void adopt(IdTree copy) {
+		FlatTree tree = (FlatTree) copy;
+
+		bits = tree.bits;
+		scores = tree.scores;
+		timesReached = tree.timesReached;
+		depths = tree.depths;
+		parents = tree.parents;
+		firstEdge = tree.firstEdge;
+		edgeCounts = tree.edgeCounts;
+		leaf = tree.leaf;
+		solvedActions = tree.solvedActions;
+		solvedValues = tree.solvedValues;
+		actions = tree.actions;
+		children = tree.children;
+		timesChosen = tree.timesChosen;
+		rewards = tree.rewards;
+		slots = tree.slots;
+	}
+}
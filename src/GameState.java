@@ -4,6 +4,11 @@ import java.math.BigInteger;
 
 /**
  * Represents a state consisting of a single integer.
+ * <p>
+ * States with at most 64 bits are held in a single long. Larger states are held in a fixed-width array of longs
+ * (two words cover up to 128 edges), with word 0 holding the lowest 64 bits. Bit i of the integer is the same bit
+ * regardless of the representation, so states of either width with the same value are equal.
+ * 
  * @author      Jared Prince
  * @version     1.0
  * @since       1.0
@@ -12,12 +17,21 @@ import java.math.BigInteger;
 public class GameState {
 
 	/** The state represented as a long (when small enough).
+	 *  When the state is held in words, this mirrors the lowest word.
 	 */
 	public long longState;
 	
-	/** The state represented as a BigInteger.
+	/** The state represented as an array of 64-bit words, lowest word first (null when the state fits in a long).
 	 */
-	BigInteger bigState = null;
+	long[] words = null;
+	
+	/** The Zobrist key of the bits of the state (valid once keyed is true).
+	 */
+	long bitsKey;
+	
+	/** True if bitsKey has been computed or set.
+	 */
+	boolean keyed = false;
 	
 	/**
 	 * Constructor using a long.
@@ -29,12 +43,13 @@ public class GameState {
 	}
 	
 	/**
-	 * Constructor using a BigInteger.
+	 * Constructor using an array of words. The array is used directly and must not be modified afterwards.
 	 * 
-	 * @param  state The integer state represented as a BigInteger.
+	 * @param  words The integer state represented as an array of 64-bit words, lowest word first.
 	 */
-	public GameState(BigInteger state){
-		this.bigState = state;
+	public GameState(long[] words){
+		this.words = words;
+		this.longState = words[0];
 	}
 	
 	/**
@@ -45,21 +60,123 @@ public class GameState {
 	 */
 	public GameState(String state, boolean inBinary){
 		if(inBinary){
-			try{
-				longState = new Long(Long.parseLong(state,2));
-			} catch (Exception e) {
-				//parse binary to big int
-				bigState = new BigInteger(state, 2);
+			if(state.length() < 64){
+				longState = Long.parseLong(state, 2);
+			} else {
+				words = parseWords(state);
+				longState = words[0];
 			}
 		}
 		
 		else{
 			try{
-				longState = new Long(state);
+				longState = Long.parseLong(state);
 			} catch (NumberFormatException e) {
-				bigState = new BigInteger(state);
+				BigInteger big = new BigInteger(state);
+				words = new long[(big.bitLength() + 63) / 64];
+				
+				for(int i = 0; i < words.length; i++){
+					words[i] = big.shiftRight(i * 64).longValue();
+				}
+				
+				longState = words[0];
+			}
+		}
+	}
+	
+	/**
+	 * Parses a binary string into an array of words, lowest word first.
+	 * 
+	 * @param  binary The state as a binary string (most significant bit first).
+	 * @return The words of the state.
+	 */
+	private static long[] parseWords(String binary){
+		int length = binary.length();
+		long[] result = new long[(length + 63) / 64];
+		
+		for(int i = 0; i < length; i++){
+			if(binary.charAt(length - i - 1) == '1'){
+				result[i >>> 6] |= 1L << i;
 			}
 		}
+		
+		return result;
+	}
+	
+	/**
+	 * Gets the number of words used to hold the state.
+	 * 
+	 * @return The number of 64-bit words in the state.
+	 */
+	public int getWordCount(){
+		return words == null ? 1 : words.length;
+	}
+	
+	/**
+	 * Gets a single word of the state. Words beyond the width of the state are zero.
+	 * 
+	 * @param  index The index of the word (0 is the lowest).
+	 * @return The word at the given index.
+	 */
+	public long getWord(int index){
+		if(words == null){
+			return index == 0 ? longState : 0L;
+		}
+		
+		return index < words.length ? words[index] : 0L;
+	}
+	
+	/**
+	 * Tests a single bit of the state.
+	 * 
+	 * @param  index The index of the bit (0 is the least significant).
+	 * @return True if the bit is set, false otherwise.
+	 */
+	public boolean testBit(int index){
+		return ((getWord(index >>> 6) >>> index) & 1L) != 0;
+	}
+	
+	/**
+	 * Gets a copy of this state with a single bit set.
+	 * 
+	 * @param  index The index of the bit (0 is the least significant).
+	 * @param  width The number of words the new state should have (at least). Use 1 for states that fit in a long.
+	 * @return The state with the bit set.
+	 */
+	public GameState setBit(int index, int width){
+		GameState result;
+		
+		if(width == 1 && words == null && index < 64){
+			result = new GameState(longState | (1L << index));
+		} else {
+			result = new GameState(setBitWords(index, width));
+		}
+		
+		result.setBitsKey(testBit(index) ? getBitsKey() : getBitsKey() ^ Zobrist.bitKey(index));
+		
+		return result;
+	}
+	
+	/**
+	 * Copies the words of this state and sets a single bit in the copy.
+	 * 
+	 * @param  index The index of the bit (0 is the least significant).
+	 * @param  width The number of words the copy should have (at least).
+	 * @return The copied words with the bit set.
+	 */
+	long[] setBitWords(int index, int width){
+		int length = Math.max(Math.max(width, getWordCount()), (index >>> 6) + 1);
+		long[] result = new long[length];
+		
+		if(words == null){
+			result[0] = longState;
+		} else {
+			System.arraycopy(words, 0, result, 0, words.length);
+		}
+		
+		result[index >>> 6] |= 1L << index;
+		
+		return result;
 	}
 	
 	/**
@@ -69,23 +186,112 @@ public class GameState {
 	 * @return True if this is equal to secondState, false otherwise.
 	 */
 	public boolean equals(GameState secondState){		
-		if(longState == secondState.longState){
-			if(bigState == null && secondState.bigState == null){
-				return true;
+		if(longState != secondState.longState){
+			return false;
+		}
+		
+		if(words == null && secondState.words == null){
+			return true;
+		}
+		
+		int length = Math.max(getWordCount(), secondState.getWordCount());
+		
+		for(int i = 1; i < length; i++){
+			if(getWord(i) != secondState.getWord(i)){
+				return false;
 			}
-			
-			if(bigState != null && secondState.bigState != null){
-				if(bigState.equals(secondState.bigState)){
-					return true;
-				}
+		}
+		
+		return true;
+	}
+	
+	/**
+	 * Determines if the state is identified exactly by its packed key (see packedKey).
+	 * 
+	 * @return True if no bit above the lowest word is set.
+	 */
+	public boolean isPacked(){
+		for(int i = 1; i < getWordCount(); i++){
+			if(words[i] != 0){
+				return false;
 			}
-			
-			return false;
 		}
 		
-		return false;
+		return true;
+	}
+	
+	/**
+	 * Gets the state packed into a single long. Two packed states (of the same class) are equal exactly when their
+	 * packed keys are equal.
+	 * 
+	 * @return The bits of the state.
+	 */
+	public long packedKey(){
+		return longState;
+	}
+	
+	/**
+	 * Gets the Zobrist key of the state. States which are equal have equal keys regardless of their width.
+	 * 
+	 * @return The key of the state.
+	 */
+	public long hashKey(){
+		return getBitsKey();
+	}
+	
+	/**
+	 * Gets the Zobrist key of the bits of the state, computing it on first use.
+	 * 
+	 * @return The XOR of the keys of every set bit.
+	 */
+	long getBitsKey(){
+		if(!keyed){
+			bitsKey = Zobrist.bitsKey(this);
+			keyed = true;
+		}
+		
+		return bitsKey;
+	}
+	
+	/**
+	 * Sets the Zobrist key of the bits of the state when it is known incrementally.
+	 * 
+	 * @param  key The XOR of the keys of every set bit.
+	 */
+	void setBitsKey(long key){
+		bitsKey = key;
+		keyed = true;
 	}
 	
+	/**
+	 * Mixes the bits of a long (the finalizer of MurmurHash3).
+	 * 
+	 * @param  value The value to mix.
+	 * @return The mixed value.
+	 */
+	static long mix(long value){
+		value ^= value >>> 33;
+		value *= 0xff51afd7ed558ccdL;
+		value ^= value >>> 33;
+		value *= 0xc4ceb9fe1a85ec53L;
+		value ^= value >>> 33;
+		return value;
+	}
+	
+	/**
+	 * Gets the state as a BigInteger. Only used for formatting large states.
+	 * 
+	 * @return The integer state as a BigInteger.
+	 */
+	private BigInteger toBigInteger(){
+		BigInteger big = BigInteger.ZERO;
+		
+		for(int i = getWordCount() - 1; i >= 0; i--){
+			big = big.shiftLeft(64).or(new BigInteger(Long.toUnsignedString(getWord(i))));
+		}
+		
+		return big;
+	}
 	
 	/**
 	 * Gets the state as a binary string.
@@ -93,11 +299,29 @@ public class GameState {
 	 * @return  A String representing the integer state in binary form.
 	 */
 	public String getBinaryString(){
-		if(bigState != null){
-			return bigState.toString(2);
+		if(words == null){
+			return Long.toBinaryString(longState);
+		}
+		
+		/* skip the leading zero words */
+		int top = words.length - 1;
+		while(top > 0 && words[top] == 0){
+			top--;
+		}
+		
+		StringBuilder binary = new StringBuilder(Long.toBinaryString(words[top]));
+		
+		for(int i = top - 1; i >= 0; i--){
+			String word = Long.toBinaryString(words[i]);
+			
+			for(int b = word.length(); b < 64; b++){
+				binary.append('0');
+			}
+			
+			binary.append(word);
 		}
 		
-		return Long.toBinaryString(longState);
+		return binary.toString();
 	}
 	
 	/**
@@ -106,8 +330,8 @@ public class GameState {
 	 * @return  A String representing the integer state in decimal form.
 	 */
 	public String getString(){
-		if(bigState != null){
-			return bigState.toString();
+		if(words != null){
+			return toBigInteger().toString();
 		}
 		
 		return Long.toString(longState);
@@ -136,8 +360,12 @@ public class GameState {
 	* @return Number of edges in state
 	**/
 	public int getBitCount(){
-	  if (bigState != null)
-	     return bigState.bitCount();
+	  if (words != null) {
+	     int count = 0;
+	     for (long word : words)
+	        count += Long.bitCount(word);
+	     return count;
+	  }
 
 	  return Long.bitCount(longState);
 	}
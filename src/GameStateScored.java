@@ -1,9 +1,10 @@
 //package MCTS;
 
-import java.math.BigInteger;
-
 /**
  * Represents a state consisting of two integers.
+ * <p>
+ * On boards of at most PACKED_BITS edges the bits and the net score fit in a single long (see packedKey), so a
+ * scored state can be compared and hashed as cheaply as a simple one.
  * @author      Jared Prince
  * @version     1.0
  * @since       1.0
@@ -15,13 +16,17 @@ public class GameStateScored extends GameState{
 	 */
 	int playerNetScore;
 	
+	/** The largest number of edges for which the bits and the net score are packed into a single long.
+	 */
+	public static final int PACKED_BITS = 56;
+	
 	/**
-	 * Constructor using a BigInteger.
+	 * Constructor using an array of words.
 	 * 
-	 * @param  state The integer state represented as a BigInteger.
+	 * @param  state The integer state represented as an array of 64-bit words, lowest word first.
 	 * @param  score The net score for the controlling player as an integer.
 	 */
-	public GameStateScored(BigInteger state, int score) {
+	public GameStateScored(long[] state, int score) {
 		super(state);
 		playerNetScore = score;
 	}
@@ -57,10 +62,14 @@ public class GameStateScored extends GameState{
 	 */
 	public boolean equals(GameStateScored secondState){
 		
-		if(secondState.playerNetScore != playerNetScore){
+		if(secondState.playerNetScore != playerNetScore || secondState.longState != longState){
 			return false;
 		}
 		
+		if(words == null && secondState.words == null){
+			return true;
+		}
+		
 		if(!super.equals(secondState)){
 			return false;
 		}
@@ -86,6 +95,34 @@ public class GameStateScored extends GameState{
 		return true;
 	}
 	
+	/**
+	 * Determines if the state is identified exactly by its packed key (see packedKey).
+	 * 
+	 * @return True if the bits fit in PACKED_BITS bits and the net score fits in a byte.
+	 */
+	public boolean isPacked(){
+		return (longState >>> PACKED_BITS) == 0 && playerNetScore == (byte) playerNetScore && super.isPacked();
+	}
+	
+	/**
+	 * Gets the state packed into a single long: the bits shifted left by 8, with the net score (as a byte) in the
+	 * lowest 8 bits.
+	 * 
+	 * @return The packed state. Only exact if isPacked() is true.
+	 */
+	public long packedKey(){
+		return (longState << 8) | (playerNetScore & 0xFF);
+	}
+	
+	/**
+	 * Gets the Zobrist key of the state, including the net score.
+	 * 
+	 * @return The key of the state.
+	 */
+	public long hashKey(){
+		return getBitsKey() ^ Zobrist.scoreKey(playerNetScore);
+	}
+	
 	/**
 	 * Gets the score.
 	 * 
@@ -101,13 +138,7 @@ public class GameStateScored extends GameState{
 	 * @return  A String representing the integer state in decimal form.
 	 */
 	public String getString(){
-		String str = null;
-		
-		if(bigState != null){
-			str = bigState.toString();
-		} else {
-			str = Long.toString(longState);
-		}
+		String str = super.getString();
 		
 		if(this.playerNetScore < 0){
 			str = str + playerNetScore;
@@ -0,0 +1,1597 @@
+//package MCTS;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * A Monte Carlo tree whose nodes and edges (actions) are addressed by int ids rather than held as MCNode and
+ * ActionLink objects. This class holds the operations of such a tree; its subclasses only decide where the fields of
+ * the nodes and edges are stored (in flat arrays for FlatTree, outside the heap for ArenaTree).
+ * <p>
+ * The edges of a node have consecutive ids, starting at its first edge, so selection reads a few contiguous runs of
+ * memory instead of one object per action. Nodes are found by state in an open-addressed table of ids, probed
+ * linearly and emptied by backward-shift deletion as in NodeTable. Deleted nodes and their runs of edges are kept on
+ * free lists and reused: a free node holds the next free node in place of its first edge, and the first edge of a
+ * free run holds the next free run of the same length in place of its child.
+ * <p>
+ * The values and bonuses follow MCNode and MCNode.ActionLink exactly, so the trees choose the same actions from the
+ * same statistics. As in MCNode, the bonuses are computed during selection rather than stored. Unlike MCTree,
+ * parents counts the links to a node: a node gains a parent each time an edge is linked to it, and deleteBranch only
+ * deletes a child once no other node links to it. The other counters have the same meaning as those of MCTree.
+ * <p>
+ * Only one thread may walk or back up the tree at a time, so the searches of MonteCarloTreeSearch lock it (see
+ * isConcurrent). A virtual loss is therefore kept in the statistics themselves: the action counts as chosen once
+ * more and as lost until the result is backed up, exactly as MCNode counts its pending losses.
+ * <p>
+ * After a real move, compact keeps only the subtree of the new position, copying it into fresh storage.
+ */
+
+public abstract class IdTree extends SearchTree {
+
+	/**
+	 * The id returned when there is no node.
+	 */
+	public static final int NONE = -1;
+
+	/**
+	 * The initial number of table slots.
+	 */
+	public static final int INITIAL_CAPACITY = 1024;
+
+	/**
+	 * The fraction of table slots which may be occupied before the table grows.
+	 */
+	public static final double MAX_LOAD_FACTOR = 0.5;
+
+	/**
+	 * The id of the root node.
+	 */
+	public int root = NONE;
+
+	/**
+	 * The number of 64-bit words in the state of each node.
+	 */
+	protected final int stateWords;
+
+	/**
+	 * True if the states are scored (GameStateScored).
+	 */
+	protected final boolean scored;
+
+	/**
+	 * The number of table slots minus one (the number of slots is a power of two).
+	 */
+	protected int mask;
+
+	/**
+	 * The number of node ids handed out (including those now free).
+	 */
+	protected int nodeLimit = 0;
+
+	/**
+	 * The number of edge ids handed out (including those now free).
+	 */
+	protected int edgeLimit = 0;
+
+	/**
+	 * The first free node id, or NONE.
+	 */
+	private int freeNode = NONE;
+
+	/**
+	 * The start of the first free run of edges of each length, or NONE.
+	 */
+	private int[] freeRuns = new int[0];
+
+	/**
+	 * The edges which may be cut by evict, and the node of each, found by findCuts.
+	 */
+	private int[] cutOwners = new int[64];
+	private int[] cutEdges = new int[64];
+	private int cutCount;
+
+	/**
+	 * Constructor for the IdTree. The subclass allocates its storage and then adds the root.
+	 *
+	 * @param game
+	 *            MCGame to be used by this tree.
+	 * @param stateWords
+	 *            The number of 64-bit words in a state of the game.
+	 * @param scored
+	 *            True if the states are scored (GameStateScored).
+	 */
+	protected IdTree(MCGame game, int stateWords, boolean scored) {
+		super(game);
+
+		this.stateWords = stateWords;
+		this.scored = scored;
+	}
+
+	/*---------------------------------- storage ----------------------------------*/
+
+	/**
+	 * Makes room for a number of nodes.
+	 *
+	 * @param count
+	 *            The number of node ids needed.
+	 */
+	protected abstract void ensureNodes(int count);
+
+	/**
+	 * Makes room for a number of edges.
+	 *
+	 * @param count
+	 *            The number of edge ids needed.
+	 */
+	protected abstract void ensureEdges(int count);
+
+	/**
+	 * Replaces the table with an empty one.
+	 *
+	 * @param size
+	 *            The number of slots (a power of two).
+	 */
+	protected abstract void allocateTable(int size);
+
+	/*
+	 * Field accessors. A table slot holds the id of a node plus one (0 for an empty slot). The state bits of a node
+	 * are given word by word, lowest word first.
+	 */
+
+	protected abstract int getSlot(int slot);
+
+	protected abstract void setSlot(int slot, int entry);
+
+	protected abstract long getBits(int node, int word);
+
+	protected abstract void setBits(int node, int word, long bits);
+
+	protected abstract int getScore(int node);
+
+	protected abstract void setScore(int node, int score);
+
+	protected abstract void setTimesReached(int node, int reached);
+
+	protected abstract void setDepth(int node, int depth);
+
+	protected abstract void setParents(int node, int parents);
+
+	protected abstract int getFirstEdge(int node);
+
+	protected abstract void setFirstEdge(int node, int edge);
+
+	protected abstract int getEdgeCount(int node);
+
+	protected abstract void setEdgeCount(int node, int count);
+
+	protected abstract void setLeaf(int node, boolean leaf);
+
+	protected abstract int getSolvedAction(int node);
+
+	protected abstract void setSolvedAction(int node, int action);
+
+	protected abstract int getSolvedValue(int node);
+
+	protected abstract void setSolvedValue(int node, int value);
+
+	protected abstract int getAction(int edge);
+
+	protected abstract void setAction(int edge, int action);
+
+	protected abstract int getChild(int edge);
+
+	protected abstract void setChild(int edge, int child);
+
+	protected abstract int getChosen(int edge);
+
+	protected abstract void setChosen(int edge, int chosen);
+
+	protected abstract double getEdgeRewards(int edge);
+
+	protected abstract void setEdgeRewards(int edge, double rewards);
+
+	/**
+	 * Gets the number of times a node has been reached.
+	 *
+	 * @param node
+	 *            The id of the node.
+	 * @return N(s).
+	 */
+	public abstract int getTimesReached(int node);
+
+	/**
+	 * Gets the depth of a node.
+	 *
+	 * @param node
+	 *            The id of the node.
+	 * @return The depth.
+	 */
+	public abstract int getDepth(int node);
+
+	/**
+	 * Gets the number of links to a node.
+	 *
+	 * @param node
+	 *            The id of the node.
+	 * @return The number of parents.
+	 */
+	public abstract int getParents(int node);
+
+	/**
+	 * Checks whether a node has no children.
+	 *
+	 * @param node
+	 *            The id of the node.
+	 * @return True if the node is a leaf.
+	 */
+	public abstract boolean isLeaf(int node);
+
+	/**
+	 * Gets the size of the fields of a node, including its state.
+	 *
+	 * @return The number of bytes.
+	 */
+	protected abstract int getNodeBytes();
+
+	/**
+	 * Gets the size of the fields of an edge.
+	 *
+	 * @return The number of bytes.
+	 */
+	protected abstract int getEdgeBytes();
+
+	/**
+	 * Gets the number of bytes held by the storage of the tree.
+	 *
+	 * @return The number of bytes.
+	 */
+	public abstract long getAllocatedBytes();
+
+	/**
+	 * Creates a tree of the same kind with empty storage and no nodes, for compact to copy nodes into (or newTree
+	 * to add a root to).
+	 *
+	 * @return The tree.
+	 */
+	protected abstract IdTree emptyCopy();
+
+	/**
+	 * Takes over the storage of a tree made by emptyCopy, releasing the storage of this tree.
+	 *
+	 * @param copy
+	 *            The tree.
+	 */
+	protected abstract void adopt(IdTree copy);
+
+	/*---------------------------------- ids ----------------------------------*/
+
+	/**
+	 * Hands out a node id, reusing a free one if possible.
+	 *
+	 * @return The id.
+	 */
+	private int newNodeId() {
+		if (freeNode != NONE) {
+			int node = freeNode;
+			freeNode = getFirstEdge(node);
+
+			return node;
+		}
+
+		ensureNodes(nodeLimit + 1);
+
+		return nodeLimit++;
+	}
+
+	/**
+	 * Hands out a run of edges, reusing a free run of the same length if possible.
+	 *
+	 * @param count
+	 *            The number of edges.
+	 * @return The id of the first edge.
+	 */
+	private int newEdgeRun(int count) {
+		if (count < freeRuns.length && freeRuns[count] != NONE) {
+			int start = freeRuns[count];
+			freeRuns[count] = getChild(start);
+
+			return start;
+		}
+
+		ensureEdges(edgeLimit + count);
+
+		int start = edgeLimit;
+		edgeLimit += count;
+
+		return start;
+	}
+
+	/**
+	 * Returns a run of edges to the free lists.
+	 *
+	 * @param start
+	 *            The id of the first edge.
+	 * @param count
+	 *            The number of edges.
+	 */
+	private void freeEdgeRun(int start, int count) {
+		if (count == 0) {
+			return;
+		}
+
+		if (count >= freeRuns.length) {
+			int old = freeRuns.length;
+			freeRuns = Arrays.copyOf(freeRuns, count + 1);
+			Arrays.fill(freeRuns, old, freeRuns.length, NONE);
+		}
+
+		setChild(start, freeRuns[count]);
+		freeRuns[count] = start;
+	}
+
+	/*---------------------------------- table ----------------------------------*/
+
+	/**
+	 * Hashes a state.
+	 *
+	 * @param state
+	 *            The state.
+	 * @return The hash.
+	 */
+	private long hash(GameState state) {
+		long h = scored ? ((GameStateScored) state).playerNetScore : 0;
+
+		for (int w = 0; w < stateWords; w++) {
+			h = GameState.mix(h ^ state.getWord(w));
+		}
+
+		return h;
+	}
+
+	/**
+	 * Hashes the state of a node.
+	 *
+	 * @param node
+	 *            The id of the node.
+	 * @return The hash, equal to that of an equal GameState.
+	 */
+	private long hash(int node) {
+		long h = scored ? getScore(node) : 0;
+
+		for (int w = 0; w < stateWords; w++) {
+			h = GameState.mix(h ^ getBits(node, w));
+		}
+
+		return h;
+	}
+
+	/**
+	 * Checks whether a node holds a state.
+	 *
+	 * @param node
+	 *            The id of the node.
+	 * @param state
+	 *            The state.
+	 * @return True if the states are equal.
+	 */
+	private boolean holds(int node, GameState state) {
+		if (scored && getScore(node) != ((GameStateScored) state).playerNetScore) {
+			return false;
+		}
+
+		for (int w = 0; w < stateWords; w++) {
+			if (getBits(node, w) != state.getWord(w)) {
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	/**
+	 * Finds the slot of a state, or the empty slot where it would go.
+	 *
+	 * @param state
+	 *            The state.
+	 * @return The slot.
+	 */
+	private int find(GameState state) {
+		int slot = (int) hash(state) & mask;
+
+		while (getSlot(slot) != 0 && !holds(getSlot(slot) - 1, state)) {
+			slot = (slot + 1) & mask;
+		}
+
+		return slot;
+	}
+
+	/**
+	 * Puts a node into an empty slot of the table.
+	 *
+	 * @param node
+	 *            The id of the node.
+	 */
+	protected void insert(int node) {
+		int slot = (int) hash(node) & mask;
+
+		while (getSlot(slot) != 0) {
+			slot = (slot + 1) & mask;
+		}
+
+		setSlot(slot, node + 1);
+	}
+
+	/**
+	 * Replaces the table with an empty one of enough slots for the nodes of the tree.
+	 */
+	protected void sizeTable() {
+		int size = INITIAL_CAPACITY;
+
+		while (numNodes > size * MAX_LOAD_FACTOR) {
+			size *= 2;
+		}
+
+		allocateTable(size);
+		mask = size - 1;
+	}
+
+	/**
+	 * Replaces the table with one of enough slots for the nodes and reinserts them.
+	 */
+	private void growTable() {
+		int[] entries = new int[numNodes];
+		int count = 0;
+
+		for (int slot = 0; slot <= mask; slot++) {
+			if (getSlot(slot) != 0) {
+				entries[count++] = getSlot(slot) - 1;
+			}
+		}
+
+		sizeTable();
+
+		for (int i = 0; i < count; i++) {
+			insert(entries[i]);
+		}
+	}
+
+	/**
+	 * Empties a table slot by backward-shift deletion, as in NodeTable.
+	 *
+	 * @param slot
+	 *            The slot.
+	 */
+	private void removeSlot(int slot) {
+		int hole = slot;
+		int next = (hole + 1) & mask;
+
+		while (getSlot(next) != 0) {
+			int home = (int) hash(getSlot(next) - 1) & mask;
+
+			if (((next - home) & mask) >= ((next - hole) & mask)) {
+				setSlot(hole, getSlot(next));
+				hole = next;
+			}
+
+			next = (next + 1) & mask;
+		}
+
+		setSlot(hole, 0);
+	}
+
+	/*---------------------------------- tree ----------------------------------*/
+
+	/**
+	 * Finds a specific node in the tree.
+	 *
+	 * @param state
+	 *            The state of the node.
+	 * @return The id of the node, or NONE if not found.
+	 */
+	public int findNode(GameState state) {
+		return getSlot(find(state)) - 1;
+	}
+
+	/**
+	 * Adds a new node to the tree (if it does not already exist). The new node is a leaf with no parents.
+	 *
+	 * @param state
+	 *            The state of the node.
+	 * @param depth
+	 *            The depth of the node.
+	 * @return The id of the node added or (if the node already exists in the tree) of the existing node.
+	 */
+	public int addNode(GameState state, int depth) {
+		int slot = find(state);
+
+		if (getSlot(slot) != 0) {
+			return getSlot(slot) - 1;
+		}
+
+		int node = newNodeId();
+		int[] nodeActions = game.getActions(state);
+		int first = newEdgeRun(nodeActions.length);
+
+		for (int w = 0; w < stateWords; w++) {
+			setBits(node, w, state.getWord(w));
+		}
+
+		setScore(node, scored ? ((GameStateScored) state).playerNetScore : 0);
+		setTimesReached(node, 1);
+		setDepth(node, depth);
+		setParents(node, 0);
+		setFirstEdge(node, first);
+		setEdgeCount(node, nodeActions.length);
+		setLeaf(node, true);
+		setSolvedAction(node, -1);
+		setSolvedValue(node, 0);
+
+		for (int i = 0; i < nodeActions.length; i++) {
+			setAction(first + i, nodeActions[i]);
+			setChild(first + i, NONE);
+			setChosen(first + i, 0);
+			setEdgeRewards(first + i, 0);
+		}
+
+		setSlot(slot, node + 1);
+		numNodes++;
+		leaves++;
+		totalDepth += depth;
+
+		if (depth > maximumDepth) {
+			maximumDepth = depth;
+		}
+
+		if (numNodes > (mask + 1) * MAX_LOAD_FACTOR) {
+			growTable();
+		}
+
+		if (numNodes > maximumNodes) {
+			maximumNodes = numNodes;
+			maximumUsedBytes = Math.max(maximumUsedBytes, getUsedBytes());
+		}
+
+		return node;
+	}
+
+	/**
+	 * Finds the edge of a node for an action.
+	 *
+	 * @param node
+	 *            The id of the node.
+	 * @param action
+	 *            The action.
+	 * @return The id of the edge, or NONE if the action is not possible.
+	 */
+	private int edgeOf(int node, int action) {
+		int first = getFirstEdge(node);
+		int end = first + getEdgeCount(node);
+
+		for (int edge = first; edge < end; edge++) {
+			if (getAction(edge) == action) {
+				return edge;
+			}
+		}
+
+		return NONE;
+	}
+
+	/**
+	 * Checks whether a new node should be made the child of an edge, as in MCNode.getNode and
+	 * MCNode.getSharedNode. The virtual loss of the walk is not counted as a choice.
+	 *
+	 * @param edge
+	 *            The id of the edge.
+	 * @param behavior
+	 *            Defines under which conditions a node is created.
+	 * @return True if the child should be created.
+	 */
+	private boolean expands(int edge, int behavior) {
+		return behavior == MonteCarloTreeSearch.BEHAVIOR_EXPANSION_ALWAYS
+				|| (getChosen(edge) >= MCTree.NODE_CREATION_COUNT
+						&& behavior == MonteCarloTreeSearch.BEHAVIOR_EXPANSION_STANDARD)
+				|| (getChosen(edge) - 1 >= MCTree.NODE_CREATION_COUNT
+						&& behavior == MonteCarloTreeSearch.BEHAVIOR_EXPANSION_SHARED);
+	}
+
+	/**
+	 * Makes the node of the successor state of an edge its child, adding the node if needed.
+	 *
+	 * @param node
+	 *            The id of the node of the edge.
+	 * @param edge
+	 *            The id of the edge.
+	 * @return The id of the child.
+	 */
+	private int linkChild(int node, int edge) {
+		int child = addNode(game.getSuccessorState(getState(node), getAction(edge)), getDepth(node) + 1);
+
+		link(node, edge, child);
+
+		return child;
+	}
+
+	/**
+	 * Makes a node the child of an edge and counts the new parent of the node.
+	 *
+	 * @param node
+	 *            The id of the node of the edge.
+	 * @param edge
+	 *            The id of the edge, which has no child.
+	 * @param child
+	 *            The id of the node with the successor state of the edge.
+	 */
+	private void link(int node, int edge, int child) {
+		setChild(edge, child);
+		setParents(child, getParents(child) + 1);
+
+		if (isLeaf(node)) {
+			setLeaf(node, false);
+			leaves--;
+		}
+	}
+
+	/**
+	 * Gets the successor of a node based on the given action.
+	 *
+	 * @param node
+	 *            The id of the node.
+	 * @param action
+	 *            An integer representing the action to be made.
+	 * @param behavior
+	 *            Defines under which conditions a node is created.
+	 * @return The id of the successor, or NONE.
+	 */
+	public int getNode(int node, int action, int behavior) {
+		int edge = edgeOf(node, action);
+
+		if (edge == NONE) {
+			return NONE;
+		}
+
+		if (getChild(edge) != NONE) {
+			return getChild(edge);
+		}
+
+		/* Create a new node */
+		if (expands(edge, behavior)) {
+			return linkChild(node, edge);
+		}
+
+		return NONE;
+	}
+
+	/**
+	 * Gets the successor of a node equal to a state under the symmetries of the board, as MCNode.getNode. This lets
+	 * a symmetrical tree follow the moves of an asymmetrical player.
+	 *
+	 * @param node
+	 *            The id of the node.
+	 * @param state
+	 *            The state equivalent to the one needed.
+	 * @param behavior
+	 *            Defines under which conditions a node is created.
+	 * @return The id of the successor, or NONE.
+	 */
+	public int getNode(int node, GameState state, int behavior) {
+		DotsAndBoxes board = (DotsAndBoxes) game;
+		GameState canon = board.removeSymmetries(state);
+		int first = getFirstEdge(node);
+		int end = first + getEdgeCount(node);
+
+		for (int edge = first; edge < end; edge++) {
+			int child = getChild(edge);
+
+			if (child != NONE) {
+				if (holds(child, canon)) {
+					return child;
+				}
+			} else if (board.removeSymmetries(game.getSuccessorState(state, getAction(edge))).equals(canon)) {
+				return expands(edge, behavior) ? linkChild(node, edge) : NONE;
+			}
+		}
+
+		return NONE;
+	}
+
+	/**
+	 * Gets the next action based on the average result Q(s,a) and the uncertainty bonus, as MCNode.getNextAction.
+	 *
+	 * @param node
+	 *            The id of the node.
+	 * @param c
+	 *            The uncertainty constant to be applied when calculating the bonuses of each action.
+	 * @return An integer representing the action selected.
+	 */
+	public int getNextAction(int node, double c) {
+		return getNextAction(node, c, MCNode.r);
+	}
+
+	/**
+	 * Gets the next action based on the average result Q(s,a) and the uncertainty bonus, as MCNode.getNextAction.
+	 *
+	 * @param node
+	 *            The id of the node.
+	 * @param c
+	 *            The uncertainty constant to be applied when calculating the bonuses of each action.
+	 * @param random
+	 *            The random number generator used during ties.
+	 * @return An integer representing the action selected.
+	 */
+	public int getNextAction(int node, double c, Random random) {
+
+		/* a solved node needs no statistics when playing for real */
+		if (c == 0 && getSolvedAction(node) >= 0) {
+			return getSolvedAction(node);
+		}
+
+		int action = -1;
+		double max = -50;
+		int reached = getTimesReached(node);
+		double scale = c > 0 ? c * MCNode.sqrtLog(reached) : 0;
+		double untried = reached == 1 ? 1 : Double.POSITIVE_INFINITY;
+		int first = getFirstEdge(node);
+		int end = first + getEdgeCount(node);
+
+		for (int edge = first; edge < end; edge++) {
+			int chosen = getChosen(edge);
+			double val = chosen == 0 ? untried : getEdgeRewards(edge) / chosen + scale * MCNode.inverseSqrt(chosen);
+
+			/* equal actions are chosen semi-randomly, as in MCNode */
+			if (val > max || (val == max && random.nextDouble() < .5)) {
+				max = val;
+				action = getAction(edge);
+			}
+		}
+
+		return action;
+	}
+
+	/**
+	 * Adds the given reward to the total rewards for an action.
+	 *
+	 * @param node
+	 *            The id of the node.
+	 * @param action
+	 *            An integer representing the action selected.
+	 * @param value
+	 *            The reward to be added.
+	 */
+	public void addValue(int node, int action, int value) {
+		int edge = edgeOf(node, action);
+
+		setTimesReached(node, getTimesReached(node) + 1);
+		setEdgeRewards(edge, getEdgeRewards(edge) + value);
+		setChosen(edge, getChosen(edge) + 1);
+	}
+
+	/**
+	 * Adds the results of several playouts from the same path to an action at once, as if the action had been
+	 * chosen once for each.
+	 *
+	 * @param node
+	 *            The id of the node.
+	 * @param action
+	 *            An integer representing the action selected.
+	 * @param total
+	 *            The sum of the rewards to be added.
+	 * @param count
+	 *            The number of rewards.
+	 */
+	public void addValues(int node, int action, int total, int count) {
+		int edge = edgeOf(node, action);
+
+		setTimesReached(node, getTimesReached(node) + count);
+		setEdgeRewards(edge, getEdgeRewards(edge) + total);
+		setChosen(edge, getChosen(edge) + count);
+	}
+
+	/**
+	 * Marks an action as being tried by a walk: until the result is backed up with addSharedValue, the action
+	 * counts as chosen once more and lost.
+	 *
+	 * @param node
+	 *            The id of the node.
+	 * @param action
+	 *            An integer representing the action selected.
+	 */
+	public void addVirtualLoss(int node, int action) {
+		int edge = edgeOf(node, action);
+
+		setEdgeRewards(edge, getEdgeRewards(edge) - 1);
+		setChosen(edge, getChosen(edge) + 1);
+	}
+
+	/**
+	 * Adds the given reward to the total rewards for an action and removes the virtual loss added when the action
+	 * was selected. The choice counted by the virtual loss is kept.
+	 *
+	 * @param node
+	 *            The id of the node.
+	 * @param action
+	 *            An integer representing the action selected.
+	 * @param value
+	 *            The reward to be added.
+	 */
+	public void addSharedValue(int node, int action, int value) {
+		int edge = edgeOf(node, action);
+
+		setTimesReached(node, getTimesReached(node) + 1);
+		setEdgeRewards(edge, getEdgeRewards(edge) + value + 1);
+	}
+
+	/**
+	 * Deletes a node and recursively deletes its children which are left with no parents. The node should no
+	 * longer be linked from a node which is kept, since its id is reused.
+	 *
+	 * @param node
+	 *            The id of the node to be deleted.
+	 * @return The number of nodes deleted.
+	 */
+	public int deleteBranch(int node) {
+		int slot = slotOf(node);
+
+		if (slot == NONE) {
+			return 0;
+		}
+
+		removeSlot(slot);
+
+		int deleted = 1;
+		int first = getFirstEdge(node);
+		int count = getEdgeCount(node);
+
+		numNodes--;
+		totalDepth -= getDepth(node);
+
+		if (isLeaf(node)) {
+			leaves--;
+		}
+
+		for (int edge = first; edge < first + count; edge++) {
+			int child = getChild(edge);
+
+			if (child != NONE) {
+				int parents = getParents(child) - 1;
+				setParents(child, parents);
+
+				if (parents == 0) {
+					deleted += deleteBranch(child);
+				}
+			}
+		}
+
+		freeEdgeRun(first, count);
+		setFirstEdge(node, freeNode);
+		freeNode = node;
+		deletedNodes++;
+
+		return deleted;
+	}
+
+	/**
+	 * Finds the table slot of a node.
+	 *
+	 * @param node
+	 *            The id of the node.
+	 * @return The slot, or NONE if the node is not in the table (it has been deleted).
+	 */
+	private int slotOf(int node) {
+		int slot = (int) hash(node) & mask;
+
+		while (getSlot(slot) != 0 && getSlot(slot) - 1 != node) {
+			slot = (slot + 1) & mask;
+		}
+
+		return getSlot(slot) == 0 ? NONE : slot;
+	}
+
+	/**
+	 * Evicts the least visited nodes from the tree until it has at most the given number of nodes, as MCTree.evict
+	 * does: edges are cut in order of the timesReached of their children, and each node left with no parents is
+	 * deleted with its branch. The statistics of the cut edges are kept.
+	 */
+	@Override
+	public int evict(TreePath keep, int target) {
+		if (numNodes <= target) {
+			return 0;
+		}
+
+		cutCount = 0;
+		findCuts(root, ((Path) keep).getNode(), new byte[nodeLimit]);
+
+		/* least visited first: the visits in the high bits, the index of the cut in the low bits */
+		long[] order = new long[cutCount];
+
+		for (int i = 0; i < order.length; i++) {
+			order[i] = ((long) getTimesReached(getChild(cutEdges[i])) << 32) | i;
+		}
+
+		Arrays.sort(order);
+
+		int deleted = 0;
+
+		for (int i = 0; i < order.length && numNodes > target; i++) {
+			int cut = (int) order[i];
+			int owner = cutOwners[cut];
+
+			/* the edges of deleted nodes are gone with them */
+			if (slotOf(owner) == NONE) {
+				continue;
+			}
+
+			deleted += unlink(owner, cutEdges[cut]);
+		}
+
+		/* the deepest nodes may be gone */
+		if (deleted > 0) {
+			maximumDepth = 0;
+
+			for (int slot = 0; slot <= mask; slot++) {
+				if (getSlot(slot) != 0) {
+					maximumDepth = Math.max(maximumDepth, getDepth(getSlot(slot) - 1));
+				}
+			}
+		}
+
+		return deleted;
+	}
+
+	/**
+	 * Walks the tree below a node, marking the nodes from which the kept node can be reached and listing the edges
+	 * to nodes which may be evicted (see evict).
+	 *
+	 * @param node
+	 *            The id of the node to be walked.
+	 * @param keep
+	 *            The id of the node of the current position.
+	 * @param marks
+	 *            For each node id, 0 if the node has not been walked, 1 if the kept node cannot be reached from it,
+	 *            and 2 if it can.
+	 * @return True if the kept node can be reached from the node.
+	 */
+	private boolean findCuts(int node, int keep, byte[] marks) {
+		boolean reaches = node == keep;
+		int first = getFirstEdge(node);
+		int end = first + getEdgeCount(node);
+
+		marks[node] = 1;
+
+		for (int edge = first; edge < end; edge++) {
+			int child = getChild(edge);
+
+			if (child == NONE) {
+				continue;
+			}
+
+			if (marks[child] == 0 ? findCuts(child, keep, marks) : marks[child] == 2) {
+				reaches = true;
+			} else {
+				if (cutCount == cutEdges.length) {
+					cutOwners = Arrays.copyOf(cutOwners, 2 * cutCount);
+					cutEdges = Arrays.copyOf(cutEdges, 2 * cutCount);
+				}
+
+				cutOwners[cutCount] = node;
+				cutEdges[cutCount++] = edge;
+			}
+		}
+
+		marks[node] = (byte) (reaches ? 2 : 1);
+
+		return reaches;
+	}
+
+	/**
+	 * Removes the child of an edge, keeping the statistics of the edge, and deletes the child with its branch if no
+	 * other node links to it.
+	 *
+	 * @param node
+	 *            The id of the node of the edge.
+	 * @param edge
+	 *            The id of the edge.
+	 * @return The number of nodes deleted.
+	 */
+	private int unlink(int node, int edge) {
+		int child = getChild(edge);
+
+		if (child == NONE) {
+			return 0;
+		}
+
+		setChild(edge, NONE);
+
+		int parents = getParents(child) - 1;
+		setParents(child, parents);
+
+		int first = getFirstEdge(node);
+		int end = first + getEdgeCount(node);
+		boolean leaf = true;
+
+		for (int e = first; e < end && leaf; e++) {
+			leaf = getChild(e) == NONE;
+		}
+
+		if (leaf) {
+			setLeaf(node, true);
+			leaves++;
+		}
+
+		return parents == 0 ? deleteBranch(child) : 0;
+	}
+
+	/**
+	 * Merges other IdTrees into this one, as MCTree.merge does. The trees are merged on the calling thread.
+	 */
+	@Override
+	public void merge(SearchTree[] trees, ForkJoinPool pool) {
+
+		/* every node must exist before the children are linked */
+		for (SearchTree tree : trees) {
+			IdTree from = (IdTree) tree;
+
+			for (int slot = 0; slot <= from.mask; slot++) {
+				if (from.getSlot(slot) != 0) {
+					mergeNode(from, from.getSlot(slot) - 1);
+				}
+			}
+		}
+
+		for (SearchTree tree : trees) {
+			IdTree from = (IdTree) tree;
+
+			for (int slot = 0; slot <= from.mask; slot++) {
+				if (from.getSlot(slot) == 0) {
+					continue;
+				}
+
+				int old = from.getSlot(slot) - 1;
+				int node = findCopy(from, old);
+				int first = from.getFirstEdge(old);
+				int end = first + from.getEdgeCount(old);
+
+				for (int edge = first; edge < end; edge++) {
+					int child = from.getChild(edge);
+					int own = edgeOf(node, from.getAction(edge));
+
+					if (child != NONE && getChild(own) == NONE) {
+						link(node, own, findCopy(from, child));
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Adds the statistics of a node of another tree to the equivalent node of this one, adding the node if needed.
+	 *
+	 * @param from
+	 *            The tree of the node.
+	 * @param old
+	 *            The id of the node in that tree.
+	 */
+	private void mergeNode(IdTree from, int old) {
+		int node = findCopy(from, old);
+
+		if (node == NONE) {
+			node = addNode(from.getState(old), from.getDepth(old));
+		}
+
+		/* each node is created having been reached once */
+		setTimesReached(node, getTimesReached(node) + from.getTimesReached(old) - 1);
+
+		int first = from.getFirstEdge(old);
+		int end = first + from.getEdgeCount(old);
+
+		for (int edge = first; edge < end; edge++) {
+			int own = edgeOf(node, from.getAction(edge));
+
+			setChosen(own, getChosen(own) + from.getChosen(edge));
+			setEdgeRewards(own, getEdgeRewards(own) + from.getEdgeRewards(edge));
+		}
+
+		if (getSolvedAction(node) < 0 && from.getSolvedAction(old) >= 0) {
+			setSolvedValue(node, from.getSolvedValue(old));
+			setSolvedAction(node, from.getSolvedAction(old));
+		}
+	}
+
+	/**
+	 * Finds the node of this tree with the state of a node of another tree.
+	 *
+	 * @param from
+	 *            The tree of the node.
+	 * @param old
+	 *            The id of the node in that tree.
+	 * @return The id of the node in this tree, or NONE if not found.
+	 */
+	private int findCopy(IdTree from, int old) {
+		int slot = (int) from.hash(old) & mask;
+
+		while (getSlot(slot) != 0) {
+			int node = getSlot(slot) - 1;
+
+			if (sameState(node, from, old)) {
+				return node;
+			}
+
+			slot = (slot + 1) & mask;
+		}
+
+		return NONE;
+	}
+
+	/**
+	 * Checks whether a node has the state of a node of another tree.
+	 *
+	 * @param node
+	 *            The id of the node.
+	 * @param from
+	 *            The tree of the other node.
+	 * @param old
+	 *            The id of the node in that tree.
+	 * @return True if the states are equal.
+	 */
+	private boolean sameState(int node, IdTree from, int old) {
+		if (getScore(node) != from.getScore(old)) {
+			return false;
+		}
+
+		for (int w = 0; w < stateWords; w++) {
+			if (getBits(node, w) != from.getBits(old, w)) {
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	/**
+	 * Keeps only the nodes which can be reached from a node, making it the root. This is called after each real
+	 * move, with the node of the new position. The reachable nodes are copied into fresh storage in breadth-first
+	 * order, so a node and its children lie close together, and the old storage is released. Ids change: the new
+	 * root is 0.
+	 *
+	 * @param newRoot
+	 *            The id of the node of the current position.
+	 * @return The new id of the root (0).
+	 */
+	public int compact(int newRoot) {
+		IdTree copy = emptyCopy();
+
+		/* the new id plus one of each copied node (0 until it is copied) */
+		int[] forward = new int[nodeLimit];
+
+		copy.copyNode(this, newRoot, forward);
+
+		/* the copied nodes are scanned in order, copying each child the first time it is reached */
+		for (int scan = 0; scan < copy.nodeLimit; scan++) {
+			int first = copy.getFirstEdge(scan);
+			int end = first + copy.getEdgeCount(scan);
+
+			for (int edge = first; edge < end; edge++) {
+				int child = copy.getChild(edge);
+
+				if (child == NONE) {
+					continue;
+				}
+
+				int moved = forward[child] - 1;
+
+				if (moved == NONE) {
+					moved = copy.copyNode(this, child, forward);
+				}
+
+				copy.setChild(edge, moved);
+				copy.setParents(moved, copy.getParents(moved) + 1);
+
+				if (copy.isLeaf(scan)) {
+					copy.setLeaf(scan, false);
+					copy.leaves--;
+				}
+			}
+		}
+
+		copy.sizeTable();
+
+		for (int node = 0; node < copy.nodeLimit; node++) {
+			copy.insert(node);
+		}
+
+		adopt(copy);
+
+		deletedNodes += numNodes - copy.numNodes;
+		numNodes = copy.numNodes;
+		leaves = copy.leaves;
+		totalDepth = copy.totalDepth;
+		maximumDepth = copy.maximumDepth;
+		mask = copy.mask;
+		nodeLimit = copy.nodeLimit;
+		edgeLimit = copy.edgeLimit;
+		freeNode = NONE;
+		Arrays.fill(freeRuns, NONE);
+		compactions++;
+		root = 0;
+
+		return root;
+	}
+
+	/**
+	 * Copies a node of another tree and its edges into this tree, as a leaf with no parents. The edges keep the old
+	 * ids of their children.
+	 *
+	 * @param from
+	 *            The tree of the node.
+	 * @param old
+	 *            The id of the node in that tree.
+	 * @param forward
+	 *            Receives the new id of the node plus one.
+	 * @return The new id of the node.
+	 */
+	private int copyNode(IdTree from, int old, int[] forward) {
+		int node = newNodeId();
+		int count = from.getEdgeCount(old);
+		int oldFirst = from.getFirstEdge(old);
+		int first = newEdgeRun(count);
+		int depth = from.getDepth(old);
+
+		for (int w = 0; w < stateWords; w++) {
+			setBits(node, w, from.getBits(old, w));
+		}
+
+		setScore(node, from.getScore(old));
+		setTimesReached(node, from.getTimesReached(old));
+		setDepth(node, depth);
+		setParents(node, 0);
+		setFirstEdge(node, first);
+		setEdgeCount(node, count);
+		setLeaf(node, true);
+		setSolvedAction(node, from.getSolvedAction(old));
+		setSolvedValue(node, from.getSolvedValue(old));
+
+		for (int i = 0; i < count; i++) {
+			setAction(first + i, from.getAction(oldFirst + i));
+			setChild(first + i, from.getChild(oldFirst + i));
+			setChosen(first + i, from.getChosen(oldFirst + i));
+			setEdgeRewards(first + i, from.getEdgeRewards(oldFirst + i));
+		}
+
+		forward[old] = node + 1;
+		numNodes++;
+		leaves++;
+		totalDepth += depth;
+
+		if (depth > maximumDepth) {
+			maximumDepth = depth;
+		}
+
+		return node;
+	}
+
+	/**
+	 * Gets the state of a node.
+	 *
+	 * @param node
+	 *            The id of the node.
+	 * @return A new GameState (or GameStateScored) equal to the state of the node.
+	 */
+	public GameState getState(int node) {
+		if (stateWords == 1) {
+			return scored ? new GameStateScored(getBits(node, 0), getScore(node)) : new GameState(getBits(node, 0));
+		}
+
+		long[] words = new long[stateWords];
+
+		for (int w = 0; w < stateWords; w++) {
+			words[w] = getBits(node, w);
+		}
+
+		return scored ? new GameStateScored(words, getScore(node)) : new GameState(words);
+	}
+
+	/**
+	 * Checks whether the board of a position is the state of a node, without creating the state.
+	 *
+	 * @param node
+	 *            The id of the node.
+	 * @param context
+	 *            The position.
+	 * @return True if each word of the board equals that of the state.
+	 */
+	public boolean matches(int node, PlayoutContext context) {
+		for (int w = 0; w < stateWords; w++) {
+			if (getBits(node, w) != context.getWord(w)) {
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	/**
+	 * Gets the possible actions of a node.
+	 *
+	 * @param node
+	 *            The id of the node.
+	 * @return A new array of the actions, in the order of the edges.
+	 */
+	public int[] getArrayOfActions(int node) {
+		int first = getFirstEdge(node);
+		int[] nodeActions = new int[getEdgeCount(node)];
+
+		for (int i = 0; i < nodeActions.length; i++) {
+			nodeActions[i] = getAction(first + i);
+		}
+
+		return nodeActions;
+	}
+
+	/**
+	 * Gets the number of possible actions of a node.
+	 *
+	 * @param node
+	 *            The id of the node.
+	 * @return The number of edges, 0 for a finished game.
+	 */
+	public int getActionCount(int node) {
+		return getEdgeCount(node);
+	}
+
+	/**
+	 * Gets the number of times an action was chosen from a node.
+	 *
+	 * @param node
+	 *            The id of the node.
+	 * @param action
+	 *            The action.
+	 * @return N(s, a), or 0 if the action is not possible.
+	 */
+	public int getTimesChosen(int node, int action) {
+		int edge = edgeOf(node, action);
+
+		return edge == NONE ? 0 : getChosen(edge);
+	}
+
+	/**
+	 * Gets the total rewards of an action from a node.
+	 *
+	 * @param node
+	 *            The id of the node.
+	 * @param action
+	 *            The action.
+	 * @return W(s, a), or 0 if the action is not possible.
+	 */
+	public double getRewards(int node, int action) {
+		int edge = edgeOf(node, action);
+
+		return edge == NONE ? 0 : getEdgeRewards(edge);
+	}
+
+	@Override
+	public TreePath newPath() {
+		return new Path(root);
+	}
+
+	@Override
+	public SearchTree newTree(GameState state, int depth) {
+		IdTree tree = emptyCopy();
+
+		tree.sizeTable();
+		tree.root = tree.addNode(state, depth);
+
+		return tree;
+	}
+
+	/**
+	 * The tree must be locked by each thread which walks it or backs up a result.
+	 */
+	@Override
+	public boolean isConcurrent() {
+		return false;
+	}
+
+	/**
+	 * Gets the number of bytes of the storage of the tree in use, by the node and edge ids handed out and by the
+	 * table.
+	 *
+	 * @return The number of bytes.
+	 */
+	@Override
+	public long getUsedBytes() {
+		return (long) nodeLimit * getNodeBytes() + (long) edgeLimit * getEdgeBytes() + 4L * (mask + 1);
+	}
+
+	/**
+	 * Gets the statistics of the tree.
+	 *
+	 * @return A String with the counters and the size of the storage.
+	 */
+	public String toString() {
+		return "nodes=" + numNodes + " deleted=" + deletedNodes + " leaves=" + leaves + " maxDepth=" + maximumDepth
+				+ " compactions=" + compactions + " used=" + getUsedBytes() + "B allocated=" + getAllocatedBytes()
+				+ "B";
+	}
+
+	/**
+	 * A path of node ids of this tree. Compacting the tree changes the ids, so only the path passed to afterMove
+	 * stays valid (see ArenaTree).
+	 */
+	public class Path extends TreePath {
+
+		/**
+		 * The ids of the nodes of the path.
+		 */
+		private int[] nodes = new int[8];
+
+		/**
+		 * Constructor for a Path holding only a node.
+		 *
+		 * @param node
+		 *            The id of the node.
+		 */
+		Path(int node) {
+			nodes[0] = node;
+			length = 1;
+		}
+
+		/**
+		 * Gets the last node of the path.
+		 *
+		 * @return The id of the node.
+		 */
+		public int getNode() {
+			return nodes[length - 1];
+		}
+
+		/**
+		 * Makes a node the only node of the path.
+		 *
+		 * @param node
+		 *            The id of the node.
+		 */
+		void reset(int node) {
+			nodes[0] = node;
+			length = 1;
+		}
+
+		@Override
+		public SearchTree getTree() {
+			return IdTree.this;
+		}
+
+		@Override
+		public void start(TreePath position) {
+			reset(((Path) position).getNode());
+		}
+
+		@Override
+		protected void keepLast() {
+			reset(getNode());
+		}
+
+		/**
+		 * Adds a node to the path, or leaves the path unchanged if it is NONE.
+		 *
+		 * @param node
+		 *            The id of the node.
+		 * @return True if the node was added.
+		 */
+		private boolean add(int node) {
+			if (node == NONE) {
+				return false;
+			}
+
+			if (length == nodes.length) {
+				nodes = Arrays.copyOf(nodes, 2 * length);
+			}
+
+			nodes[length++] = node;
+
+			return true;
+		}
+
+		@Override
+		public boolean follow(int action, int behavior) {
+			return add(IdTree.this.getNode(getNode(), action, behavior));
+		}
+
+		@Override
+		public boolean follow(GameState state, int behavior) {
+			return add(IdTree.this.getNode(getNode(), state, behavior));
+		}
+
+		@Override
+		public GameState getState() {
+			return IdTree.this.getState(getNode());
+		}
+
+		@Override
+		public boolean matches(PlayoutContext context) {
+			return IdTree.this.matches(getNode(), context);
+		}
+
+		@Override
+		public int getDepth() {
+			return IdTree.this.getDepth(getNode());
+		}
+
+		@Override
+		public int getActionCount() {
+			return IdTree.this.getActionCount(getNode());
+		}
+
+		@Override
+		public int[] getArrayOfActions() {
+			return IdTree.this.getArrayOfActions(getNode());
+		}
+
+		@Override
+		public int getSolvedAction() {
+			return IdTree.this.getSolvedAction(getNode());
+		}
+
+		@Override
+		public int getSolvedValue() {
+			return IdTree.this.getSolvedValue(getNode());
+		}
+
+		@Override
+		public void setSolved(int value, int action) {
+			setSolvedValue(getNode(), value);
+			setSolvedAction(getNode(), action);
+		}
+
+		@Override
+		public int getNextAction(double c, Random random) {
+			return IdTree.this.getNextAction(getNode(), c, random);
+		}
+
+		@Override
+		public void addVirtualLoss(int action) {
+			IdTree.this.addVirtualLoss(getNode(), action);
+		}
+
+		@Override
+		public String describeActions(int index, double c) {
+			int node = nodes[index];
+			int reached = getTimesReached(node);
+			int first = getFirstEdge(node);
+			StringBuilder linkInfo = new StringBuilder();
+
+			for (int i = 0; i < getEdgeCount(node); i++) {
+				int chosen = getChosen(first + i);
+				double bonus = chosen == 0 ? (reached == 1 ? 1 : Double.POSITIVE_INFINITY)
+						: c * MCNode.sqrtLog(reached) * MCNode.inverseSqrt(chosen);
+
+				linkInfo.append("link " + i + ": " + getAction(first + i) + " " + chosen + " "
+						+ getEdgeRewards(first + i) + " " + bonus + "\n");
+			}
+
+			return linkInfo.toString();
+		}
+
+		@Override
+		public void addValue(int index, int action, int value) {
+			IdTree.this.addValue(nodes[index], action, value);
+		}
+
+		@Override
+		public void addValues(int index, int action, int total, int count) {
+			IdTree.this.addValues(nodes[index], action, total, count);
+		}
+
+		@Override
+		public void addSharedValue(int index, int action, int value) {
+			IdTree.this.addSharedValue(nodes[index], action, value);
+		}
+
+		/**
+		 * The backup thread holds the lock of the tree, as do the other threads, so the shared backup is used.
+		 */
+		@Override
+		public void addPipelinedValue(int index, int action, int value) {
+			IdTree.this.addSharedValue(nodes[index], action, value);
+		}
+	}
+}
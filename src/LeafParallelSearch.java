@@ -0,0 +1,209 @@
+//package MCTS;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * Runs the simulations of a move on one thread, but plays out several games at once from the position where each
+ * simulation leaves the tree (leaf parallelism). The results of the playouts are backed up together, so each walk of
+ * the tree gives several samples: the actions along the path are counted as chosen once for each playout and their
+ * rewards are the sum of the results (see TreePath.addValues). Exact results (solved or finished games) are weighted
+ * the same, so every walk adds the same number of visits.
+ * <p>
+ * This pays off on large boards, where the playouts cost much more than the walk of the tree. The playouts run on a
+ * ForkJoinPool, each with its own position and random number generator.
+ */
+
+public class LeafParallelSearch implements ThreadedSearch {
+
+	/**
+	 * The threads which run the playouts.
+	 */
+	private final ForkJoinPool pool;
+
+	/**
+	 * The playouts of a batch, kept from one batch to the next.
+	 */
+	private final List<Playout> playouts;
+
+	/**
+	 * The position used to walk the tree.
+	 */
+	private PlayoutContext context;
+
+	/**
+	 * The endgame solver used while walking the tree, or null if positions are not solved.
+	 */
+	private EndgameSolver solver;
+
+	/**
+	 * The random number generator used while walking the tree.
+	 */
+	private final Random random = new Random();
+
+	/**
+	 * Constructor for the LeafParallelSearch.
+	 *
+	 * @param game
+	 *            The game to be simulated. Searches may use other games on a board of the same size.
+	 * @param threads
+	 *            The number of threads which run the playouts.
+	 * @param playouts
+	 *            The number of playouts from each position where a simulation leaves the tree.
+	 */
+	public LeafParallelSearch(DotsAndBoxes game, int threads, int playouts) {
+		Playout[] batch = new Playout[Math.max(1, playouts)];
+
+		for (int k = 0; k < batch.length; k++) {
+			batch[k] = new Playout(game);
+		}
+
+		this.playouts = Arrays.asList(batch);
+		this.pool = new ForkJoinPool(Math.max(1, threads));
+		this.context = new PlayoutContext(game);
+	}
+
+	@Override
+	public int getThreads() {
+		return pool.getParallelism();
+	}
+
+	/**
+	 * Gets the number of playouts of a batch.
+	 *
+	 * @return The number of playouts from each position where a simulation leaves the tree.
+	 */
+	public int getPlayouts() {
+		return playouts.size();
+	}
+
+	/**
+	 * Runs simulations from a node until the given number of playouts is reached or the node is solved. The number
+	 * is rounded up to a whole number of batches.
+	 */
+	@Override
+	public int search(TreePath position, int p1Net, SearchTree tree, DotsAndBoxes game, int simulations) {
+		int performed = 0;
+
+		if (!context.fits(game)) {
+			context = new PlayoutContext(game);
+		}
+
+		if (MonteCarloTreeSearch.solverEdges > 0 && (solver == null || !solver.fits(game))) {
+			solver = new EndgameSolver(game, MonteCarloTreeSearch.solverEdges, 20);
+		}
+
+		for (Playout playout : playouts) {
+			playout.fit(game);
+		}
+
+		while (performed < simulations && position.getSolvedAction() < 0) {
+			MonteCarloTreeSearch.simulate(position, p1Net, game, context, solver, random, false, this,
+					MonteCarloTreeSearch.simulationMoves);
+			performed += playouts.size();
+		}
+
+		return performed;
+	}
+
+	/**
+	 * Plays out a batch of games from a position.
+	 *
+	 * @param leaf
+	 *            The position where the simulation left the tree. It is not changed.
+	 * @return The sum of the results for player one (each -1 for a loss, 0 for a tie, and 1 for a win).
+	 */
+	int playout(PlayoutContext leaf) {
+		GameState state = leaf.getState();
+
+		for (Playout playout : playouts) {
+			playout.start(state, leaf.isPlayerOne(), leaf.getNetScore());
+		}
+
+		int total = 0;
+
+		try {
+			for (Future<Integer> result : pool.invokeAll(playouts)) {
+				total += result.get();
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("interrupted while playing out", e);
+		} catch (ExecutionException e) {
+			throw new IllegalStateException("playout failed", e.getCause());
+		}
+
+		return total;
+	}
+
+	/**
+	 * One playout of a batch.
+	 */
+	private static class Playout implements Callable<Integer> {
+
+		/**
+		 * The position used by this playout.
+		 */
+		private PlayoutContext context;
+
+		/**
+		 * The random number generator of this playout.
+		 */
+		private final Random random = new Random();
+
+		/**
+		 * The starting position of the current batch.
+		 */
+		private GameState state;
+		private boolean playerOne;
+		private int p1Net;
+
+		/**
+		 * Constructor for the Playout.
+		 *
+		 * @param game
+		 *            The game to be played out.
+		 */
+		Playout(DotsAndBoxes game) {
+			context = new PlayoutContext(game);
+		}
+
+		/**
+		 * Makes sure the position of this playout is for the board of a game.
+		 *
+		 * @param game
+		 *            The game to be played out.
+		 */
+		void fit(DotsAndBoxes game) {
+			if (!context.fits(game)) {
+				context = new PlayoutContext(game);
+			}
+		}
+
+		/**
+		 * Sets the starting position of the next batch.
+		 *
+		 * @param state
+		 *            The edges taken.
+		 * @param playerOne
+		 *            True if player one is to move.
+		 * @param p1Net
+		 *            The net score for player one.
+		 */
+		void start(GameState state, boolean playerOne, int p1Net) {
+			this.state = state;
+			this.playerOne = playerOne;
+			this.p1Net = p1Net;
+		}
+
+		@Override
+		public Integer call() {
+			return MonteCarloTreeSearch.simulateDefault(context, state, playerOne, p1Net, random);
+		}
+	}
+}
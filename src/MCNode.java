@@ -1,6 +1,8 @@
 //package MCTS;
 
 import java.util.Random;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
 
 /**
  * A single node of a Monte Carlo tree.
@@ -19,6 +21,30 @@ public class MCNode {
 	 */
 	public static Random r = new Random();
 
+	/**
+	 * The size of the lookup tables of square roots of logarithms and inverse
+	 * square roots of small counts.
+	 */
+	static final int TABLE_SIZE = 1 << 14;
+
+	/**
+	 * SQRT_LOGS[n] is Math.sqrt(Math.log(n)), except that SQRT_LOGS[0] is 0
+	 * (a node gives no bonus before its first backup).
+	 */
+	private static final double[] SQRT_LOGS = new double[TABLE_SIZE];
+
+	/**
+	 * INVERSE_SQRTS[n] is 1 / Math.sqrt(n).
+	 */
+	private static final double[] INVERSE_SQRTS = new double[TABLE_SIZE];
+
+	static {
+		for (int n = 0; n < TABLE_SIZE; n++) {
+			SQRT_LOGS[n] = n == 0 ? 0 : Math.sqrt(Math.log(n));
+			INVERSE_SQRTS[n] = 1 / Math.sqrt(n);
+		}
+	}
+
 	/**
 	 * The state represented by this node.
 	 */
@@ -39,20 +65,63 @@ public class MCNode {
 	 * The number of nodes of which this node is a child. This is used to delete
 	 * branches of the tree without removing nodes who are children of other
 	 * nodes. It is necessary because the nodes are contained in a Hashtable, so
-	 * just deleting all parents does not destroy the node.
+	 * just deleting all parents does not destroy the node. Counts every link
+	 * whose child is this node.
 	 */
-	public int parents = 0;
+	public volatile int parents = 0;
 
 	/**
 	 * True if this node is a leaf (has no children).
 	 */
-	public boolean isLeaf = true;
+	public volatile boolean isLeaf = true;
+
+	/**
+	 * Atomic updates of parents and of the children of links, so several
+	 * threads can expand the tree at once.
+	 */
+	private static final AtomicIntegerFieldUpdater<MCNode> PARENTS = AtomicIntegerFieldUpdater
+			.newUpdater(MCNode.class, "parents");
+	private static final AtomicReferenceFieldUpdater<ActionLink, MCNode> CHILD = AtomicReferenceFieldUpdater
+			.newUpdater(ActionLink.class, MCNode.class, "child");
+	private static final AtomicIntegerFieldUpdater<ActionLink> VIRTUAL_LOSSES = AtomicIntegerFieldUpdater
+			.newUpdater(ActionLink.class, "virtualLosses");
 
 	/**
 	 * An array representing the possible moves from this node.
 	 */
 	public ActionLink[] links;
 
+	/**
+	 * linkIndex[a] is the index in links of the link for action a plus one,
+	 * as an unsigned byte, or 0 if a is not possible. Null if there are more
+	 * than MAX_INDEXED_LINKS links, in which case the links are searched.
+	 */
+	private byte[] linkIndex;
+
+	/**
+	 * The largest number of links which can be indexed by linkIndex.
+	 */
+	static final int MAX_INDEXED_LINKS = 255;
+
+	/**
+	 * The best action from this node as proven by the endgame solver, or -1 if
+	 * the node has not been solved.
+	 */
+	public volatile int solvedAction = -1;
+
+	/**
+	 * The net score the player to move gains from this node under perfect
+	 * play. Only meaningful if solvedAction is not -1.
+	 */
+	public int solvedValue;
+
+	/**
+	 * The N(s) from which the uncertainty bonuses are computed: timesReached
+	 * as of the last backup or synchronization, or 0 if there has been none
+	 * (untried actions then score 1 rather than infinity).
+	 */
+	int bonusCount = 0;
+
 	/**
 	 * Constructor for MCNode - only providing the games state; e.g. to use
 	 *    with the findNode method in the MCTree class
@@ -77,16 +146,14 @@ public class MCNode {
   	 *  @return The MCNode with the state with the edge added
 	**/
 	public static MCNode getStateAfterActions (MCNode current, int [] edges, int maxEdges) {
-		long newState = current.state.longState;
+		GameState newState = current.state;
+		int width = (maxEdges + 63) / 64;
                 for (int edge : edges) {
               //      System.out.print (" adding edge " + edge + " ");
-                    long toAdd = (1 << (maxEdges - edge -1));
-              //      System.out.print (toAdd + " ");
-                    newState = newState | toAdd;
-              //      System.out.println (" results in " + newState);
+                    newState = newState.setBit(maxEdges - edge - 1, width);
                 }
 		
-		return new MCNode(new GameState(newState));
+		return new MCNode(newState);
     }
 	
 	/**
@@ -121,6 +188,53 @@ public class MCNode {
 		for (int i = 0; i < links.length; i++) {
 			links[i] = new ActionLink(actions[i], null);
 		}
+
+		indexLinks();
+	}
+
+	/**
+	 * Builds the index from actions to links. Must be called again if the
+	 * links are reordered.
+	 */
+	public void indexLinks() {
+		if (links.length > MAX_INDEXED_LINKS) {
+			linkIndex = null;
+			return;
+		}
+
+		int max = -1;
+
+		for (ActionLink link : links) {
+			max = Math.max(max, link.action);
+		}
+
+		linkIndex = new byte[max + 1];
+
+		for (int i = 0; i < links.length; i++) {
+			linkIndex[links[i].action] = (byte) (i + 1);
+		}
+	}
+
+	/**
+	 * Finds the link for an action.
+	 * 
+	 * @param action
+	 *            The action.
+	 * @return The index of the link in links, or -1 if the action is not
+	 *         possible.
+	 */
+	public int indexOf(int action) {
+		if (linkIndex != null) {
+			return action >= 0 && action < linkIndex.length ? (linkIndex[action] & 0xFF) - 1 : -1;
+		}
+
+		for (int i = 0; i < links.length; i++) {
+			if (links[i].action == action) {
+				return i;
+			}
+		}
+
+		return -1;
 	}
 
 	/**
@@ -133,6 +247,27 @@ public class MCNode {
 	 * @return An integer representing the action selected.
 	 */
 	public int getNextAction(double c) {
+		return getNextAction(c, r);
+	}
+
+	/**
+	 * Gets the next action based on the average result Q(s,a) and the
+	 * uncertainty bonus. Actions being tried by other threads count as
+	 * losses until their results are backed up (see addVirtualLoss).
+	 * 
+	 * @param c
+	 *            The uncertainty constant to be applied when calculating the
+	 *            bonuses of each action.
+	 * @param random
+	 *            The random number generator used during ties.
+	 * @return An integer representing the action selected.
+	 */
+	public int getNextAction(double c, Random random) {
+
+		/* a solved node needs no statistics when playing for real */
+		if (c == 0 && solvedAction >= 0) {
+			return solvedAction;
+		}
 
 		/* By default, the links are sorted in order by value + bonus 
 		IS NOT TRUE FOR THE PARALLELIZED VERSION */
@@ -144,14 +279,15 @@ public class MCNode {
 		double max = -50;
 
 		/* find the action with the largest average reward W(s,a) */
-		/* determine whether bonus should be applied */
-		boolean applyBonus = false;
-		if (c > 0)
-		  applyBonus = true;
+		/* the bonus c * sqrt(log N(s) / N(s,a)) is only applied if c > 0 */
+		double scale = c > 0 ? c * sqrtLog(bonusCount) : 0;
+		double untried = bonusCount == 0 ? 1 : Double.POSITIVE_INFINITY;
+
 		for (int i = 0; i < links.length; i++) {
-			
-			// make sure that bias is applied if c > 0
-			double val = links[i].getValue(applyBonus);
+			ActionLink link = links[i];
+			int pending = link.virtualLosses;
+			int chosen = link.timesChosen + pending;
+			double val = chosen == 0 ? untried : (link.rewards - pending) / chosen + scale * inverseSqrt(chosen);
 
 			/*
 			 * Equal actions should be chosen semi-randomly. Apart from the
@@ -159,7 +295,7 @@ public class MCNode {
 			 * never be equal. The probability of more than two equal values is
 			 * vanishingly small, so there are assumed to be only ties of two.
 			 */
-			if (val > max || (val == max && r.nextDouble() < .5)) {
+			if (val > max || (val == max && random.nextDouble() < .5)) {
 				max = val;
 				action = links[i].action;
 			}
@@ -190,32 +326,24 @@ public class MCNode {
 	 */
 	public MCNode getNode(int action, int behavior) {
 
-		/* check every action to find the one specified */
-		for (int i = 0; i < links.length; i++) {
+		/* find the link of the action specified */
+		int i = indexOf(action);
 
-			/* Get the corresponding child */
-			if (links[i].action == action) {
-
-				if (links[i].child != null) {
-					return links[i].child;
-				}
-
-				/* Create a new node */
-				else if (behavior == MonteCarloTreeSearch.BEHAVIOR_EXPANSION_ALWAYS
-						|| (links[i].timesChosen == MCTree.NODE_CREATION_COUNT
-								&& behavior == MonteCarloTreeSearch.BEHAVIOR_EXPANSION_STANDARD)) {
+		if (i < 0) {
+			return null;
+		}
 
-					MCNode newNode = getNextNode(action);
-					links[i].child = tree.addNode(newNode);
+		/* Get the corresponding child */
+		if (links[i].child != null) {
+			return links[i].child;
+		}
 
-					if (!isLeaf) {
-						isLeaf = true;
-						tree.leaves--;
-					}
+		/* Create a new node */
+		else if (behavior == MonteCarloTreeSearch.BEHAVIOR_EXPANSION_ALWAYS
+				|| (links[i].timesChosen >= MCTree.NODE_CREATION_COUNT
+						&& behavior == MonteCarloTreeSearch.BEHAVIOR_EXPANSION_STANDARD)) {
 
-					return links[i].child;
-				}
-			}
+			return installChild(links[i], tree.addNode(getNextNode(action)));
 		}
 
 		return null;
@@ -233,7 +361,7 @@ public class MCNode {
 	 */
 	public MCNode getNode(GameState state, int behavior) {
 
-		String canon = ((DotsAndBoxes) tree.game).removeSymmetries(state).getString();
+		GameState canon = ((DotsAndBoxes) tree.game).removeSymmetries(state);
 
 		/* check every action to find the one specified */
 		for (int i = 0; i < links.length; i++) {
@@ -243,7 +371,7 @@ public class MCNode {
 
 				// if the asymmetrical state is the same as the canon of the
 				// state given
-				if (links[i].child.state.getString().equals(canon)) {
+				if (links[i].child.state.equals(canon)) {
 					return links[i].child;
 				}
 			}
@@ -254,22 +382,14 @@ public class MCNode {
 
 				// if the nonsymmetrical state is the same as the canon of the
 				// state given
-				if (((DotsAndBoxes) tree.game).removeSymmetries(linkState).getString().equals(canon)) {
+				if (((DotsAndBoxes) tree.game).removeSymmetries(linkState).equals(canon)) {
 
 					/* Create a new node */
 					if (behavior == MonteCarloTreeSearch.BEHAVIOR_EXPANSION_ALWAYS
 							|| (links[i].timesChosen == MCTree.NODE_CREATION_COUNT
 									&& behavior == MonteCarloTreeSearch.BEHAVIOR_EXPANSION_STANDARD)) {
 
-						MCNode newNode = getNextNode(links[i].action);
-						links[i].child = tree.addNode(newNode);
-
-						if (isLeaf) {
-							isLeaf = false;
-							tree.leaves--;
-						}
-
-						return links[i].child;
+						return installChild(links[i], tree.addNode(getNextNode(links[i].action)));
 					}
 				}
 			}
@@ -278,6 +398,36 @@ public class MCNode {
 		return null;
 	}
 
+	/**
+	 * Makes a node of the tree the child of a link, unless another thread
+	 * already gave the link a child, and counts the new parent of the node.
+	 * 
+	 * @param link
+	 *            A link of this node.
+	 * @param child
+	 *            The node in the tree with the successor state of the link.
+	 * @return The child of the link.
+	 */
+	private MCNode installChild(ActionLink link, MCNode child) {
+		if (!CHILD.compareAndSet(link, null, child)) {
+			return link.child;
+		}
+
+		PARENTS.incrementAndGet(child);
+
+		/* only the first child of a node takes the lock */
+		if (isLeaf) {
+			synchronized (this) {
+				if (isLeaf) {
+					isLeaf = false;
+					tree.removeLeaf();
+				}
+			}
+		}
+
+		return child;
+	}
+
 	/**
 	 * Checks if this node is equivalent to another. For the purpose of this
 	 * method, two nodes are equal is their states are equal.
@@ -291,49 +441,79 @@ public class MCNode {
 	}
 
 	/**
-	 * Adds the given reward to the total rewards for an action.
+	 * Adds the given reward to the total rewards for an action. The
+	 * uncertainty bonuses are not stored but computed during selection, so
+	 * only the N(s) they are computed from is updated.
 	 * 
 	 * @param action
 	 *            An integer representing the action selected.
 	 * @param value
 	 *            The reward to be added.
-	 * @param c
-	 *            The uncertainty constant to be applied to the updated bonus.
 	 */
-	public void addValue(int action, int value, double c) {
+	public void addValue(int action, int value) {
 		timesReached++;
 
-		/* find the index of the action */
-		int index = -1;
-		for (int i = 0; i < links.length; i++) {
-			if (links[i].action == action) {
-				index = i;
-				break;
-			}
-		}
+		links[indexOf(action)].update(value);
+		bonusCount = timesReached;
+	}
 
-		links[index].update(value);
+	/**
+	 * Adds the results of several playouts from the same path to an action
+	 * at once, as if the action had been chosen once for each.
+	 * 
+	 * @param action
+	 *            An integer representing the action selected.
+	 * @param total
+	 *            The sum of the rewards to be added.
+	 * @param count
+	 *            The number of rewards.
+	 */
+	public void addValues(int action, int total, int count) {
+		ActionLink link = links[indexOf(action)];
 
-		/* update the bonuses and reorder the list */
-		for (int i = 0; i < links.length; i++) {
-			links[i].updateBonus(timesReached, c);
+		timesReached += count;
+		link.timesChosen += count;
+		link.rewards += total;
+		bonusCount = timesReached;
+	}
 
-//			sortLink(links, i);
-		}
+	/**
+	 * Gets the square root of the natural logarithm of a count, from a table
+	 * for small counts.
+	 * 
+	 * @param n
+	 *            The count.
+	 * @return Math.sqrt(Math.log(n)), or 0 if n is 0.
+	 */
+	static double sqrtLog(int n) {
+		return n < TABLE_SIZE && n >= 0 ? SQRT_LOGS[n] : Math.sqrt(Math.log(n));
+	}
+
+	/**
+	 * Gets the inverse square root of a count, from a table for small counts.
+	 * 
+	 * @param n
+	 *            The count.
+	 * @return 1 / Math.sqrt(n).
+	 */
+	static double inverseSqrt(int n) {
+		return n < TABLE_SIZE && n >= 0 ? INVERSE_SQRTS[n] : 1 / Math.sqrt(n);
 	}
 	
 	/**
-	 * Sorts an updated value into an already sorted array starting with its current index.
+	 * Sorts an updated value into an already sorted array starting with its current index. The node's
+	 * indexLinks must be called afterwards.
 	 * 
 	 * @param links The array being sorted.
 	 * @param i The index of the element to sort.
+	 * @param c The uncertainty constant.
 	 */
-	public static void sortLink(ActionLink[] links, int i){
+	public static void sortLink(ActionLink[] links, int i, double c){
 
 		/* move link up the queue while it's value is greater than the link
 		 * before it
 		 */
-		while (i > 0 && links[i].getValue(true) > links[i - 1].getValue(true)) {
+		while (i > 0 && links[i].getValue(c) > links[i - 1].getValue(c)) {
 			ActionLink tempLink = links[i];
 			links[i] = links[i - 1];
 			links[i - 1] = tempLink;
@@ -345,7 +525,7 @@ public class MCNode {
 		 * move link down the queue while it's value is less than the link
 		 * after it
 		 */
-		while (i < links.length - 1 && links[i].getValue(true) < links[i + 1].getValue(true)) {
+		while (i < links.length - 1 && links[i].getValue(c) < links[i + 1].getValue(c)) {
 			ActionLink tempLink = links[i];
 			links[i] = links[i + 1];
 			links[i + 1] = tempLink;
@@ -371,8 +551,10 @@ public class MCNode {
 	 */
 	public void delinkChildren() {
 		for (int i = 0; i < links.length; i++) {
-			if (links[i].child != null) {
-				links[i].child.parents--;
+			MCNode child = links[i].child;
+
+			if (child != null) {
+				PARENTS.decrementAndGet(child);
 			}
 		}
 	}
@@ -380,31 +562,82 @@ public class MCNode {
 	/**
 	 * Merges this node with another.
 	 * 
-	 * Assumptions: The two nodes are equivalent (have equivalent states). When
-	 * both nodes have pointers for a child, the pointers are to the same child,
-	 * not just an equivalent one.
+	 * Assumptions: The two nodes are equivalent (have equivalent states). The
+	 * other node may belong to another tree.
 	 * 
-	 * The primitive values of the given node are combined with this one.
-	 * Objects that exist in both nodes are kept from this node. Objects which
-	 * exist in the given node but not this one are added.
-	 * 
-	 * It is the duty of the tree to merge the nodes recursively (deepest nodes
-	 * first) to ensure that all links point to the same children.
+	 * The visit counts and rewards of the given node are added to this one,
+	 * link by link. Children are not touched: it is the duty of the tree to
+	 * link the children (see MCTree.merge). Nodes of several trees may be
+	 * merged into this one at once.
 	 *
 	 * @param node
 	 *            The node with which to be merged.
 	 */
-	public void mergeNode(MCNode node) {
+	public synchronized void mergeNode(MCNode node) {
 		if (node == null) {
 			return;
 		}
 
-		timesReached += node.timesReached;
-		isLeaf = (isLeaf && node.isLeaf);
+		/* each node is created having been reached once */
+		timesReached += node.timesReached - 1;
+
+		for (ActionLink link : node.links) {
+			links[indexOf(link.action)].merge(link);
+		}
+
+		if (solvedAction < 0 && node.solvedAction >= 0) {
+			solvedValue = node.solvedValue;
+			solvedAction = node.solvedAction;
+		}
+
+		bonusCount = timesReached;
+	}
+
+	/**
+	 * Makes a node of the tree the child of an action, unless the action
+	 * already has a child.
+	 * 
+	 * @param action
+	 *            An integer representing the action.
+	 * @param child
+	 *            The node in the tree with the successor state of the action.
+	 * @return The child of the action.
+	 */
+	public MCNode linkChild(int action, MCNode child) {
+		return installChild(links[indexOf(action)], child);
+	}
+
+	/**
+	 * Removes the child of an action, keeping the statistics of the action,
+	 * and uncounts this node as a parent of the child. The child is made again
+	 * if the action is selected later. Must not be called while other threads
+	 * search the tree.
+	 * 
+	 * @param action
+	 *            An integer representing the action.
+	 * @return The removed child, or null if the action had none.
+	 */
+	public MCNode unlinkChild(int action) {
+		ActionLink link = links[indexOf(action)];
+		MCNode child = link.child;
+
+		if (child == null) {
+			return null;
+		}
+
+		link.child = null;
+		PARENTS.decrementAndGet(child);
 
 		for (int i = 0; i < links.length; i++) {
-			links[i].merge(node.links[i]);
+			if (links[i].child != null) {
+				return child;
+			}
 		}
+
+		isLeaf = true;
+		tree.addLeaf();
+
+		return child;
 	}
 	
 	
@@ -451,6 +684,103 @@ public class MCNode {
 	
 	/*------------------------------------------------------------------------------------------*/
 
+	/*---------------------------------Shared-tree search---------------------------------------*/
+
+	/*
+	 * Several threads may search one tree at once (see SharedTreeSearch).
+	 * Selection reads the statistics without locking, so a thread may see a
+	 * backup of another thread half done; the counts are only changed while
+	 * holding the lock of the node, so none are lost. Virtual losses are
+	 * counted and children are installed with compareAndSet (see
+	 * installChild).
+	 */
+
+	/**
+	 * Marks an action as being tried by a thread. Until the result is backed
+	 * up with addSharedValue, the action counts as chosen once more and lost,
+	 * so other threads descending through this node prefer other actions.
+	 * 
+	 * @param action
+	 *            An integer representing the action selected.
+	 */
+	public void addVirtualLoss(int action) {
+		VIRTUAL_LOSSES.incrementAndGet(links[indexOf(action)]);
+	}
+
+	/**
+	 * Adds the given reward to the total rewards for an action and removes
+	 * the virtual loss added when the action was selected.
+	 * 
+	 * @param action
+	 *            An integer representing the action selected.
+	 * @param value
+	 *            The reward to be added.
+	 */
+	public synchronized void addSharedValue(int action, int value) {
+		ActionLink link = links[indexOf(action)];
+
+		timesReached++;
+		VIRTUAL_LOSSES.decrementAndGet(link);
+		link.update(value);
+		bonusCount = timesReached;
+	}
+
+	/**
+	 * Adds the given reward to the total rewards for an action and removes
+	 * the virtual loss added when the action was selected, without locking.
+	 * Only one thread may back up results to the tree (see PipelinedSearch),
+	 * though others may select and add virtual losses meanwhile.
+	 * 
+	 * @param action
+	 *            An integer representing the action selected.
+	 * @param value
+	 *            The reward to be added.
+	 */
+	public void addPipelinedValue(int action, int value) {
+		ActionLink link = links[indexOf(action)];
+
+		timesReached++;
+		link.update(value);
+		VIRTUAL_LOSSES.decrementAndGet(link);
+		bonusCount = timesReached;
+	}
+
+	/**
+	 * Gets the successor of this node for an action, creating it once the
+	 * action has been chosen NODE_CREATION_COUNT times. Threads expanding the
+	 * same action get the same node, without locking.
+	 * 
+	 * @param action
+	 *            An integer representing the action selected.
+	 * @return The successor or null.
+	 */
+	public MCNode getSharedNode(int action) {
+		int i = indexOf(action);
+
+		if (i < 0) {
+			return null;
+		}
+
+		ActionLink link = links[i];
+		MCNode child = link.child;
+
+		/*
+		 * other threads may back up results between two visits of a thread,
+		 * so the count can pass NODE_CREATION_COUNT without being seen
+		 */
+		if (child != null || link.timesChosen < MCTree.NODE_CREATION_COUNT) {
+			return child;
+		}
+
+		/*
+		 * threads racing on one link create equal nodes, but the tree keeps
+		 * only the first, so they all install the same one
+		 */
+		return installChild(link, tree.addNode(getNextNode(action)));
+	}
+
+	/*------------------------------------------------------------------------------------------*/
+
 	/**
 	 * Represents a single possible action from the parent node.
 	 * 
@@ -476,14 +806,15 @@ public class MCNode {
 		double rewards;
 
 		/**
-		 * The bonus applied to the average u(s, a).
+		 * The number of threads currently trying this action (see
+		 * addVirtualLoss).
 		 */
-		double bonus = 1;
+		volatile int virtualLosses = 0;
 
 		/**
 		 * The successor node of the parent after this action is made.
 		 */
-		MCNode child;
+		volatile MCNode child;
 
 		/**
 		 * Constructor for the ActionLink.
@@ -518,51 +849,58 @@ public class MCNode {
 			timesChosen++;
 		}
 		
-		public void synchUpdate(double qVal, int numTotalChosen, double cVal) {
+		/**
+		 * Sets the rewards from a shared average and the N(s) from which the
+		 * bonuses of the parent node are computed.
+		 * 
+		 * @param qVal
+		 *            The shared average reward Q(s, a).
+		 * @param numTotalChosen
+		 *            The shared N(s).
+		 */
+		public void synchUpdate(double qVal, int numTotalChosen) {
 			this.rewards = qVal * this.timesChosen;
-			this.updateBonus(numTotalChosen, cVal);
+			bonusCount = numTotalChosen;
 		}
-		
 
 		/**
-		 * Updates the bonus of this action.
+		 * Gets the uncertainty bonus u(s, a) of this action.
 		 * 
-		 * @param timesReached
-		 *            The number of times the parent node was reached.
 		 * @param c
-		 *            The uncertainty constant to be applied to the bonus.
+		 *            The uncertainty constant.
+		 * @return The bonus (1 or infinity if the action was never chosen).
 		 */
-		public void updateBonus(int timesReached, double c) {
-			this.bonus = c * Math.sqrt(Math.log(timesReached) / timesChosen);
+		public double getBonus(double c) {
+			if (timesChosen == 0) {
+				return bonusCount == 0 ? 1 : Double.POSITIVE_INFINITY;
+			}
+
+			return c * sqrtLog(bonusCount) * inverseSqrt(timesChosen);
 		}
 
 		/**
 		 * Gets the value of the action.
 		 * 
-		 * @param applyBonus
-		 *            True if the uncertainty bonus should be applied, false
-		 *            otherwise.
+		 * @param c
+		 *            The uncertainty constant. The bonus is only applied if c
+		 *            is positive.
 		 * @return The total value of this action.
 		 */
-		public double getValue(boolean applyBonus) {
+		public double getValue(double c) {
 			if (timesChosen == 0) {
-				return bonus;
+				return getBonus(c);
 			}
 
-			return (rewards / timesChosen) + (applyBonus ? bonus : 0);
+			return (rewards / timesChosen) + (c > 0 ? getBonus(c) : 0);
 		}
 
 		/**
-		 * Merges this link with another.
+		 * Merges the statistics of this link with another. The child is kept.
 		 * 
 		 * @param link
 		 *            The link with which to be merged.
 		 */
 		public void merge(ActionLink link) {
-			if (child == null && link.child != null) {
-				child = link.child;
-			}
-
 			timesChosen += link.timesChosen;
 			rewards += link.rewards;
 		}
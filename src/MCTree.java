@@ -1,8 +1,11 @@
 //package MCTS;
 
 import java.util.ArrayList;
-import java.util.Enumeration;
-import java.util.Hashtable;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 /**
  * Represents a Monte Carlo Tree.
@@ -12,31 +15,7 @@ import java.util.Hashtable;
  * @since 1.0
  */
 
-public class MCTree {
-	/**
-	 * The number of nodes in the tree.
-	 */
-	public int numNodes = 1;
-
-	/**
-	 * The number of nodes that have been removed from the tree.
-	 */
-	public int deletedNodes = 0;
-
-	/**
-	 * The combined depth of all nodes in the tree.
-	 */
-	public long totalDepth = 0;
-
-	/**
-	 * The total number of leaves (nodes with no children) on the tree.
-	 */
-	public int leaves = 1;
-
-	/**
-	 * The depth of the deepest node in the tree.
-	 */
-	public int maximumDepth = 0;
+public class MCTree extends SearchTree {
 
 	/**
 	 * The number of times an action must be selected from a node before a
@@ -44,21 +23,17 @@ public class MCTree {
 	 */
 	public final static int NODE_CREATION_COUNT = 1;
 
-	/**
-	 * The MCTSGame to be used by this tree.
-	 */
-	public MCGame game;
-
 	/**
 	 * The root node of the tree.
 	 */
 	public MCNode root;
 
 	/**
-	 * The Hashtable which contains all the nodes of the tree with the string
-	 * representation of the state as the key.
+	 * The table which contains all the nodes of the tree, keyed on the bits of
+	 * each state. Several threads may search the tree at once (see
+	 * SharedTreeSearch), so the table is striped.
 	 */
-	private Hashtable<String, MCNode> nodeTable = new Hashtable<String, MCNode>();
+	private StripedNodeTable nodeTable = new StripedNodeTable();
 
 	/**
 	 * Constructor for the MCTree.
@@ -69,11 +44,32 @@ public class MCTree {
 	 *            The state of the root node.
 	 */
 	public MCTree(MCGame game, GameState state) {
-		this.game = game;
+		this(game, state, 0);
+	}
+
+	/**
+	 * Constructor for the MCTree, for a tree whose root is a node deeper in
+	 * the game tree (e.g. a tree searched from the current position, to be
+	 * merged into the tree of the whole game).
+	 * 
+	 * @param game
+	 *            MCTSGame to be used by this tree.
+	 * @param state
+	 *            The state of the root node.
+	 * @param depth
+	 *            The depth of the root node.
+	 */
+	public MCTree(MCGame game, GameState state, int depth) {
+		super(game);
 
 		/* initialize the root */
-		root = new MCNode(state, 0, game.getActions(state), this);
-		nodeTable.put(root.state.getString(), root);
+		root = new MCNode(state, depth, game.getActions(state), this);
+		nodeTable.putIfAbsent(root);
+		numNodes = 1;
+		maximumNodes = 1;
+		leaves = 1;
+		totalDepth = depth;
+		maximumDepth = depth;
 	}
 
 	/**
@@ -84,7 +80,7 @@ public class MCTree {
 	 * @return The MCNode searched for or null if not found.
 	 */
 	public MCNode findNode(MCNode node) {
-		return nodeTable.get(node.state.getString());
+		return nodeTable.get(node.state);
 	}
 
         /**
@@ -110,26 +106,47 @@ public class MCTree {
 	 * @param node
 	 *            The node to be added.
 	 * @return The node added or (if the node already exists in the tree) the
-	 *         equivalent node in the tree.
+	 *         equivalent node in the tree. Its parents are counted when it is
+	 *         made the child of a link.
 	 */
 	public MCNode addNode(MCNode node) {
-		MCNode p = nodeTable.get(node.state.getString());
+		MCNode p = nodeTable.putIfAbsent(node);
+
+		if (p != null) {
+			return p;
+		}
 
-		if (p == null) {
-			p = node;
-			nodeTable.put(p.state.getString(), p);
-			numNodes++;
-			leaves++;
-			totalDepth += node.depth;
+		int count = NUM_NODES.incrementAndGet(this);
+		LEAVES.incrementAndGet(this);
+		TOTAL_DEPTH.addAndGet(this, node.depth);
 
-			if (p.depth > maximumDepth) {
-				maximumDepth = p.depth;
-			}
-		} else {
-			p.parents++;
+		int max = maximumDepth;
+
+		while (node.depth > max && !MAXIMUM_DEPTH.compareAndSet(this, max, node.depth)) {
+			max = maximumDepth;
 		}
 
-		return p;
+		max = maximumNodes;
+
+		while (count > max && !MAXIMUM_NODES.compareAndSet(this, max, count)) {
+			max = maximumNodes;
+		}
+
+		return node;
+	}
+
+	/**
+	 * Counts a node which has gained its first child.
+	 */
+	public void removeLeaf() {
+		LEAVES.decrementAndGet(this);
+	}
+
+	/**
+	 * Counts a node which has lost its last child.
+	 */
+	public void addLeaf() {
+		LEAVES.incrementAndGet(this);
 	}
 
 	/**
@@ -141,10 +158,16 @@ public class MCTree {
 	 * @return The node that was deleted or null.
 	 */
 	public MCNode deleteNode(MCNode node) {
-		node = nodeTable.remove(node.state.getString());
+		node = nodeTable.remove(node.state);
 
 		if (node != null) {
-			numNodes--;
+			NUM_NODES.decrementAndGet(this);
+			TOTAL_DEPTH.addAndGet(this, -node.depth);
+
+			if (node.isLeaf) {
+				LEAVES.decrementAndGet(this);
+			}
+
 			node.delinkChildren();
 		}
 
@@ -163,34 +186,154 @@ public class MCTree {
 	 */
 	public int deleteBranch(MCNode node) {
 		int deleted = 0;
-		node = nodeTable.remove(node.state.getString());
+		node = nodeTable.remove(node.state);
 
 		if (node != null) {
 			deleted++;
-			numNodes--;
-			totalDepth -= node.depth;
+			NUM_NODES.decrementAndGet(this);
+			DELETED_NODES.incrementAndGet(this);
+			TOTAL_DEPTH.addAndGet(this, -node.depth);
 
 			node.delinkChildren();
 
 			if (node.isLeaf) {
-				leaves--;
+				LEAVES.decrementAndGet(this);
 			}
 
 			MCNode child;
 			for (int i = 0; i < node.links.length; i++) {
 				child = node.links[i].child;
 
-				if (child.parents == 0) {
+				if (child != null && child.parents == 0) {
 					deleted += deleteBranch(child);
 				}
 			}
 		}
 
-		deletedNodes += deleted;
+		return deleted;
+	}
+
+	/**
+	 * Evicts the least visited nodes from the tree until it has at most the
+	 * given number of nodes (or nothing more can be evicted). Nodes are cut
+	 * from their parents in order of timesReached, and each node left with
+	 * no parents is deleted with its branch (see deleteBranch). A node
+	 * reached through several parents (a transposition) stays in the tree
+	 * until every link to it is cut, and the statistics of the cut links are
+	 * kept, so a child is made again if its action is selected later.
+	 * 
+	 * The given node, and every node from which it can be reached, are never
+	 * evicted. Must not be called while other threads search the tree.
+	 * 
+	 * @param keep
+	 *            The node of the current position.
+	 * @param target
+	 *            The number of nodes to be left in the tree.
+	 * @return The number of nodes deleted.
+	 */
+	public int evict(MCNode keep, int target) {
+		if (numNodes <= target) {
+			return 0;
+		}
+
+		IdentityHashMap<MCNode, Boolean> reachesKeep = new IdentityHashMap<MCNode, Boolean>();
+		ArrayList<MCNode> owners = new ArrayList<MCNode>();
+		ArrayList<MCNode.ActionLink> cuts = new ArrayList<MCNode.ActionLink>();
+
+		findCuts(root, keep, reachesKeep, owners, cuts);
+
+		/* least visited first: the visits in the high bits, the index of the cut in the low bits */
+		long[] order = new long[cuts.size()];
+
+		for (int i = 0; i < order.length; i++) {
+			order[i] = ((long) cuts.get(i).child.timesReached << 32) | i;
+		}
+
+		Arrays.sort(order);
+
+		int deleted = 0;
+
+		for (int i = 0; i < order.length && numNodes > target; i++) {
+			int cut = (int) order[i];
+			MCNode owner = owners.get(cut);
+
+			/* the links of deleted nodes are gone with them */
+			if (findNode(owner) != owner) {
+				continue;
+			}
+
+			MCNode child = owner.unlinkChild(cuts.get(cut).action);
+
+			if (child != null && child.parents == 0) {
+				deleted += deleteBranch(child);
+			}
+		}
+
+		/* the deepest nodes may be gone */
+		if (deleted > 0) {
+			updateTreeData();
+		}
 
 		return deleted;
 	}
 
+	@Override
+	public int evict(TreePath keep, int target) {
+		Path path = (Path) keep;
+
+		return evict(path.nodes[path.length - 1], target);
+	}
+
+	/**
+	 * Walks the tree below a node, marking the nodes from which the kept
+	 * node can be reached and listing the links to nodes which may be
+	 * evicted (see evict).
+	 * 
+	 * @param node
+	 *            The node to be walked.
+	 * @param keep
+	 *            The node of the current position.
+	 * @param reachesKeep
+	 *            For each node walked, true if the kept node can be reached
+	 *            from it.
+	 * @param owners
+	 *            The node of each link which may be cut.
+	 * @param cuts
+	 *            The links which may be cut.
+	 * @return True if the kept node can be reached from the node.
+	 */
+	private boolean findCuts(MCNode node, MCNode keep, IdentityHashMap<MCNode, Boolean> reachesKeep,
+			ArrayList<MCNode> owners, ArrayList<MCNode.ActionLink> cuts) {
+		boolean reaches = node == keep;
+
+		reachesKeep.put(node, reaches);
+
+		for (MCNode.ActionLink link : node.links) {
+			MCNode child = link.child;
+
+			if (child == null) {
+				continue;
+			}
+
+			Boolean childReaches = reachesKeep.get(child);
+
+			if (childReaches == null) {
+				childReaches = findCuts(child, keep, reachesKeep, owners, cuts);
+			}
+
+			if (childReaches) {
+				reaches = true;
+			} else {
+				owners.add(node);
+				cuts.add(link);
+			}
+		}
+
+		reachesKeep.put(node, reaches);
+
+		return reaches;
+	}
+
 	/**
 	 * Merges this tree with another.
 	 * 
@@ -201,36 +344,156 @@ public class MCTree {
 	 *            The tree with which to merge.
 	 */
 	public void merge(MCTree tree) {
-		maximumDepth = Math.max(maximumDepth, tree.maximumDepth);
+		merge(new MCTree[] { tree }, ForkJoinPool.commonPool());
+	}
 
-		if (tree.root.equals(root)) {
-			merge(tree, root);
+	/**
+	 * Merges other trees into this one. Every node of the other trees is
+	 * merged with the equivalent node of this tree (which is created if there
+	 * is none), so the visit counts and rewards of each link are summed over
+	 * all trees. The children of the other trees are then linked in this one.
+	 * 
+	 * <strong> DO NOT merge trees which do not form the same game tree. The
+	 * games of each tree must be equivalent, and the root of each other tree
+	 * must be a node of this one at the same depth. </strong>
+	 * 
+	 * @param trees
+	 *            The MCTrees to merge into this one. They are not changed.
+	 * @param pool
+	 *            The pool whose threads merge the nodes.
+	 */
+	@Override
+	public void merge(SearchTree[] trees, ForkJoinPool pool) {
+		int count = 0;
+		MCNode[][] parts = new MCNode[trees.length][];
+
+		for (int i = 0; i < trees.length; i++) {
+			parts[i] = ((MCTree) trees[i]).nodeTable.values();
+			count += parts[i].length;
 		}
-		
-		updateTreeData();
+
+		MCNode[] nodes = new MCNode[count];
+		count = 0;
+
+		for (MCNode[] part : parts) {
+			System.arraycopy(part, 0, nodes, count, part.length);
+			count += part.length;
+		}
+
+		/* every node must exist before the children are linked */
+		pool.invoke(new MergeTask(nodes, 0, nodes.length, false));
+		pool.invoke(new MergeTask(nodes, 0, nodes.length, true));
 	}
 
 	/**
-	 * Recursively merges nodes of this tree with equivalent nodes of the given
-	 * tree. This assumes a topological ordering of the nodes.
-	 * 
-	 * @param tree
-	 *            The tree with which to merge.
-	 * @param node
-	 *            The node (from this tree) currently being merged.
+	 * Merges a range of the nodes of other trees into this tree, splitting the
+	 * range among the threads of the pool.
 	 */
-	private void merge(MCTree tree, MCNode node) {
-		
-		MCNode child;
-		
-		for(int i = 0; i < node.links.length; i++){
-			child = node.links[i].child;
-			if(child != null){
-				child.mergeNode(tree.findNode(child));
+	private class MergeTask extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		/**
+		 * The largest range merged without splitting it.
+		 */
+		private static final int RANGE = 512;
+
+		/**
+		 * The nodes of the other trees.
+		 */
+		private final MCNode[] nodes;
+
+		/**
+		 * The range of nodes merged by this task.
+		 */
+		private final int from, to;
+
+		/**
+		 * False to merge the statistics of the nodes, true to link their
+		 * children.
+		 */
+		private final boolean link;
+
+		/**
+		 * Constructor for the MergeTask.
+		 * 
+		 * @param nodes
+		 *            The nodes of the other trees.
+		 * @param from
+		 *            The first node of the range.
+		 * @param to
+		 *            The node after the last one of the range.
+		 * @param link
+		 *            False to merge the statistics of the nodes, true to link
+		 *            their children.
+		 */
+		MergeTask(MCNode[] nodes, int from, int to, boolean link) {
+			this.nodes = nodes;
+			this.from = from;
+			this.to = to;
+			this.link = link;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from > RANGE) {
+				int middle = (from + to) >>> 1;
+
+				invokeAll(new MergeTask(nodes, from, middle, link), new MergeTask(nodes, middle, to, link));
+				return;
+			}
+
+			for (int i = from; i < to; i++) {
+				MCNode node = nodes[i];
+				MCNode equivalent = findNode(node);
+
+				if (!link) {
+					if (equivalent == null) {
+						equivalent = addNode(new MCNode(node.state, node.depth, node.getArrayOfActions(), MCTree.this));
+					}
+
+					equivalent.mergeNode(node);
+				} else {
+					for (MCNode.ActionLink l : node.links) {
+						MCNode child = l.child;
+
+						if (child != null) {
+							equivalent.linkChild(l.action, findNode(child));
+						}
+					}
+				}
 			}
 		}
-		
-		node.mergeNode(tree.findNode(node));
+	}
+
+	@Override
+	public TreePath newPath() {
+		return new Path(root);
+	}
+
+	/**
+	 * Creates a path holding only a node of the tree.
+	 * 
+	 * @param node
+	 *            The node.
+	 * @return The path.
+	 */
+	public TreePath newPath(MCNode node) {
+		return new Path(node);
+	}
+
+	@Override
+	public SearchTree newTree(GameState state, int depth) {
+		return new MCTree(game, state, depth);
+	}
+
+	/**
+	 * Nodes are made and linked with compareAndSet, and their statistics are
+	 * changed while holding the lock of each node (see MCNode).
+	 */
+	@Override
+	public boolean isConcurrent() {
+		return true;
 	}
 
 	/**
@@ -254,28 +517,211 @@ public class MCTree {
 	}
 
 	/**
-	 * Updates the data for the tree by iterating through all nodes.
+	 * Gets the statistics of the node table.
+	 * 
+	 * @return A String with the size, load, and probe statistics of the table.
 	 */
-	public void updateTreeData() {
-		Enumeration<MCNode> nodes = nodeTable.elements();
-		MCNode node;
-		int depth;
+	public String getTableStatistics() {
+		return nodeTable.toString();
+	}
 
-		while (nodes.hasMoreElements()) {
-			node = (MCNode) nodes.nextElement();
-			numNodes++;
+	/**
+	 * Recounts the data for the tree by iterating through all nodes. Must not
+	 * be called while other threads add nodes.
+	 */
+	public void updateTreeData() {
+		MCNode[] nodes = nodeTable.values();
+		int depth, leafCount = 0, maxDepth = 0;
+		long depthSum = 0;
 
+		for (MCNode node : nodes) {
 			depth = node.depth;
-			totalDepth += depth;
+			depthSum += depth;
 
-			if (maximumDepth < depth) {
-				maximumDepth = depth;
+			if (maxDepth < depth) {
+				maxDepth = depth;
 			}
 
 			if (node.isLeaf) {
-				leaves++;
+				leafCount++;
 			}
+		}
+
+		numNodes = nodes.length;
+		maximumNodes = Math.max(maximumNodes, numNodes);
+		totalDepth = depthSum;
+		maximumDepth = maxDepth;
+		leaves = leafCount;
+	}
+
+	/**
+	 * A path of MCNodes of this tree.
+	 */
+	public class Path extends TreePath {
+
+		/**
+		 * The nodes of the path.
+		 */
+		private MCNode[] nodes = new MCNode[8];
+
+		/**
+		 * Constructor for a Path holding only a node.
+		 * 
+		 * @param node
+		 *            The node.
+		 */
+		Path(MCNode node) {
+			nodes[0] = node;
+			length = 1;
+		}
+
+		/**
+		 * Gets the last node of the path.
+		 * 
+		 * @return The node.
+		 */
+		public MCNode getNode() {
+			return nodes[length - 1];
+		}
+
+		@Override
+		public SearchTree getTree() {
+			return MCTree.this;
+		}
+
+		@Override
+		public void start(TreePath position) {
+			nodes[0] = ((Path) position).getNode();
+			length = 1;
+		}
+
+		@Override
+		protected void keepLast() {
+			nodes[0] = nodes[length - 1];
+			length = 1;
+		}
+
+		/**
+		 * Adds a node to the path, or leaves the path unchanged if it is null.
+		 * 
+		 * @param node
+		 *            The node.
+		 * @return True if the node was added.
+		 */
+		private boolean add(MCNode node) {
+			if (node == null) {
+				return false;
+			}
+
+			if (length == nodes.length) {
+				nodes = Arrays.copyOf(nodes, 2 * length);
+			}
+
+			nodes[length++] = node;
+
+			return true;
+		}
+
+		@Override
+		public boolean follow(int action, int behavior) {
+			if (behavior == MonteCarloTreeSearch.BEHAVIOR_EXPANSION_SHARED) {
+				return add(getNode().getSharedNode(action));
+			}
+
+			return add(getNode().getNode(action, behavior));
+		}
+
+		@Override
+		public boolean follow(GameState state, int behavior) {
+			return add(getNode().getNode(state, behavior));
+		}
+
+		@Override
+		public GameState getState() {
+			return getNode().state;
+		}
+
+		@Override
+		public boolean matches(PlayoutContext context) {
+			return context.matches(getNode().state);
+		}
+
+		@Override
+		public int getDepth() {
+			return getNode().depth;
+		}
+
+		@Override
+		public int getActionCount() {
+			return getNode().links.length;
+		}
+
+		@Override
+		public int[] getArrayOfActions() {
+			return getNode().getArrayOfActions();
+		}
+
+		@Override
+		public int getSolvedAction() {
+			return getNode().solvedAction;
+		}
+
+		@Override
+		public int getSolvedValue() {
+			return getNode().solvedValue;
+		}
+
+		@Override
+		public void setSolved(int value, int action) {
+			MCNode node = getNode();
+
+			node.solvedValue = value;
+			node.solvedAction = action;
+		}
+
+		@Override
+		public int getNextAction(double c, Random random) {
+			return getNode().getNextAction(c, random);
+		}
+
+		@Override
+		public void addVirtualLoss(int action) {
+			getNode().addVirtualLoss(action);
+		}
+
+		@Override
+		public String describeActions(int index, double c) {
+			MCNode.ActionLink[] links = nodes[index].links;
+			StringBuilder linkInfo = new StringBuilder();
+
+			for (int kp = 0; kp < links.length; kp++)
+				if (links[kp] == null)
+					linkInfo.append("link " + kp + " is null \n");
+				else
+					linkInfo.append("link " + kp + ": " + links[kp].action + " " + links[kp].timesChosen + " "
+							+ links[kp].rewards + " " + links[kp].getBonus(c) + "\n");
+
+			return linkInfo.toString();
+		}
+
+		@Override
+		public void addValue(int index, int action, int value) {
+			nodes[index].addValue(action, value);
+		}
+
+		@Override
+		public void addValues(int index, int action, int total, int count) {
+			nodes[index].addValues(action, total, count);
+		}
+
+		@Override
+		public void addSharedValue(int index, int action, int value) {
+			nodes[index].addSharedValue(action, value);
+		}
 
+		@Override
+		public void addPipelinedValue(int index, int action, int value) {
+			nodes[index].addPipelinedValue(action, value);
 		}
 	}
 }
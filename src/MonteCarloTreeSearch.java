@@ -1,5 +1,4 @@
 
-import java.math.BigInteger;
 import java.util.Random;
 
 import java.util.ArrayList;
@@ -30,12 +29,93 @@ import mpi.*;
 public class MonteCarloTreeSearch {
 
 	static ArrayList<PlayerMove> playerMove = new ArrayList<PlayerMove>();
-	static int[] simulationMoves = {0,0,0,0,0,0,0,0,0,0,0,0};
+
+	/**
+	 * The number of simulations which began with each action. Only counted
+	 * by the calling thread: search threads keep counts of their own and add
+	 * them here once they are joined (see select).
+	 */
+	static int[] simulationMoves = new int[12];
 	/**
 	 * Used to randomly pick actions.
 	 */
 	static Random r = new Random();
 
+	/**
+	 * The position used by simulations. Reused for every simulation on the same board size.
+	 */
+	static PlayoutContext playout;
+
+	/**
+	 * True if simulations stop and take the exact result once only long
+	 * chains and loops are left (see endgame).
+	 */
+	static boolean exactEndgame = true;
+
+	/**
+	 * Positions with at most this many free edges are solved exactly by the
+	 * EndgameSolver when a simulation reaches them (0 to never solve).
+	 */
+	static int solverEdges = 0;
+
+	/**
+	 * The endgame solver. Reused for every simulation on the same board size.
+	 */
+	static EndgameSolver solver;
+
+	/**
+	 * The perfect-play table used in place of simulations, or null if none
+	 * was given (see the tablebase argument).
+	 */
+	static Tablebase tablebase;
+
+	/**
+	 * Returned by select when the result of a simulation must be found by a
+	 * playout.
+	 */
+	static final int NEEDS_PLAYOUT = Integer.MIN_VALUE;
+
+	/**
+	 * The threads which search each move, or null if each move is searched by
+	 * the calling thread alone (see the threads and threadMode arguments).
+	 */
+	static ThreadedSearch threadedSearch;
+
+	/**
+	 * Adds the counts of a search thread to simulationMoves.
+	 * 
+	 * @param moveCounts
+	 *            The number of simulations of the thread which began with
+	 *            each action. Cleared afterwards.
+	 */
+	static void addSimulationMoves(int[] moveCounts) {
+		for (int a = 0; a < moveCounts.length && a < simulationMoves.length; a++) {
+			simulationMoves[a] += moveCounts[a];
+		}
+
+		Arrays.fill(moveCounts, 0);
+	}
+
+	/**
+	 * The largest number of nodes in a tree (0 for no limit). A tree which
+	 * grows past it has its least visited nodes evicted (see
+	 * SearchTree.evict and the maxNodes argument).
+	 */
+	static int maxNodes = 0;
+
+	/**
+	 * The kind of tree each player searches: object for MCTree, flat for
+	 * FlatTree, or arena for ArenaTree (see the tree argument and
+	 * newTree).
+	 */
+	static String treeType = "object";
+
+	/**
+	 * The directory of the arena files of ArenaTrees, or null to hold them in
+	 * direct memory.
+	 */
+	static File arenaDirectory;
+
 	/**
 	 * The width (in boxes) of the board.
 	 */
@@ -130,6 +210,13 @@ public class MonteCarloTreeSearch {
 	 */
 	public static final int BEHAVIOR_EXPANSION_NEVER = 2;
 
+	/**
+	 * Defines the behavior of BEHAVIOR_EXPANSION_STANDARD for an action
+	 * which carries a virtual loss of the walk expanding it, while other
+	 * threads may search the tree (see MCNode.getSharedNode).
+	 */
+	public static final int BEHAVIOR_EXPANSION_SHARED = 3;
+
 	/**
 	 * Defines the behavior in which only a single node in a new branch is
 	 * created when expanding the tree. (Unimplemented)
@@ -192,16 +279,33 @@ public class MonteCarloTreeSearch {
 	 *            If opponent == 1: scored2, sym2, (sims2)
 	 * 
 	 *            If parallel: shareInfoEvery, tasks
+	 * 
+	 *            Optional: solverEdges, tablebase, threads (the number of
+	 *            threads searching each move), threadMode (shared for one
+	 *            tree searched by all threads, root for a tree per thread
+	 *            merged after each move, leaf for several playouts at once
+	 *            from each leaf, pipeline for selection, playouts, and backup
+	 *            run as stages on separate threads), playouts (the number of
+	 *            playouts from each leaf in leaf mode, by default the number
+	 *            of threads), maxNodes (the largest number of nodes in each
+	 *            tree, 0 for no limit), tree (object for trees of MCNodes,
+	 *            flat for FlatTrees, arena for ArenaTrees compacted after
+	 *            each move; flat and arena do not run with parallel, and
+	 *            their threads lock the tree while walking and backing it
+	 *            up), arenaDir (the
+	 *            directory to map the arenas of tree=arena onto, by default
+	 *            direct memory)
 	 */
 	public static void main(String[] args) throws MPIException {
 		// System.out.println(Math.random());
 		long s = System.currentTimeMillis();
 
-		int matches = 0, sims1 = 0, sims2 = 0, opponent = 0;
+		int matches = 0, sims1 = 0, sims2 = 0, opponent = 0, threads = 1, playouts = 0;
+		String tablebasePath = null, threadMode = "shared";
 		boolean scored1 = false, scored2 = false, sym1 = false, sym2 = false, parallel = false;
 		System.out.println("parameters used: " + Arrays.toString(args));
 
-		boolean[] params = new boolean[15];
+		boolean[] params = new boolean[23];
 
 		for (int i = 0; i < args.length; i++) {
 			String arg = args[i];
@@ -271,6 +375,38 @@ public class MonteCarloTreeSearch {
 				errorDir =  arg.substring(index);
 				params[14] = true;
 				break;
+			case "solverEdges":
+				solverEdges = Integer.parseInt(arg.substring(index));
+				params[15] = true;
+				break;
+			case "tablebase":
+				tablebasePath = arg.substring(index);
+				params[16] = true;
+				break;
+			case "threads":
+				threads = Integer.parseInt(arg.substring(index));
+				params[17] = true;
+				break;
+			case "threadMode":
+				threadMode = arg.substring(index);
+				params[18] = true;
+				break;
+			case "playouts":
+				playouts = Integer.parseInt(arg.substring(index));
+				params[19] = true;
+				break;
+			case "maxNodes":
+				maxNodes = Integer.parseInt(arg.substring(index));
+				params[20] = true;
+				break;
+			case "tree":
+				treeType = arg.substring(index);
+				params[21] = true;
+				break;
+			case "arenaDir":
+				arenaDirectory = new File(arg.substring(index));
+				params[22] = true;
+				break;
 			}
 		
 		}
@@ -347,6 +483,20 @@ public class MonteCarloTreeSearch {
 			}
 		}
 
+		if (!threadMode.equals("shared") && !threadMode.equals("root") && !threadMode.equals("leaf")
+				&& !threadMode.equals("pipeline")) {
+			System.out.println("Invalid Parameter: threadMode");
+			missingParams = true;
+		}
+
+		if (!treeType.equals("object") && !treeType.equals("flat") && !treeType.equals("arena")) {
+			System.out.println("Invalid Parameter: tree");
+			missingParams = true;
+		} else if (!treeType.equals("object") && parallel) {
+			System.out.println("Invalid Parameter: tree (tree=" + treeType + " does not run with parallel)");
+			missingParams = true;
+		}
+
 		if (missingParams) {
 			return;
 		}
@@ -380,9 +530,38 @@ public class MonteCarloTreeSearch {
 
 		edges = (height * (width + 1)) + (width * (height + 1));
 		times = new long[edges][2];
+		simulationMoves = new int[edges];
 		game = new DotsAndBoxes(height, width, scored1, sym1);
 		firstMove = new int[matches];
 
+		if (tablebasePath != null) {
+			if (!Tablebase.supports(game)) {
+				System.out.println("Invalid Parameter: tablebase (the board has more than " + Tablebase.MAX_EDGES
+						+ " edges)");
+				return;
+			}
+
+			try {
+				tablebase = Tablebase.open(game, tablebasePath, Runtime.getRuntime().availableProcessors());
+			} catch (IOException e) {
+				System.out.println(" error when trying to open the tablebase...");
+				e.printStackTrace();
+				return;
+			}
+		}
+
+		if (threads > 1) {
+			if (threadMode.equals("root")) {
+				threadedSearch = new RootParallelSearch(game, threads);
+			} else if (threadMode.equals("leaf")) {
+				threadedSearch = new LeafParallelSearch(game, threads, params[19] ? playouts : threads);
+			} else if (threadMode.equals("pipeline")) {
+				threadedSearch = new PipelinedSearch(game, threads, 4 * threads);
+			} else {
+				threadedSearch = new SharedTreeSearch(game, threads);
+			}
+		}
+
 		if (parallel) {
 			game2 = new DotsAndBoxes(height, width, scored1, sym1);
 
@@ -410,16 +589,28 @@ public class MonteCarloTreeSearch {
 	}
 
 	/**
+	 * Finds the result of a position exactly if only long chains and loops
+	 * are left (see ChainAnalyzer.getEndgameValue).
 	 * 
 	 * @param state
 	 *            The current state of the game.
 	 * @param controllerNetScore
-	 *            The net score for the player currently in control.
-	 * @return True if the player in control wins, false otherwise.
+	 *            The net score for the player currently in control (the
+	 *            player to move).
+	 * @return 1 if the player in control wins, -1 if they lose, 0 for a tie, or
+	 *         ChainAnalyzer.NOT_ENDGAME if the position is not such an
+	 *         endgame.
 	 */
-	public boolean endgame(GameState state, int controllerNetScore) {
+	public static int endgame(GameState state, int controllerNetScore) {
+		int value = game.chainAnalyzer.getEndgameValue(state);
+
+		if (value == ChainAnalyzer.NOT_ENDGAME) {
+			return value;
+		}
+
+		value += controllerNetScore;
 
-		return true;
+		return value > 0 ? 1 : value < 0 ? -1 : 0;
 	}
 
 	/**
@@ -440,7 +631,7 @@ public class MonteCarloTreeSearch {
 	 * @param matches
 	 *            The number of games to be played.
 	 */
-	public static void competition(MCTree tree, DotsAndBoxes game, MCTree tree2, DotsAndBoxes game2,
+	public static void competition(SearchTree tree, DotsAndBoxes game, SearchTree tree2, DotsAndBoxes game2,
 			int simulationsPerTurn1, int simulationsPerTurn2, int matches) throws MPIException {
 		int wins = 0;
 		int losses = 0;
@@ -450,6 +641,10 @@ public class MonteCarloTreeSearch {
 
 		double totalAveDepth = 0;
 		long totalNodes = 0;
+		long totalLeaves = 0;
+		double totalBytes = 0;
+		long totalLargest = 0;
+		long totalCompactions = 0;
 
 		/* plays a match */
 		for (int i = matches; i > 0; i--) {
@@ -457,6 +652,10 @@ public class MonteCarloTreeSearch {
 			int result = (int) results[0];
 			totalAveDepth += results[1];
 			totalNodes += results[2];
+			totalLeaves += results[3];
+			totalBytes += results[4];
+			totalLargest += results[5];
+			totalCompactions += results[6];
 
 			if (result == 1)
 				wins++;
@@ -482,6 +681,11 @@ public class MonteCarloTreeSearch {
 				);
 
 		System.out.println("Average nodes: " + totalNodes / matches);
+		System.out.println("tree=" + treeType + " average leaves: " + totalLeaves / matches
+				+ " average largest tree: " + totalLargest / matches
+				+ (totalBytes > 0 ? " bytes per node: " + String.format("%.1f", totalBytes / totalLargest) : "")
+				+ " compactions: " + totalCompactions);
+
 		System.out.println("average depth: " + (totalAveDepth / matches) + "\nAverage Time: ");
 
 		for (int i = 0; i < times.length; i++) {
@@ -491,6 +695,10 @@ public class MonteCarloTreeSearch {
 
 			System.out.println("Move " + i + ": " + times[i][0] / times[i][1]);
 		}
+
+		if (threadedSearch instanceof PipelinedSearch) {
+			System.out.println(threadedSearch);
+		}
 	}
 
 	/**
@@ -511,13 +719,16 @@ public class MonteCarloTreeSearch {
 	 * @param parallel
 	 *            True if the tree is parallelized.
 	 * @return An array of the form {result, average depth of the final tree for
-	 *         player one, number of nodes in the final tree for player one}.
+	 *         player one, number of nodes in the final tree for player one,
+	 *         its leaves, the bytes used by the tree when it was largest (0 if
+	 *         not measured), its largest number of nodes, the number of times
+	 *         it was compacted}.
 	 */
-	public static double[] match(MCTree tree, DotsAndBoxes game, MCTree tree2, DotsAndBoxes game2,
+	public static double[] match(SearchTree tree, DotsAndBoxes game, SearchTree tree2, DotsAndBoxes game2,
 			int simulationsPerTurn1, int simulationsPerTurn2, boolean parallel) throws MPIException {
 
-		tree = game.scored ? new MCTree(game, new GameStateScored(0, 0)) : new MCTree(game, new GameState(0));
-		tree2 = game2.scored ? new MCTree(game2, new GameStateScored(0, 0)) : new MCTree(game2, new GameState(0));
+		tree = newTree(game);
+		tree2 = newTree(game2);
 
 		int result = -10;
 
@@ -525,27 +736,119 @@ public class MonteCarloTreeSearch {
 		 * This is used as a backup to resolve flawed tests caused by
 		 * ArrayIndexOutOfBounds or NullPointer errors during the game. When
 		 * these errors occur, they return a result of -10, and the game is
-		 * restarted.
+		 * restarted with new trees, since a tree compacted after each move
+		 * (see SearchTree.afterMove) no longer holds the start of the game.
 		 */
 		while (result == -10) {
 			if (parallel) {
-				result = testGameParallel(tree, game, tree2, game2, simulationsPerTurn1, simulationsPerTurn2);
+				result = testGameParallel((MCTree) tree, game, (MCTree) tree2, game2, simulationsPerTurn1,
+						simulationsPerTurn2);
 				
 			} else
 				result = testGame(tree, game, tree2, game2, simulationsPerTurn1, simulationsPerTurn2);
+
+			if (result == -10) {
+				tree.close();
+				tree2.close();
+				tree = newTree(game);
+				tree2 = newTree(game2);
+			}
 		}
 
-		double results[] = new double[3];
+		double results[] = new double[7];
 		results[0] = result;
 		results[1] = (double) tree.totalDepth / tree.numNodes;
 		results[2] = tree.numNodes;
+		results[3] = tree.leaves;
+		results[4] = tree.maximumUsedBytes;
+		results[5] = tree.maximumNodes;
+		results[6] = tree.compactions;
 
-		if (TESTIT)
-			testPolicy(false, tree);
+		if (TESTIT && tree instanceof MCTree)
+			testPolicy(false, (MCTree) tree);
+
+		tree.close();
+		tree2.close();
 
 		return results;
 	}
 
+	/**
+	 * Creates a tree of the kind given by the tree argument.
+	 * 
+	 * @param game
+	 *            The game to be used by the tree.
+	 * @return The tree, whose root is the empty board.
+	 */
+	static SearchTree newTree(DotsAndBoxes game) {
+		GameState state = game.scored ? new GameStateScored(0, 0) : new GameState(0);
+
+		if (treeType.equals("flat")) {
+			return new FlatTree(game, state, game.stateWords);
+		}
+
+		if (!treeType.equals("arena")) {
+			return new MCTree(game, state);
+		}
+
+		try {
+			return new ArenaTree(game, state, game.stateWords, arenaDirectory);
+		} catch (IOException e) {
+			throw new IllegalStateException("cannot create the arenas in " + arenaDirectory, e);
+		}
+	}
+
+	/**
+	 * Runs simulations from a node with the threaded search. With a node
+	 * limit, each simulation adds at most one node, so the simulations are
+	 * run in parts no larger than the room left in the tree, and the tree is
+	 * brought back under the limit after each part.
+	 * 
+	 * @param position
+	 *            The path of the current position.
+	 * @param p1Net
+	 *            The net score for the player to move.
+	 * @param tree
+	 *            The tree of the player to move.
+	 * @param game
+	 *            The game of the player to move.
+	 * @param simulations
+	 *            The number of simulations.
+	 * @return The number of simulations performed.
+	 */
+	static int search(TreePath position, int p1Net, SearchTree tree, DotsAndBoxes game, int simulations) {
+		if (maxNodes <= 0) {
+			return threadedSearch.search(position, p1Net, tree, game, simulations);
+		}
+
+		int performed = 0;
+
+		while (performed < simulations && position.getSolvedAction() < 0) {
+			int part = Math.min(simulations - performed, Math.max(1, maxNodes - tree.numNodes));
+
+			performed += threadedSearch.search(position, p1Net, tree, game, part);
+			evict(tree, position);
+		}
+
+		return performed;
+	}
+
+	/**
+	 * Evicts the least visited nodes of a tree which has grown past the node
+	 * limit, leaving it three quarters full so evictions are not made after
+	 * every simulation.
+	 * 
+	 * @param tree
+	 *            The tree.
+	 * @param position
+	 *            The path of the current position, whose node is kept.
+	 */
+	static void evict(SearchTree tree, TreePath position) {
+		if (maxNodes > 0 && tree.numNodes > maxNodes) {
+			tree.evict(position, maxNodes - maxNodes / 4);
+		}
+	}
+
 	/**
 	 * Plays a single game between two MCTS players.
 	 * 
@@ -563,20 +866,12 @@ public class MonteCarloTreeSearch {
 	 *            The number of simulations given to player two.
 	 * @return An integer representing the result for player one.
 	 */
-	public static int testGame(MCTree tree, DotsAndBoxes game, MCTree tree2, DotsAndBoxes game2,
+	public static int testGame(SearchTree tree, DotsAndBoxes game, SearchTree tree2, DotsAndBoxes game2,
 			int simulationsPerTurn1, int simulationsPerTurn2) {
 
-		GameState terminalState = null;
-
-		if (edges > 60) {
-			terminalState = new GameState(new BigInteger("2").pow(edges).subtract(new BigInteger("1")));
-		} else {
-			terminalState = new GameState((long) Math.pow(2, edges) - 1);
-		}
-
-		// the current node of each tree
-		MCNode currentNode = tree.root;
-		MCNode currentNode2 = tree2.root;
+		// the current position on each tree
+		TreePath position = tree.newPath();
+		TreePath position2 = tree2.newPath();
 
 		// the game variables
 		int action = 0;
@@ -590,12 +885,9 @@ public class MonteCarloTreeSearch {
 		// board[i] is the number of taken edges for box i
 		int[] board = new int[width * height];
 
-		// a clone to pass to the simulate method
-		// int[] boardClone = new int[width * height];
-
 		int startsWell = 1;
 		// for every turn
-		while (!currentNode.state.equals(terminalState)) {
+		while (position.getActionCount() > 0) {
 
 			if (p1Score > (width * width) / 2 || p2Score > (width * width) / 2) {
 				break;
@@ -609,52 +901,57 @@ public class MonteCarloTreeSearch {
 				int simsPerformed = 0;
 				long start = System.currentTimeMillis();
 
-				// perform the simulations for this move
-				while (simsPerformed < sims) {
+				// perform the simulations for this move (a solved node needs one)
+				if (threadedSearch != null) {
+					simsPerformed = search(position, p1Score - p2Score, tree, game, sims);
+					simsDEBUG = simsPerformed;
+				}
+
+				while (simsPerformed < sims && position.getSolvedAction() < 0) {
 					// give player one's game, tree, node, and score
-					// create a clone of the board to be used by the simulation
-					int[] boardClone = new int[width * height];
-					for (int bc = 0; bc < width * height; bc++)
-						boardClone[bc] = board[bc];
-					simulate(currentNode.state, p1Score - p2Score, currentNode, terminalState, tree, game, boardClone,
-							twoOrFour);
+					simulate(position, p1Score - p2Score, game, getPlayoutContext(game), null, r, false, null,
+							simulationMoves);
+					evict(tree, position);
 					simsPerformed++;
 					simsDEBUG = simsPerformed;
 				}
 
 				long end = System.currentTimeMillis();
+				int depth = position.getDepth();
 
 				try {
-					times[currentNode.depth][1]++;
-					times[currentNode.depth][0] = times[currentNode.depth][0] + (end - start);
+					times[depth][1]++;
+					times[depth][0] = times[depth][0] + (end - start);
 				} catch (ArrayIndexOutOfBoundsException e) {
 					System.out.println("Array Index Error");
 					return -10;
 				}
 
-				action = currentNode.getNextAction(0);
+				action = position.getNextAction(0, MCNode.r);
 
 				
 			} else {
 				// perform the simulations for this move
 				int simsPerformed = 0;
-				while (simsPerformed < sims) {
-					// give player two's game, tree, node, and score
-					int[] boardClone = new int[width * height];
-					for (int bc = 0; bc < width * height; bc++)
-						boardClone[bc] = board[bc];
+				if (threadedSearch != null) {
+					simsPerformed = search(position2, p2Score - p1Score, tree2, game2, sims);
+					simsDEBUG = simsPerformed;
+				}
 
-					simulate(currentNode2.state, p2Score - p1Score, currentNode2, terminalState, tree2, game2,
-							boardClone, twoOrFour);
+				while (simsPerformed < sims && position2.getSolvedAction() < 0) {
+					// give player two's game, tree, node, and score
+					simulate(position2, p2Score - p1Score, game2, getPlayoutContext(game2), null, r, false, null,
+							simulationMoves);
+					evict(tree2, position2);
 					simsPerformed++;
 					simsDEBUG = simsPerformed;
 				}
 
-				action = currentNode2.getNextAction(0);
+				action = position2.getNextAction(0, MCNode.r);
 				
 			}
 
-			if (currentNode.state.longState == 0)
+			if (position.getDepth() == 0)
 				if ((action == 3 || action == 5 || action == 6 || action == 8)) {
 					startsWell = 0;
 					badChoice++;
@@ -667,7 +964,6 @@ public class MonteCarloTreeSearch {
 			// increment the edges for each box which adjoins action
 			for (int i = 0; i < game.edgeBoxes[action].length; i++) {
 				board[game.edgeBoxes[action][i]]++;
-				// boardClone[game.edgeBoxes[action][i]]++;
 
 				if (board[game.edgeBoxes[action][i]] == 4) {
 					taken++;
@@ -677,23 +973,25 @@ public class MonteCarloTreeSearch {
 				}
 			}
 
+			boolean moved, moved2;
+
 			// if both players are symmetrical or both are asymmetrical, the
 			// same moves are possible for each
 			if (game.asymmetrical == game2.asymmetrical) {
-				// update the currentNodes
-				currentNode = currentNode.getNode(action, BEHAVIOR_EXPANSION_ALWAYS);
-				currentNode2 = currentNode2.getNode(action, BEHAVIOR_EXPANSION_ALWAYS);
+				// update the positions
+				moved = position.moveTo(action, BEHAVIOR_EXPANSION_ALWAYS);
+				moved2 = position2.moveTo(action, BEHAVIOR_EXPANSION_ALWAYS);
 			}
 
 			// if the player in control is asymmetrical, translate
 			else if (playerOneTurn && game.asymmetrical) {
-				// update the currentNodes
-				currentNode = currentNode.getNode(action, BEHAVIOR_EXPANSION_ALWAYS);
-				currentNode2 = currentNode2.getNode(action, BEHAVIOR_EXPANSION_ALWAYS);
+				// update the positions
+				moved = position.moveTo(action, BEHAVIOR_EXPANSION_ALWAYS);
+				moved2 = position2.moveTo(action, BEHAVIOR_EXPANSION_ALWAYS);
 			} else if (!playerOneTurn && game2.asymmetrical) {
-				// update the currentNodes
-				currentNode = currentNode.getNode(action, BEHAVIOR_EXPANSION_ALWAYS);
-				currentNode2 = currentNode2.getNode(action, BEHAVIOR_EXPANSION_ALWAYS);
+				// update the positions
+				moved = position.moveTo(action, BEHAVIOR_EXPANSION_ALWAYS);
+				moved2 = position2.moveTo(action, BEHAVIOR_EXPANSION_ALWAYS);
 			}
 
 			// if the player in control is symmetrical, the moves must be
@@ -702,26 +1000,30 @@ public class MonteCarloTreeSearch {
 
 				// get the next node for the symmetrical player in control
 				if (playerOneTurn) {
-					currentNode = currentNode.getNode(action, BEHAVIOR_EXPANSION_ALWAYS);
-					currentNode2 = currentNode2.getNode(currentNode.state, BEHAVIOR_EXPANSION_ALWAYS);
+					moved = position.moveTo(action, BEHAVIOR_EXPANSION_ALWAYS);
+					moved2 = moved && position2.moveTo(position.getState(), BEHAVIOR_EXPANSION_ALWAYS);
 				} else {
-					currentNode2 = currentNode2.getNode(action, BEHAVIOR_EXPANSION_ALWAYS);
-					currentNode = currentNode.getNode(currentNode2.state, BEHAVIOR_EXPANSION_ALWAYS);
+					moved2 = position2.moveTo(action, BEHAVIOR_EXPANSION_ALWAYS);
+					moved = moved2 && position.moveTo(position2.getState(), BEHAVIOR_EXPANSION_ALWAYS);
 				}
 			}
 
 			/* possibly circumvent the null pointer */
-			if (currentNode == null || currentNode2 == null) {
-				System.out.println("Null Error: " + (currentNode == null ? "Player 1" : "Player 2"));
+			if (!moved || !moved2) {
+				System.out.println("Null Error: " + (!moved ? "Player 1" : "Player 2"));
 				return -10;
 			}
 
 			// catch errors between symmetrical and asymmetrical players
-			if (!game.removeSymmetries(currentNode.state).equals(game2.removeSymmetries(currentNode2.state))) {
+			if (!game.removeSymmetries(position.getState()).equals(game2.removeSymmetries(position2.getState()))) {
 				System.out.println("Move Error: " + (playerOneTurn ? "Player 1" : "Player 2"));
 				return -10;
 			}
 
+			/* a tree may drop the nodes the game can no longer reach (see ArenaTree) */
+			tree.afterMove(position);
+			tree2.afterMove(position2);
+
 			if (playerOneTurn) {
 				p1Score += taken;
 				playerMove.add(new PlayerMove(action, 1, p1Score - p2Score));
@@ -772,26 +1074,50 @@ public class MonteCarloTreeSearch {
 	 *            loss, 0 for a tie, and 1 for a win).
 	 */
 	public static void backup(MCNode[] nodes, boolean[] player, int[] actions, int result) {
-		// System.out.println ("rank " + rank + " UZI in backup - list of
-		// actions length and values " + actions.length + " : " +
-		// Arrays.toString(actions) +
-		// "\n nodes.length = "+ nodes.length + " " + Arrays.toString(nodes));
-
 		for (int i = 0; i < nodes.length; i++) {
 			if (nodes[i] == null) {
 				break;
 			}
 
+			/* add a win, loss, or tie, to the node given the action taken, switching the result for player two */
+			nodes[i].addValue(actions[i], player[i] ? result : -result);
+		}
+	}
+
+	/**
+	 * Updates the nodes of the tree along the path of a simulation.
+	 * 
+	 * @param path
+	 *            The nodes which were traversed during selection.
+	 * @param player
+	 *            An array with turns played by player one represented as true
+	 *            and turns played by player two represented as false.
+	 * @param actions
+	 *            An array of all the actions played during the selection
+	 *            portion of the game.
+	 * @param result
+	 *            An integer representing the result for player one (-1 for a
+	 *            loss, 0 for a tie, and 1 for a win), or the sum of count
+	 *            such results.
+	 * @param count
+	 *            The number of results.
+	 * @param shared
+	 *            True if the actions carry virtual losses, which are removed.
+	 *            Only a single result may be backed up.
+	 */
+	static void backup(TreePath path, boolean[] player, int[] actions, int result, int count, boolean shared) {
+		for (int i = 0; i < path.length(); i++) {
+
 			/* switch result if this was player two's move */
-			if (!player[i]) {
-				result = -result;
-			}
+			int value = player[i] ? result : -result;
 
 			/* add a win, loss, or tie, to the node given the action taken */
-			nodes[i].addValue(actions[i], result, c);
-
-			if (!player[i]) {
-				result = -result;
+			if (shared) {
+				path.addSharedValue(i, actions[i], value);
+			} else if (count > 1) {
+				path.addValues(i, actions[i], value, count);
+			} else {
+				path.addValue(i, actions[i], value);
 			}
 		}
 	}
@@ -807,37 +1133,101 @@ public class MonteCarloTreeSearch {
 	 * @param p1Net
 	 *            The starting net score for player one.
 	 * @param terminalState
-	 *            The state at which simulation will cease.
+	 *            The state at which simulation will cease (every edge taken).
 	 * @return An integer representing the result for player one (-1 for a loss,
 	 *         0 for a tie, and 1 for a win).
 	 */
 	public static int simulateDefault(GameState state, boolean playerOne, int p1Net, GameState terminalState) {
+		return simulateDefault(getPlayoutContext(game), state, playerOne, p1Net, r);
+	}
 
-		/* play until the terminalState */
+	/**
+	 * Plays the game from a given point off the tree with a random default
+	 * policy, using the given position and random number generator. This lets
+	 * several threads play out at once, each with its own.
+	 * 
+	 * @param context
+	 *            The position used by the playout.
+	 * @param state
+	 *            The starting state.
+	 * @param playerOne
+	 *            True if player one is to move, false otherwise.
+	 * @param p1Net
+	 *            The starting net score for player one.
+	 * @param random
+	 *            The random number generator.
+	 * @return An integer representing the result for player one (-1 for a loss,
+	 *         0 for a tie, and 1 for a win).
+	 */
+	static int simulateDefault(PlayoutContext context, GameState state, boolean playerOne, int p1Net,
+			Random random) {
+		context.reset(state, playerOne, p1Net);
 
-		for (int i = 0; i < edges; i++) {
+		/* play until the terminalState */
+		return context.playout(random, exactEndgame);
+	}
 
-			int action = randomPolicy(state);
-			state = game.getSimpleSuccessorState(state, action);
+	/**
+	 * Gets the position used by simulations, creating it if the board size
+	 * has changed.
+	 * 
+	 * @param game
+	 *            The game being simulated.
+	 * @return The position for the board of the game.
+	 */
+	static PlayoutContext getPlayoutContext(DotsAndBoxes game) {
+		if (playout == null || !playout.fits(game)) {
+			playout = new PlayoutContext(game);
+		}
 
-			int taken = game.completedBoxesForEdge(action, state);
+		return playout;
+	}
 
-			if (taken > 0) {
-				p1Net += playerOne ? taken : -taken;
-			}
+	/**
+	 * Tries to find the perfect-play value and best action of a node, from
+	 * the tablebase or else the endgame solver.
+	 * 
+	 * @param path
+	 *            The path ending at the node, which is marked as solved if
+	 *            it is solved.
+	 * @param context
+	 *            The position of the node.
+	 * @param game
+	 *            The game being simulated.
+	 * @param solver
+	 *            The endgame solver to use, or null to use the shared one
+	 *            (see getSolver).
+	 * @return True if the node was solved.
+	 */
+	static boolean solve(TreePath path, PlayoutContext context, DotsAndBoxes game, EndgameSolver solver) {
+		if (tablebase != null && tablebase.fits(game)) {
+			long state = context.getWord(0);
 
-			else {
-				playerOne = !playerOne;
+			path.setSolved(tablebase.getValue(state), tablebase.getBestAction(state, path.getArrayOfActions()));
+		} else if (context.getFreeEdgeCount() <= solverEdges) {
+			if (solver == null) {
+				solver = getSolver(game);
 			}
 
-			if (state.equals(terminalState)) {
-				break;
-			}
+			path.setSolved(solver.solve(context, path.getArrayOfActions()), solver.getBestAction());
 		}
 
-		p1Net = p1Net > 0 ? 1 : p1Net < 0 ? -1 : 0;
+		return path.getSolvedAction() >= 0;
+	}
 
-		return p1Net;
+	/**
+	 * Gets the endgame solver, creating it if the board size has changed.
+	 * 
+	 * @param game
+	 *            The game being simulated.
+	 * @return The solver for the board of the game.
+	 */
+	static EndgameSolver getSolver(DotsAndBoxes game) {
+		if (solver == null || !solver.fits(game)) {
+			solver = new EndgameSolver(game, solverEdges, 20);
+		}
+
+		return solver;
 	}
 
 	/**
@@ -858,48 +1248,174 @@ public class MonteCarloTreeSearch {
 	 * @param game
 	 *            The game to be used. This game should belong to the player
 	 *            running the simulation.
-	 * @param board
-	 *            An array representing the number of edges taken for each box.
-	 * @param twoOrFour
-	 *            The number of boxes which have either 2 or 4 edges.
 	 */
 	public static void simulate(GameState state, int p1Net, MCNode pastNode, GameState terminalState, MCTree tree,
-			DotsAndBoxes game, int[] board, int twoOrFour) {
-		boolean playerOne = true;
+			DotsAndBoxes game) {
+		simulate(tree.newPath(pastNode), p1Net, game, getPlayoutContext(game), null, r, false, null, simulationMoves);
+	}
 
-		int action = 0;
+	/**
+	 * Runs a single simulation and updates the tree accordingly, using the
+	 * given position, solver, and random number generator. This lets several
+	 * threads simulate at once, each with its own.
+	 * 
+	 * @param position
+	 *            The path of the current position on the tree to be used and
+	 *            updated.
+	 * @param p1Net
+	 *            The starting net score for player one.
+	 * @param game
+	 *            The game to be used.
+	 * @param context
+	 *            The position used by the simulation.
+	 * @param solver
+	 *            The endgame solver, or null to use the shared one.
+	 * @param random
+	 *            The random number generator for ties and playouts.
+	 * @param shared
+	 *            True if other threads are searching the tree at the same time,
+	 *            in which case selected actions carry a virtual loss until the
+	 *            result is backed up, and a tree which is not concurrent is
+	 *            locked while it is walked and while it is backed up.
+	 * @param leafSearch
+	 *            The search which plays out several games at once from the
+	 *            position where the simulation leaves the tree, or null to
+	 *            play out one game.
+	 * @param moveCounts
+	 *            Counts the first action of the simulation (see select), or
+	 *            null.
+	 */
+	static void simulate(TreePath position, int p1Net, DotsAndBoxes game, PlayoutContext context,
+			EndgameSolver solver, Random random, boolean shared, LeafParallelSearch leafSearch, int[] moveCounts) {
+		SearchTree tree = position.getTree();
+		boolean locked = shared && !tree.isConcurrent();
 		boolean[] turns = new boolean[edges];
 		int[] actionsTaken = new int[edges + 1];
 		
 		/* keep track of the traversed nodes */
-		MCNode[] playedNodes = new MCNode[edges];
-		MCNode currentNode = pastNode;
+		TreePath path = tree.newPath();
+		int count = leafSearch == null ? 1 : leafSearch.getPlayouts();
 
-		playedNodes[0] = currentNode;
+		/* the result, or the sum of the results of a batch of playouts */
+		int z;
+
+		if (locked) {
+			synchronized (tree) {
+				z = select(position, p1Net, game, context, solver, random, shared, path, turns, actionsTaken,
+						moveCounts);
+			}
+		} else {
+			z = select(position, p1Net, game, context, solver, random, shared, path, turns, actionsTaken,
+					moveCounts);
+		}
+
+		/* playout if not at terminal state */
+		if (z == NEEDS_PLAYOUT) {
+			z = leafSearch == null ? context.playout(random, exactEndgame) : leafSearch.playout(context);
+		} else {
+			z *= count;
+		}
+
+		/* backup the nodes */
+		if (locked) {
+			synchronized (tree) {
+				backup(path, turns, actionsTaken, z, count, shared);
+			}
+		} else {
+			backup(path, turns, actionsTaken, z, count, shared);
+		}
+	}
+
+	/**
+	 * The selection and expansion stages of a simulation: walks the tree from
+	 * a node until the game ends, the simulation leaves the tree, or a solved
+	 * node is reached.
+	 * 
+	 * @param position
+	 *            The path of the current position on the tree.
+	 * @param p1Net
+	 *            The starting net score for player one.
+	 * @param game
+	 *            The game to be used.
+	 * @param context
+	 *            The position used by the simulation. Left at the position
+	 *            where the walk ended.
+	 * @param solver
+	 *            The endgame solver, or null to use the shared one.
+	 * @param random
+	 *            The random number generator for ties.
+	 * @param shared
+	 *            True if selected actions carry a virtual loss until the
+	 *            result is backed up.
+	 * @param path
+	 *            A path of the same tree, which receives the nodes traversed.
+	 * @param turns
+	 *            Receives true for each traversed node where player one was
+	 *            to move.
+	 * @param actionsTaken
+	 *            Receives the action taken at each traversed node.
+	 * @param moveCounts
+	 *            The count of simulations beginning with each action, which
+	 *            is incremented for the first action selected, or null. It
+	 *            is not synchronized, so each thread needs its own.
+	 * @return The result for player one (-1 for a loss, 0 for a tie, and 1
+	 *         for a win) if it is known, or NEEDS_PLAYOUT if the position in
+	 *         context must be played out.
+	 */
+	static int select(TreePath position, int p1Net, DotsAndBoxes game, PlayoutContext context, EndgameSolver solver,
+			Random random, boolean shared, TreePath path, boolean[] turns, int[] actionsTaken, int[] moveCounts) {
+		boolean quit = false;
+
+		path.start(position);
+		context.reset(path.getState(), true, p1Net);
+
+		int action = 0;
+		boolean solved = false;
+
+		/* the walk's own virtual loss does not count towards expanding an action */
+		int behavior = shared ? BEHAVIOR_EXPANSION_SHARED : BEHAVIOR_EXPANSION_STANDARD;
 
 		/* plays each move until game over or off the tree */
-		for (int i = 0; !state.equals(terminalState); i++) {
+		for (int i = 0; !context.isTerminal(); i++) {
+
+			turns[i] = context.isPlayerOne();
 
-			turns[i] = playerOne ? true : false;
+			/* if possible, the value is proven instead of sampled */
+			if (path.getSolvedAction() >= 0 || solve(path, context, game, solver)) {
+				actionsTaken[i] = path.getSolvedAction();
+				solved = true;
+
+				if (shared) {
+					path.addVirtualLoss(actionsTaken[i]);
+				}
+				break;
+			}
 
 			/* make a move */
-			action = currentNode.getNextAction(c);
-			currentNode = currentNode.getNode(action, BEHAVIOR_EXPANSION_STANDARD);
+			action = path.getNextAction(c, random);
+
+			if (shared) {
+				path.addVirtualLoss(action);
+			}
+
+			boolean onTree = path.follow(action, behavior);
 			//if(rank == 0)
 				//System.out.println(i + ", ACTION: " + action);
 			actionsTaken[i] = action;
-			if(i==0) {
+			if(i==0 && moveCounts != null) {
 				//HERE i=0 is first move of simulation?
-				simulationMoves[actionsTaken[0]] += 1;
+				moveCounts[actionsTaken[0]] += 1;
 			}
 			/* if someone has more than half the squares, quit early */
-			if (p1Net > (height * width) / 2 || p1Net < (-height * width) / 2) {
-				state = terminalState;
+			if (context.getNetScore() > (height * width) / 2 || context.getNetScore() < (-height * width) / 2) {
+				if (onTree) {
+					path.removeLast();
+				}
+
+				quit = true;
 				break;
 			}
 
-			int taken = 0;
-
 			// increment the edges for each box which adjoins action
 			if (action == -1) {
 				File file = new File(errorDir+"/errorInfo.txt");
@@ -911,17 +1427,9 @@ public class MonteCarloTreeSearch {
 				try {
 					fr = new FileWriter(file, true);
 					br = new BufferedWriter(fr);
-					br.write("rank + " + rank + " action " + action + " node after currentNode " + currentNode
-							+ " state " + state.longState + "\n");
-					StringBuilder linkInfo = new StringBuilder();
-					for (int kp = 0; kp < pastNode.links.length; kp++)
-						if (pastNode.links[kp] == null)
-							linkInfo.append("link " + kp + " is null \n");
-						else
-							linkInfo.append("link " + kp + ": " + pastNode.links[kp].action + " "
-									+ pastNode.links[kp].timesChosen + " " + pastNode.links[kp].rewards + " "
-									+ pastNode.links[kp].bonus + "\n");
-					br.write(linkInfo.toString());
+					br.write("rank + " + rank + " action " + action + " on tree " + onTree
+							+ " state " + context.getState().longState + "\n");
+					br.write(path.describeActions(0, c));
 				} catch (IOException e) {
 					e.printStackTrace();
 				} finally {
@@ -934,60 +1442,37 @@ public class MonteCarloTreeSearch {
 				}
 			}
 
-			for (int b = 0; b < game.edgeBoxes[action].length; b++) {
-				board[game.edgeBoxes[action][b]]++;
-
-				if (board[game.edgeBoxes[action][b]] == 4) {
-					taken++;
-					twoOrFour++;
-				} else if (board[game.edgeBoxes[action][b]] == 2) {
-					twoOrFour++;
-				}
-			}
-
-			if (currentNode != null) {
-				state = currentNode.state;
-			}
+			context.apply(action);
 
-			else {
-				/*
-				 * this turns a scored state to unscored, but since it just
-				 * feeds into simulateDefault, it doesn't matter
-				 */
-				state = game.getSuccessorState(state, action);
+			/*
+			 * a symmetrical tree may store the next state under another
+			 * symmetry, and its actions refer to that state
+			 */
+			if (onTree && !path.matches(context)) {
+				context.setState(path.getState());
 			}
 
 			/* doesn't add the terminal node */
-			if (!state.equals(terminalState)) {
-				playedNodes[i + 1] = currentNode;
+			if (onTree && context.isTerminal()) {
+				path.removeLast();
 			}
 
-			if (taken > 0) {
-				p1Net += playerOne ? taken : -taken;
-			}
-
-			else {
-				playerOne = !playerOne;
-			}
-
-			if (currentNode == null) {
+			if (!onTree) {
 				break;
 			}
 		}
 
-		int z; /* the result */
+		if (solved) {
+			int net = context.getNetScore() + (context.isPlayerOne() ? path.getSolvedValue() : -path.getSolvedValue());
 
-		/* playout if not at terminal state */
-		if (!state.equals(terminalState)) {
-			z = simulateDefault(state, playerOne, p1Net, terminalState);
+			return net > 0 ? 1 : net < 0 ? -1 : 0;
 		}
 
-		else {
-			z = p1Net > 0 ? 1 : p1Net < 0 ? -1 : 0;
+		if (!quit && !context.isTerminal()) {
+			return NEEDS_PLAYOUT;
 		}
 
-		/* backup the nodes */
-		backup(playedNodes, turns, actionsTaken, z);
+		return context.getResult();
 	}
 
 	/**
@@ -998,12 +1483,10 @@ public class MonteCarloTreeSearch {
 	 * @return An integer representing the action selected.
 	 */
 	public static int randomPolicy(GameState state) {
-		int[] actions = DotsAndBoxes.getAllActions(state, edges);
-
-		int next = r.nextInt(actions.length);
+		int next = r.nextInt(DotsAndBoxes.getFreeEdgeCount(state, edges));
 		
 		//System.out.println("PA RANK " + rank + ": " + next);
-		return actions[next];
+		return DotsAndBoxes.getFreeEdge(state, edges, next);
 	}
 
 	/**
@@ -1345,7 +1828,7 @@ public class MonteCarloTreeSearch {
 			throws MPIException {
 
 		// System.out.println(rank + ": " + tree + " tree " + tree2 + " tree2");
-		int currNodeNumActions = DotsAndBoxes.getAllActions(currNode.state, edges).length;
+		int currNodeNumActions = DotsAndBoxes.getFreeEdgeCount(currNode.state, edges);
 		MCNode toReturn = currNode;
 
 		int numActions = currNode.links.length;
@@ -1743,7 +2226,7 @@ public class MonteCarloTreeSearch {
 															// 124,
 															// 134...)
 
-										tempNode.links[p].synchUpdate(shareNode.qS3Compute[indexForQ3], NsSum, c);
+										tempNode.links[p].synchUpdate(shareNode.qS3Compute[indexForQ3], NsSum);
 
 									}
 								}
@@ -1903,7 +2386,7 @@ public class MonteCarloTreeSearch {
 																				// itself),
 																				// find
 																				// position...
-					tempNode.links[p].synchUpdate(shareNode.qS2Compute[indexForQ2], NsSum, c);
+					tempNode.links[p].synchUpdate(shareNode.qS2Compute[indexForQ2], NsSum);
 				}
 			}
 
@@ -2009,7 +2492,7 @@ public class MonteCarloTreeSearch {
 			currNode.links[i].timesChosen = shareNode.nSA0FromMaster[i]; // N(s,
 																			// a)
 																			// update
-			currNode.links[i].synchUpdate(shareNode.qS1Compute[i], nSum, c);
+			currNode.links[i].synchUpdate(shareNode.qS1Compute[i], nSum);
 			/*
 			 * currNode.links[i].rewards = shareNode.qS1Compute[i] *
 			 * currNode.links[i].timesChosen; //R(s, a) update
@@ -2246,12 +2729,7 @@ public class MonteCarloTreeSearch {
 	public static int testGameParallel(MCTree tree, DotsAndBoxes game, MCTree tree2, DotsAndBoxes game2,
 			int simulationsPerTurn1, int simulationsPerTurn2) throws MPIException {
 
-		GameState terminalState = null;
-		if (edges > 60) {
-			terminalState = new GameState(new BigInteger("2").pow(edges).subtract(new BigInteger("1")));
-		} else {
-			terminalState = new GameState((long) Math.pow(2, edges) - 1);
-		}
+		GameState terminalState = game.getTerminalState();
 
 		// the current node of each tree
 		MCNode currentNode = tree.root;
@@ -2269,9 +2747,6 @@ public class MonteCarloTreeSearch {
 		// board[i] is the number of taken edges for box i
 		int[] board = new int[width * height];
 
-		// a clone to pass to the simulate method
-		// int[] boardClone = new int[width * height];
-
 		int startsWell = 1;
 
 		// for every turn
@@ -2298,11 +2773,7 @@ public class MonteCarloTreeSearch {
 					// shareInfoEvery" + shareInfoEvery);
 					// System.out.println("TEST1: " + (sims<simulationsPerTurn1)
 					// + ", TEST2: " + (sims%shareInfoEvery==0));
-					int[] boardClone = new int[width * height];
-					for (int bc = 0; bc < width * height; bc++)
-						boardClone[bc] = board[bc];
-					simulate(currentNode.state, p1Score - p2Score, currentNode, terminalState, tree, game, boardClone,
-							twoOrFour);
+					simulate(currentNode.state, p1Score - p2Score, currentNode, terminalState, tree, game);
 					simsPerformed++;
 					simsDEBUG = simsPerformed;
 					//each simulation...
@@ -2360,11 +2831,7 @@ public class MonteCarloTreeSearch {
 				int simsPerformed = 0;
 				while (simsPerformed < sims) {
 					// give player two's game, tree, node, and score
-					int[] boardClone = new int[width * height];
-					for (int bc = 0; bc < width * height; bc++)
-						boardClone[bc] = board[bc];
-					simulate(currentNode2.state, p2Score - p1Score, currentNode2, terminalState, tree2, game2,
-							boardClone, twoOrFour);
+					simulate(currentNode2.state, p2Score - p1Score, currentNode2, terminalState, tree2, game2);
 
 					simsPerformed++;
 					simsDEBUG = simsPerformed;
@@ -2401,7 +2868,6 @@ public class MonteCarloTreeSearch {
 			// increment the edges for each box which adjoins action
 			for (int b = 0; b < game.edgeBoxes[action].length; b++) {
 				board[game.edgeBoxes[action][b]]++;
-				// boardClone[game.edgeBoxes[action][b]]++;
 
 				if (board[game.edgeBoxes[action][b]] == 4) {
 					taken++;
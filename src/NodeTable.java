@@ -0,0 +1,458 @@
+//package MCTS;
+
+/**
+ * An open-addressing hash table of MCNodes keyed on their states.
+ * <p>
+ * While every state in the table is packed (see GameState.isPacked) and of one class, the packed state is the key, so
+ * equal keys mean equal states and lookups never touch the nodes. Otherwise the table is keyed on the Zobrist keys of
+ * the states (see GameState.hashKey), which cover the bits of each state and the net score for scored states, and
+ * equal keys are confirmed by comparing the states. A table switches to Zobrist keys the first time a state which
+ * does not fit is added.
+ * <p>
+ * Lookups never allocate and never lock. Collisions are resolved by linear probing, and removals use backward-shift
+ * deletion so no tombstones are left behind. The table doubles its capacity whenever the number of nodes would exceed
+ * MAX_LOAD_FACTOR of the capacity; it never shrinks, since trees only shrink between moves and regrow immediately.
+ * <p>
+ * The table is not thread-safe. Each MCTree owns its own tables, split into stripes (see StripedNodeTable).
+ */
+
+public class NodeTable {
+
+	/**
+	 * The initial number of slots. Must be a power of two.
+	 */
+	public static final int INITIAL_CAPACITY = 1024;
+
+	/**
+	 * The fraction of slots which may be filled before the table doubles in size.
+	 */
+	public static final double MAX_LOAD_FACTOR = 0.5;
+
+	/**
+	 * The keying of an empty table, which is decided by the first state added.
+	 */
+	private static final int KEYS_UNDECIDED = 0;
+
+	/**
+	 * The keying of a table of packed simple states.
+	 */
+	private static final int KEYS_SIMPLE = 1;
+
+	/**
+	 * The keying of a table of packed scored states.
+	 */
+	private static final int KEYS_SCORED = 2;
+
+	/**
+	 * The keying of a table keyed on Zobrist keys.
+	 */
+	private static final int KEYS_HASHED = 3;
+
+	/**
+	 * How the keys of the table are formed (one of the KEYS constants).
+	 */
+	private int keying = KEYS_UNDECIDED;
+
+	/**
+	 * The nodes in the table. Empty slots are null.
+	 */
+	private MCNode[] nodes;
+
+	/**
+	 * The key of the state of the node in each slot: the packed state, or its Zobrist key once the table is keyed on
+	 * Zobrist keys.
+	 */
+	private long[] hashes;
+
+	/**
+	 * The number of slots minus one (the capacity is a power of two).
+	 */
+	private int mask;
+
+	/**
+	 * The number of nodes in the table.
+	 */
+	private int size = 0;
+
+	/**
+	 * The number of nodes at which the table will next be resized.
+	 */
+	private int threshold;
+
+	/**
+	 * The number of lookups (get, add, and remove) made on the table.
+	 */
+	private long lookups = 0;
+
+	/**
+	 * The total number of slots examined by all lookups.
+	 */
+	private long probes = 0;
+
+	/**
+	 * The largest number of slots examined by a single lookup.
+	 */
+	private int maxProbes = 0;
+
+	/**
+	 * The number of times the table has been resized.
+	 */
+	private int resizes = 0;
+
+	/**
+	 * Constructor for the NodeTable.
+	 */
+	public NodeTable() {
+		this(INITIAL_CAPACITY);
+	}
+
+	/**
+	 * Constructor for the NodeTable.
+	 * 
+	 * @param capacity
+	 *            The initial number of slots. Rounded up to a power of two.
+	 */
+	public NodeTable(int capacity) {
+		int slots = Integer.highestOneBit(Math.max(capacity, 2) - 1) << 1;
+		allocate(slots);
+	}
+
+	/**
+	 * Allocates empty slot arrays of the given size.
+	 * 
+	 * @param slots
+	 *            The number of slots (a power of two).
+	 */
+	private void allocate(int slots) {
+		nodes = new MCNode[slots];
+		hashes = new long[slots];
+		mask = slots - 1;
+		threshold = (int) (slots * MAX_LOAD_FACTOR);
+	}
+
+	/**
+	 * Gets the keying which a state needs.
+	 * 
+	 * @param state
+	 *            The state.
+	 * @return KEYS_SIMPLE or KEYS_SCORED if the state is packed, KEYS_HASHED otherwise.
+	 */
+	private static int keyingFor(GameState state) {
+		if (!state.isPacked()) {
+			return KEYS_HASHED;
+		}
+
+		return state instanceof GameStateScored ? KEYS_SCORED : KEYS_SIMPLE;
+	}
+
+	/**
+	 * Checks whether a state could be in the table under the current keying.
+	 * 
+	 * @param state
+	 *            The state.
+	 * @return False if the table holds only packed states of another kind (so the state is not present).
+	 */
+	private boolean canHold(GameState state) {
+		return keying == KEYS_HASHED || keyingFor(state) == keying;
+	}
+
+	/**
+	 * Gets the key of a state under the current keying.
+	 * 
+	 * @param state
+	 *            The state.
+	 * @return The key of the state.
+	 */
+	private long keyFor(GameState state) {
+		return keying == KEYS_HASHED ? state.hashKey() : state.packedKey();
+	}
+
+	/**
+	 * Gets the slot at which a probe sequence for the given key begins.
+	 * 
+	 * @param hash
+	 *            The key of a state.
+	 * @return The index of the first slot to examine.
+	 */
+	private int slotFor(long hash) {
+		/* packed states are not random, Zobrist keys are */
+		if (keying != KEYS_HASHED) {
+			hash = GameState.mix(hash);
+		}
+
+		return (int) (hash ^ (hash >>> 32)) & mask;
+	}
+
+	/**
+	 * Finds the slot holding a node with the given state.
+	 * 
+	 * @param state
+	 *            The state searched for.
+	 * @param hash
+	 *            The key of state.
+	 * @return The index of the slot, or the index of the empty slot ending the probe sequence (as -(index + 1)).
+	 */
+	private int find(GameState state, long hash) {
+		int slot = slotFor(hash);
+		int count = 1;
+
+		while (nodes[slot] != null) {
+			if (hashes[slot] == hash && (keying != KEYS_HASHED || state.equals(nodes[slot].state))) {
+				recordProbes(count);
+				return slot;
+			}
+
+			slot = (slot + 1) & mask;
+			count++;
+		}
+
+		recordProbes(count);
+		return -(slot + 1);
+	}
+
+	/**
+	 * Updates the probe statistics after a lookup.
+	 * 
+	 * @param count
+	 *            The number of slots examined.
+	 */
+	private void recordProbes(int count) {
+		lookups++;
+		probes += count;
+
+		if (count > maxProbes) {
+			maxProbes = count;
+		}
+	}
+
+	/**
+	 * Gets the node with the given state.
+	 * 
+	 * @param state
+	 *            The state searched for.
+	 * @return The node with an equal state, or null if there is none.
+	 */
+	public MCNode get(GameState state) {
+		if (!canHold(state)) {
+			return null;
+		}
+
+		int slot = find(state, keyFor(state));
+		return slot >= 0 ? nodes[slot] : null;
+	}
+
+	/**
+	 * Adds a node to the table unless a node with an equal state is already present.
+	 * 
+	 * @param node
+	 *            The node to be added.
+	 * @return The node already in the table, or null if the given node was added.
+	 */
+	public MCNode putIfAbsent(MCNode node) {
+		if (keying == KEYS_UNDECIDED) {
+			keying = keyingFor(node.state);
+		} else if (!canHold(node.state)) {
+			rekey();
+		}
+
+		long hash = keyFor(node.state);
+		int slot = find(node.state, hash);
+
+		if (slot >= 0) {
+			return nodes[slot];
+		}
+
+		if (size + 1 > threshold) {
+			resize(nodes.length << 1);
+			slot = find(node.state, hash);
+		}
+
+		slot = -(slot + 1);
+		nodes[slot] = node;
+		hashes[slot] = hash;
+		size++;
+
+		return null;
+	}
+
+	/**
+	 * Removes the node with the given state.
+	 * 
+	 * @param state
+	 *            The state of the node to be removed.
+	 * @return The node removed, or null if there was none.
+	 */
+	public MCNode remove(GameState state) {
+		if (!canHold(state)) {
+			return null;
+		}
+
+		int slot = find(state, keyFor(state));
+
+		if (slot < 0) {
+			return null;
+		}
+
+		MCNode removed = nodes[slot];
+		size--;
+
+		/*
+		 * backward-shift deletion: move later nodes of the same probe run into the hole whenever their home slot
+		 * does not lie between the hole and their current slot
+		 */
+		int hole = slot;
+		int next = (hole + 1) & mask;
+
+		while (nodes[next] != null) {
+			int home = slotFor(hashes[next]);
+
+			if (((next - home) & mask) >= ((next - hole) & mask)) {
+				nodes[hole] = nodes[next];
+				hashes[hole] = hashes[next];
+				hole = next;
+			}
+
+			next = (next + 1) & mask;
+		}
+
+		nodes[hole] = null;
+		hashes[hole] = 0;
+
+		return removed;
+	}
+
+	/**
+	 * Switches the table to Zobrist keys and rehashes every node.
+	 */
+	private void rekey() {
+		keying = KEYS_HASHED;
+
+		for (int i = 0; i < nodes.length; i++) {
+			if (nodes[i] != null) {
+				hashes[i] = nodes[i].state.hashKey();
+			}
+		}
+
+		resize(nodes.length);
+	}
+
+	/**
+	 * Rehashes every node into a table with the given number of slots.
+	 * 
+	 * @param slots
+	 *            The new number of slots (a power of two).
+	 */
+	private void resize(int slots) {
+		MCNode[] oldNodes = nodes;
+		long[] oldHashes = hashes;
+
+		allocate(slots);
+		resizes++;
+
+		for (int i = 0; i < oldNodes.length; i++) {
+			if (oldNodes[i] != null) {
+				int slot = slotFor(oldHashes[i]);
+
+				while (nodes[slot] != null) {
+					slot = (slot + 1) & mask;
+				}
+
+				nodes[slot] = oldNodes[i];
+				hashes[slot] = oldHashes[i];
+			}
+		}
+	}
+
+	/**
+	 * Gets every node in the table.
+	 * 
+	 * @return An array of the nodes in the table, in no particular order.
+	 */
+	public MCNode[] values() {
+		MCNode[] values = new MCNode[size];
+		int index = 0;
+
+		for (int i = 0; i < nodes.length; i++) {
+			if (nodes[i] != null) {
+				values[index] = nodes[i];
+				index++;
+			}
+		}
+
+		return values;
+	}
+
+	/**
+	 * Gets the number of nodes in the table.
+	 * 
+	 * @return The number of nodes.
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Gets the number of slots in the table.
+	 * 
+	 * @return The capacity of the table.
+	 */
+	public int capacity() {
+		return nodes.length;
+	}
+
+	/**
+	 * Gets the fraction of slots which are filled.
+	 * 
+	 * @return The current load factor.
+	 */
+	public double getLoadFactor() {
+		return (double) size / nodes.length;
+	}
+
+	/**
+	 * Gets the number of lookups made on the table.
+	 * 
+	 * @return The number of calls to get, putIfAbsent, and remove.
+	 */
+	public long getLookups() {
+		return lookups;
+	}
+
+	/**
+	 * Gets the average number of slots examined per lookup.
+	 * 
+	 * @return The average probe length, or 0 if no lookups were made.
+	 */
+	public double getAverageProbes() {
+		return lookups == 0 ? 0 : (double) probes / lookups;
+	}
+
+	/**
+	 * Gets the largest number of slots examined by a single lookup.
+	 * 
+	 * @return The longest probe length.
+	 */
+	public int getMaxProbes() {
+		return maxProbes;
+	}
+
+	/**
+	 * Gets the number of times the table has been resized.
+	 * 
+	 * @return The number of resizes.
+	 */
+	public int getResizes() {
+		return resizes;
+	}
+
+	/**
+	 * Gets the statistics of the table.
+	 * 
+	 * @return A String with the size, capacity, load, and probe statistics.
+	 */
+	public String toString() {
+		return "nodes=" + size + " capacity=" + nodes.length + " load=" + String.format("%.3f", getLoadFactor())
+				+ " lookups=" + lookups + " avgProbes=" + String.format("%.3f", getAverageProbes()) + " maxProbes="
+				+ maxProbes + " resizes=" + resizes + " keys=" + (keying == KEYS_HASHED ? "zobrist" : "packed");
+	}
+}
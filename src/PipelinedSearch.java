@@ -0,0 +1,649 @@
+//package MCTS;
+
+import java.util.Random;
+import java.util.concurrent.BrokenBarrierException;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Runs the simulations of a move as a pipeline of three stages joined by lock-free bounded queues (see
+ * BoundedQueue):
+ * <ol>
+ * <li>selection: the calling thread walks the tree and expands it, adding a virtual loss to each action it selects
+ * (see MonteCarloTreeSearch.select),</li>
+ * <li>playout: a pool of threads plays out the positions where the walks left the tree,</li>
+ * <li>backup: one thread takes the results in batches and adds them to the tree, removing the virtual losses (see
+ * TreePath.addPipelinedValue).</li>
+ * </ol>
+ * Walks with a known result (a finished or solved game) go straight to the backup stage. Only the backup thread
+ * changes the statistics of the tree, so it needs no locks; the selection thread only adds virtual losses and
+ * children, both with compareAndSet. A tree which is not concurrent (see SearchTree.isConcurrent) is instead locked
+ * by the selection thread for each walk and by the backup thread for each batch.
+ * <p>
+ * A fixed set of jobs (walks in progress) circulates through the stages, so the number of walks whose results are
+ * not yet backed up is bounded. The time each stage spends working and the depth of the queues are recorded over all
+ * searches (see toString) to help size the playout pool for a board.
+ * <p>
+ * A stage which finds its queue empty (or full) polls it again a few times, yielding in between, and then parks for
+ * a short while before each further poll, so waiting threads give up the processors to the playouts. The time spent
+ * waiting is reported as idle time.
+ * <p>
+ * The playout and backup threads are started once and kept from one search to the next. Between searches they wait
+ * on a barrier; a search releases them through startBarrier, and waits on endBarrier until its walks are backed up.
+ * A ForkJoinPool is not used, since its threads need not all run at once and each stage waits on the others.
+ */
+
+public class PipelinedSearch implements ThreadedSearch {
+
+	/**
+	 * The largest number of results backed up in one batch.
+	 */
+	private static final int BATCH = 64;
+
+	/**
+	 * The number of failed polls of a queue after which a stage parks instead of yielding.
+	 */
+	private static final int SPINS = 16;
+
+	/**
+	 * The time a stage parks after a failed poll once it has stopped yielding, in nanoseconds.
+	 */
+	private static final long PARK_NANOS = 50000;
+
+	/**
+	 * Put in the playout queue to stop a playout thread.
+	 */
+	private final Job stop = new Job(0);
+
+	/**
+	 * The jobs not in use.
+	 */
+	private final BoundedQueue<Job> free;
+
+	/**
+	 * The jobs waiting for a playout.
+	 */
+	private final BoundedQueue<Job> playoutQueue;
+
+	/**
+	 * The jobs waiting to be backed up.
+	 */
+	private final BoundedQueue<Job> backupQueue;
+
+	/**
+	 * The number of jobs.
+	 */
+	private final int jobs;
+
+	/**
+	 * Passed by the calling thread and the stage threads when a search begins.
+	 */
+	private final CyclicBarrier startBarrier;
+
+	/**
+	 * Passed by the calling thread and the stage threads when the walks of a search are backed up.
+	 */
+	private final CyclicBarrier endBarrier;
+
+	/**
+	 * The state of each playout thread, kept from one search to the next.
+	 */
+	private final PlayoutWorker[] playoutWorkers;
+
+	/**
+	 * The state of the backup thread, kept from one search to the next.
+	 */
+	private final BackupWorker backup = new BackupWorker();
+
+	/**
+	 * The position used by the selection stage.
+	 */
+	private PlayoutContext context;
+
+	/**
+	 * The endgame solver used by the selection stage, or null if positions are not solved.
+	 */
+	private EndgameSolver solver;
+
+	/**
+	 * The random number generator used by the selection stage.
+	 */
+	private final Random random = new Random();
+
+	/**
+	 * Records the time the selection stage waits on the queues.
+	 */
+	private final Stage selection = new Stage();
+
+	/**
+	 * The number of walks started in the current search, or -1 while the selection stage is running.
+	 */
+	private volatile int started;
+
+	/**
+	 * The exception which stopped a stage of the current search, or null.
+	 */
+	private volatile Throwable failure;
+
+	/**
+	 * Statistics over all searches: the wall time, the time each stage spent working and waiting (summed over the
+	 * playout threads), the numbers of walks and playouts, and the queue depths seen by the selection and backup
+	 * stages.
+	 */
+	private long wallTime, selectionTime, playoutTime, backupTime;
+	private long selectionIdle, playoutIdle, backupIdle;
+	private long walks, playouts, batches;
+	private long playoutDepthSum, backupDepthSum;
+	private int playoutDepthMax, backupDepthMax;
+
+	/**
+	 * Constructor for the PipelinedSearch.
+	 *
+	 * @param game
+	 *            The game to be simulated. Searches may use other games on a board of the same size.
+	 * @param threads
+	 *            The number of playout threads.
+	 * @param jobs
+	 *            The largest number of walks in progress at once.
+	 */
+	public PipelinedSearch(DotsAndBoxes game, int threads, int jobs) {
+		this.jobs = Math.max(1, jobs);
+		this.context = new PlayoutContext(game);
+		this.playoutWorkers = new PlayoutWorker[Math.max(1, threads)];
+		this.startBarrier = new CyclicBarrier(playoutWorkers.length + 2);
+		this.endBarrier = new CyclicBarrier(playoutWorkers.length + 2);
+
+		free = new BoundedQueue<Job>(this.jobs);
+		playoutQueue = new BoundedQueue<Job>(this.jobs + playoutWorkers.length);
+		backupQueue = new BoundedQueue<Job>(this.jobs);
+
+		for (int j = 0; j < this.jobs; j++) {
+			free.offer(new Job(game.edges));
+		}
+
+		for (int t = 0; t < playoutWorkers.length; t++) {
+			playoutWorkers[t] = new PlayoutWorker(game);
+			startThread(playoutWorkers[t], "playout-" + t);
+		}
+
+		startThread(backup, "backup");
+	}
+
+	/**
+	 * Starts a daemon thread which runs a stage once in each search.
+	 *
+	 * @param stage
+	 *            The stage.
+	 * @param name
+	 *            The name of the thread.
+	 */
+	private void startThread(final Runnable stage, String name) {
+		Thread thread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					while (true) {
+						startBarrier.await();
+						stage.run();
+						endBarrier.await();
+					}
+				} catch (InterruptedException e) {
+					return;
+				} catch (BrokenBarrierException e) {
+					return;
+				}
+			}
+		}, name);
+
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * Waits for the stage threads at a barrier.
+	 *
+	 * @param barrier
+	 *            The barrier.
+	 */
+	private static void await(CyclicBarrier barrier) {
+		try {
+			barrier.await();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("interrupted while searching", e);
+		} catch (BrokenBarrierException e) {
+			throw new IllegalStateException("a pipeline thread stopped", e);
+		}
+	}
+
+	@Override
+	public int getThreads() {
+		return playoutWorkers.length;
+	}
+
+	@Override
+	public int search(TreePath position, int p1Net, SearchTree tree, DotsAndBoxes game, int simulations) {
+		if (!context.fits(game)) {
+			context = new PlayoutContext(game);
+		}
+
+		if (MonteCarloTreeSearch.solverEdges > 0 && (solver == null || !solver.fits(game))) {
+			solver = new EndgameSolver(game, MonteCarloTreeSearch.solverEdges, 20);
+		}
+
+		started = -1;
+		failure = null;
+		selection.idle = 0;
+
+		long begin = System.nanoTime();
+
+		for (PlayoutWorker worker : playoutWorkers) {
+			worker.start(game);
+		}
+
+		backup.start(tree);
+		await(startBarrier);
+
+		int count = 0;
+
+		try {
+			count = select(position, p1Net, tree, game, simulations);
+		} catch (RuntimeException e) {
+			failure = e;
+		} catch (Error e) {
+			failure = e;
+		}
+
+		started = count;
+
+		for (int t = 0; t < playoutWorkers.length; t++) {
+			selection.put(playoutQueue, stop);
+		}
+
+		await(endBarrier);
+
+		if (failure != null) {
+			throw new IllegalStateException("pipelined search failed", failure);
+		}
+
+		wallTime += System.nanoTime() - begin;
+		backupTime += backup.busy;
+		backupIdle += backup.idle;
+		selectionIdle += selection.idle;
+		batches += backup.batches;
+		backupDepthSum += backup.depthSum;
+		backupDepthMax = Math.max(backupDepthMax, backup.depthMax);
+
+		for (PlayoutWorker worker : playoutWorkers) {
+			playoutTime += worker.busy;
+			playoutIdle += worker.idle;
+			playouts += worker.count;
+		}
+
+		walks += count;
+
+		return count;
+	}
+
+	/**
+	 * The selection stage: starts walks until the given number is reached or the node is solved.
+	 *
+	 * @return The number of walks started.
+	 */
+	private int select(TreePath position, int p1Net, SearchTree tree, DotsAndBoxes game, int simulations) {
+		int count = 0;
+
+		while (count < simulations && position.getSolvedAction() < 0 && failure == null) {
+			Job job = selection.take(free);
+
+			if (job == null) {
+				break;
+			}
+
+			/* the jobs keep their paths while the same tree is searched */
+			if (job.path == null || job.path.getTree() != tree) {
+				job.path = tree.newPath();
+			}
+
+			long begin = System.nanoTime();
+			int result;
+
+			if (tree.isConcurrent()) {
+				result = MonteCarloTreeSearch.select(position, p1Net, game, context, solver, random, true, job.path,
+						job.turns, job.actions, MonteCarloTreeSearch.simulationMoves);
+			} else {
+				synchronized (tree) {
+					result = MonteCarloTreeSearch.select(position, p1Net, game, context, solver, random, true,
+							job.path, job.turns, job.actions, MonteCarloTreeSearch.simulationMoves);
+				}
+			}
+
+			if (result == MonteCarloTreeSearch.NEEDS_PLAYOUT) {
+				job.state = context.getState();
+				job.playerOne = context.isPlayerOne();
+				job.p1Net = context.getNetScore();
+
+				int depth = playoutQueue.size();
+
+				playoutDepthSum += depth;
+				playoutDepthMax = Math.max(playoutDepthMax, depth);
+				selectionTime += System.nanoTime() - begin;
+
+				selection.put(playoutQueue, job);
+			} else {
+				job.result = result;
+				selectionTime += System.nanoTime() - begin;
+
+				selection.put(backupQueue, job);
+			}
+
+			count++;
+		}
+
+		return count;
+	}
+
+	/**
+	 * Waits before a queue is polled again.
+	 *
+	 * @param attempts
+	 *            The number of failed polls so far.
+	 */
+	private static void backOff(int attempts) {
+		if (attempts < SPINS) {
+			Thread.yield();
+		} else {
+			LockSupport.parkNanos(PARK_NANOS);
+		}
+	}
+
+	/**
+	 * A stage of the pipeline, which records the time it waits on the queues.
+	 */
+	private class Stage {
+
+		/**
+		 * The time spent waiting on the queues in the current search.
+		 */
+		long idle;
+
+		/**
+		 * Adds a job to a queue, waiting while it is full.
+		 */
+		void put(BoundedQueue<Job> queue, Job job) {
+			if (queue.offer(job)) {
+				return;
+			}
+
+			long begin = System.nanoTime();
+
+			for (int attempts = 0; !queue.offer(job); attempts++) {
+				backOff(attempts);
+			}
+
+			idle += System.nanoTime() - begin;
+		}
+
+		/**
+		 * Takes a job from a queue, waiting while it is empty.
+		 *
+		 * @return The job, or null if a stage failed.
+		 */
+		Job take(BoundedQueue<Job> queue) {
+			Job job = queue.poll();
+
+			if (job != null) {
+				return job;
+			}
+
+			long begin = System.nanoTime();
+
+			for (int attempts = 0; (job = queue.poll()) == null && failure == null; attempts++) {
+				backOff(attempts);
+			}
+
+			idle += System.nanoTime() - begin;
+
+			return job;
+		}
+	}
+
+	/**
+	 * A walk in progress: the path through the tree and the position where it left the tree, or its result.
+	 */
+	private static class Job {
+
+		/**
+		 * The nodes traversed, or null before the first walk.
+		 */
+		TreePath path;
+
+		/**
+		 * True for each traversed node where player one was to move.
+		 */
+		final boolean[] turns;
+
+		/**
+		 * The action taken at each traversed node.
+		 */
+		final int[] actions;
+
+		/**
+		 * The position to be played out.
+		 */
+		GameState state;
+		boolean playerOne;
+		int p1Net;
+
+		/**
+		 * The result for player one (-1 for a loss, 0 for a tie, and 1 for a win).
+		 */
+		int result;
+
+		/**
+		 * Constructor for the Job.
+		 *
+		 * @param edges
+		 *            The number of edges on the board.
+		 */
+		Job(int edges) {
+			turns = new boolean[edges];
+			actions = new int[edges + 1];
+		}
+	}
+
+	/**
+	 * The playout stage: one of the threads which play out the positions of the jobs.
+	 */
+	private class PlayoutWorker extends Stage implements Runnable {
+
+		/**
+		 * The position used by the playouts of this thread.
+		 */
+		private PlayoutContext context;
+
+		/**
+		 * The random number generator of this thread.
+		 */
+		private final Random random = new Random();
+
+		/**
+		 * The time spent playing out and the number of playouts in the current search.
+		 */
+		private long busy;
+		private int count;
+
+		/**
+		 * Constructor for the PlayoutWorker.
+		 *
+		 * @param game
+		 *            The game to be played out.
+		 */
+		PlayoutWorker(DotsAndBoxes game) {
+			context = new PlayoutContext(game);
+		}
+
+		/**
+		 * Prepares the worker for a search.
+		 *
+		 * @param game
+		 *            The game to be played out.
+		 */
+		void start(DotsAndBoxes game) {
+			if (!context.fits(game)) {
+				context = new PlayoutContext(game);
+			}
+
+			busy = 0;
+			idle = 0;
+			count = 0;
+		}
+
+		@Override
+		public void run() {
+			try {
+				Job job;
+
+				while ((job = take(playoutQueue)) != null && job != stop) {
+					long begin = System.nanoTime();
+
+					job.result = MonteCarloTreeSearch.simulateDefault(context, job.state, job.playerOne, job.p1Net,
+							random);
+					busy += System.nanoTime() - begin;
+					count++;
+
+					put(backupQueue, job);
+				}
+			} catch (Throwable e) {
+				failure = e;
+			}
+		}
+	}
+
+	/**
+	 * The backup stage: the thread which adds the results of the jobs to the tree.
+	 */
+	private class BackupWorker extends Stage implements Runnable {
+
+		/**
+		 * The time spent backing up, the number of batches, and the queue depths seen in the current search.
+		 */
+		private long busy, batches, depthSum;
+		private int depthMax;
+
+		/**
+		 * The tree of the current search.
+		 */
+		private SearchTree tree;
+
+		/**
+		 * Prepares the worker for a search.
+		 *
+		 * @param tree
+		 *            The tree to be backed up.
+		 */
+		void start(SearchTree tree) {
+			this.tree = tree;
+
+			busy = 0;
+			idle = 0;
+			batches = 0;
+			depthSum = 0;
+			depthMax = 0;
+		}
+
+		@Override
+		public void run() {
+			try {
+				int done = 0;
+				int attempts = 0;
+				long waiting = 0;
+
+				while (failure == null) {
+					int depth = backupQueue.size();
+					long begin = System.nanoTime();
+					int count = 0;
+					Job job;
+
+					if (tree.isConcurrent()) {
+						while (count < BATCH && (job = backupQueue.poll()) != null) {
+							backup(job);
+							free.offer(job);
+							count++;
+						}
+					} else {
+						synchronized (tree) {
+							while (count < BATCH && (job = backupQueue.poll()) != null) {
+								backup(job);
+								free.offer(job);
+								count++;
+							}
+						}
+					}
+
+					if (count > 0) {
+						if (attempts > 0) {
+							idle += begin - waiting;
+							attempts = 0;
+						}
+
+						busy += System.nanoTime() - begin;
+						batches++;
+						depthSum += depth;
+						depthMax = Math.max(depthMax, depth);
+						done += count;
+					} else if (started >= 0 && done == started) {
+						if (attempts > 0) {
+							idle += begin - waiting;
+						}
+
+						return;
+					} else {
+						if (attempts == 0) {
+							waiting = begin;
+						}
+
+						backOff(attempts++);
+					}
+				}
+			} catch (Throwable e) {
+				failure = e;
+			}
+		}
+
+		/**
+		 * Adds the result of a job to each node on its path.
+		 *
+		 * @param job
+		 *            The job.
+		 */
+		private void backup(Job job) {
+			int result = job.result;
+
+			for (int i = 0; i < job.path.length(); i++) {
+				/* the result is for player one */
+				job.path.addPipelinedValue(i, job.actions[i], job.turns[i] ? result : -result);
+			}
+		}
+	}
+
+	/**
+	 * Gets the statistics of all searches so far.
+	 *
+	 * @return A String with the utilization of each stage (the fraction of the wall time spent working, per thread
+	 *         for the playout stage), the fraction of the wall time each stage spent waiting on the queues, and the
+	 *         average and largest depths of the queues.
+	 */
+	public String toString() {
+		double wall = Math.max(1, wallTime);
+
+		return "pipeline: walks=" + walks + " playouts=" + playouts + " threads=" + playoutWorkers.length + " jobs="
+				+ jobs + String.format(" utilization selection=%.2f playout=%.2f backup=%.2f", selectionTime / wall,
+						playoutTime / wall / playoutWorkers.length, backupTime / wall)
+				+ String.format(" idle selection=%.2f playout=%.2f backup=%.2f", selectionIdle / wall,
+						playoutIdle / wall / playoutWorkers.length, backupIdle / wall)
+				+ String.format(" playoutQueue avg=%.1f max=%d backupQueue avg=%.1f max=%d",
+						walks == 0 ? 0.0 : (double) playoutDepthSum / walks, playoutDepthMax,
+						batches == 0 ? 0.0 : (double) backupDepthSum / batches, backupDepthMax);
+	}
+}
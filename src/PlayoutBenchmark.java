@@ -0,0 +1,65 @@
+/**
+ * Measures random playouts per second (MonteCarloTreeSearch.simulateDefault from the empty board) for square boards.
+ * 
+ * Usage: java PlayoutBenchmark [seconds per size] [smallest size] [largest size]
+ */
+
+public class PlayoutBenchmark {
+
+	public static void main(String[] args) {
+		double seconds = args.length > 0 ? Double.parseDouble(args[0]) : 2;
+		int smallest = args.length > 1 ? Integer.parseInt(args[1]) : 2;
+		int largest = args.length > 2 ? Integer.parseInt(args[2]) : 5;
+
+		for (int size = smallest; size <= largest; size++) {
+			DotsAndBoxes game = new DotsAndBoxes(size, size, false, false);
+			MonteCarloTreeSearch.game = game;
+			MonteCarloTreeSearch.width = size;
+			MonteCarloTreeSearch.height = size;
+			MonteCarloTreeSearch.edges = game.edges;
+
+			GameState start = new GameState(0);
+			GameState terminalState = game.getTerminalState();
+
+			// warm up
+			runPlayouts(start, terminalState, (long) (seconds * 0.25e9));
+
+			long nanos = (long) (seconds * 1e9);
+			long begin = System.nanoTime();
+			long playouts = runPlayouts(start, terminalState, nanos);
+			double elapsed = (System.nanoTime() - begin) / 1e9;
+
+			System.out.println(size + "x" + size + " (" + game.edges + " edges): "
+					+ String.format("%.0f", playouts / elapsed) + " playouts/s, "
+					+ String.format("%.0f", playouts * game.edges / elapsed) + " moves/s");
+		}
+	}
+
+	/**
+	 * Runs playouts until the time limit is reached.
+	 * 
+	 * @param start The state from which every playout starts.
+	 * @param terminalState The state at which a playout ends.
+	 * @param nanos The time limit in nanoseconds.
+	 * @return The number of playouts completed.
+	 */
+	private static long runPlayouts(GameState start, GameState terminalState, long nanos) {
+		long end = System.nanoTime() + nanos;
+		long playouts = 0;
+		int sum = 0;
+
+		while (System.nanoTime() < end) {
+			for (int i = 0; i < 100; i++) {
+				sum += MonteCarloTreeSearch.simulateDefault(start, true, 0, terminalState);
+			}
+
+			playouts += 100;
+		}
+
+		if (sum == Integer.MIN_VALUE) {
+			System.out.println(sum);
+		}
+
+		return playouts;
+	}
+}
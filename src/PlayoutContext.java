@@ -0,0 +1,459 @@
+//package MCTS;
+
+import java.util.Random;
+
+/**
+ * A mutable Dots and Boxes position used for simulations. It holds the edge bits (in the same layout as the words of
+ * a GameState, so action a is bit (edges - a - 1)), the number of taken sides of each box, the net score for player
+ * one, and the player to move.
+ * <p>
+ * Moves are applied and undone in place, so a random playout allocates nothing. A context is tied to one board size
+ * and is reused for every simulation on that board. It is not thread-safe.
+ * <p>
+ * A playout may stop early once only long chains and loops are left, taking the exact result from a ChainAnalyzer.
+ */
+
+public class PlayoutContext {
+
+	/**
+	 * The game (board) this context plays on.
+	 */
+	private final DotsAndBoxes game;
+
+	/**
+	 * The number of edges on the board.
+	 */
+	private final int edges;
+
+	/**
+	 * The edge bits, lowest word first.
+	 */
+	private final long[] bits;
+
+	/**
+	 * The number of taken sides of each box.
+	 */
+	private final int[] sides;
+
+	/**
+	 * The number of boxes with either 2 or 4 taken sides. When every box has, only chains and loops are left.
+	 */
+	private int twoOrFour;
+
+	/**
+	 * Values the positions in which only long chains and loops are left.
+	 */
+	private final ChainAnalyzer analyzer;
+
+	/**
+	 * The actions applied since the last reset, in order.
+	 */
+	private final int[] moves;
+
+	/**
+	 * The number of boxes completed by each of the applied actions.
+	 */
+	private final int[] taken;
+
+	/**
+	 * The number of applied actions which can be undone.
+	 */
+	private int moveCount;
+
+	/**
+	 * The number of free edges.
+	 */
+	private int freeEdges;
+
+	/**
+	 * The net score for player one.
+	 */
+	private int p1Net;
+
+	/**
+	 * True if player one is to move.
+	 */
+	private boolean playerOne;
+
+	/**
+	 * Constructor for the PlayoutContext. The context starts on the empty board with player one to move.
+	 *
+	 * @param game
+	 *            The game (board) to play on.
+	 */
+	public PlayoutContext(DotsAndBoxes game) {
+		this.game = game;
+		this.edges = game.edges;
+		this.bits = new long[game.stateWords];
+		this.sides = new int[game.boxEdges.length];
+		this.moves = new int[edges];
+		this.taken = new int[edges];
+		this.analyzer = new ChainAnalyzer(game);
+
+		reset(new GameState(0), true, 0);
+	}
+
+	/**
+	 * Checks whether this context can be used for a game.
+	 *
+	 * @param other
+	 *            The game.
+	 * @return True if the game is played on a board of the same size.
+	 */
+	public boolean fits(DotsAndBoxes other) {
+		return other.height == game.height && other.width == game.width;
+	}
+
+	/**
+	 * Sets the position of the context and forgets the applied actions.
+	 *
+	 * @param state
+	 *            The edges taken.
+	 * @param playerOne
+	 *            True if player one is to move.
+	 * @param p1Net
+	 *            The net score for player one.
+	 */
+	public void reset(GameState state, boolean playerOne, int p1Net) {
+		this.playerOne = playerOne;
+		this.p1Net = p1Net;
+
+		setState(state);
+	}
+
+	/**
+	 * Replaces the edges taken, keeping the scores and the player to move, and forgets the applied actions. This is
+	 * used to follow a state which is stored under a different symmetry of the board.
+	 *
+	 * @param state
+	 *            The edges taken.
+	 */
+	public void setState(GameState state) {
+		for (int w = 0; w < bits.length; w++) {
+			bits[w] = state.getWord(w);
+		}
+
+		for (int b = 0; b < sides.length; b++) {
+			int count = 0;
+
+			for (int edge : game.boxEdges[b]) {
+				if (isTaken(edge)) {
+					count++;
+				}
+			}
+
+			sides[b] = count;
+		}
+
+		twoOrFour = 0;
+
+		for (int b = 0; b < sides.length; b++) {
+			if (sides[b] == 2 || sides[b] == 4) {
+				twoOrFour++;
+			}
+		}
+
+		freeEdges = DotsAndBoxes.getFreeEdgeCount(state, edges);
+		moveCount = 0;
+	}
+
+	/**
+	 * Checks whether the edges taken in this context are those of a state.
+	 *
+	 * @param state
+	 *            The state.
+	 * @return True if the same edges are taken.
+	 */
+	public boolean matches(GameState state) {
+		for (int w = 0; w < bits.length; w++) {
+			if (bits[w] != state.getWord(w)) {
+				return false;
+			}
+		}
+
+		return state.getWordCount() <= bits.length;
+	}
+
+	/**
+	 * Gets the edges taken as a new state.
+	 *
+	 * @return The state.
+	 */
+	public GameState getState() {
+		return bits.length == 1 ? new GameState(bits[0]) : new GameState(bits.clone());
+	}
+
+	/**
+	 * Checks whether an edge is taken.
+	 *
+	 * @param action
+	 *            The edge.
+	 * @return True if the edge is taken.
+	 */
+	public boolean isTaken(int action) {
+		int bit = edges - action - 1;
+
+		return ((bits[bit >>> 6] >>> bit) & 1L) != 0;
+	}
+
+	/**
+	 * Takes a free edge for the player to move. The turn passes unless a box is completed.
+	 *
+	 * @param action
+	 *            The edge to take. Must be free.
+	 * @return The number of boxes completed (0 - 2).
+	 */
+	public int apply(int action) {
+		int bit = edges - action - 1;
+		int completed = 0;
+
+		bits[bit >>> 6] |= 1L << bit;
+		freeEdges--;
+
+		for (int box : game.edgeBoxes[action]) {
+			int count = ++sides[box];
+
+			if (count == 4) {
+				completed++;
+			}
+
+			/* a box gains its second or fourth side, or loses the status with its third */
+			twoOrFour += (count & 1) == 0 ? 1 : count == 3 ? -1 : 0;
+		}
+
+		if (completed > 0) {
+			p1Net += playerOne ? completed : -completed;
+		} else {
+			playerOne = !playerOne;
+		}
+
+		moves[moveCount] = action;
+		taken[moveCount] = completed;
+		moveCount++;
+
+		return completed;
+	}
+
+	/**
+	 * Undoes the last applied action (since the last reset).
+	 */
+	public void undo() {
+		moveCount--;
+
+		int action = moves[moveCount];
+		int completed = taken[moveCount];
+		int bit = edges - action - 1;
+
+		if (completed > 0) {
+			p1Net -= playerOne ? completed : -completed;
+		} else {
+			playerOne = !playerOne;
+		}
+
+		for (int box : game.edgeBoxes[action]) {
+			int count = sides[box]--;
+
+			twoOrFour -= (count & 1) == 0 ? 1 : count == 3 ? -1 : 0;
+		}
+
+		bits[bit >>> 6] &= ~(1L << bit);
+		freeEdges++;
+	}
+
+	/**
+	 * Gets the number of actions which can be undone.
+	 *
+	 * @return The number of actions applied since the last reset.
+	 */
+	public int getMoveCount() {
+		return moveCount;
+	}
+
+	/**
+	 * Checks whether every edge is taken.
+	 *
+	 * @return True if the game is over.
+	 */
+	public boolean isTerminal() {
+		return freeEdges == 0;
+	}
+
+	/**
+	 * Gets the number of free edges.
+	 *
+	 * @return The number of free edges.
+	 */
+	public int getFreeEdgeCount() {
+		return freeEdges;
+	}
+
+	/**
+	 * Selects a single free edge. Free edges are counted from the least significant bit, as in
+	 * DotsAndBoxes.getFreeEdge.
+	 *
+	 * @param k
+	 *            The index of the free edge, between 0 and getFreeEdgeCount() - 1.
+	 * @return The action of the k-th free edge.
+	 */
+	public int getFreeEdge(int k) {
+		int word = 0;
+		long free = getFreeMask(0);
+		int count = Long.bitCount(free);
+
+		while (k >= count) {
+			k -= count;
+			word++;
+			free = getFreeMask(word);
+			count = Long.bitCount(free);
+		}
+
+		return edges - (word << 6) - DotsAndBoxes.selectBit(free, k) - 1;
+	}
+
+	/**
+	 * Lists the free edges.
+	 *
+	 * @param actions
+	 *            Receives the free edges. Must hold at least getFreeEdgeCount() entries.
+	 * @return The number of free edges.
+	 */
+	public int getFreeEdges(int[] actions) {
+		int count = 0;
+
+		for (int w = 0; w < bits.length; w++) {
+			for (long free = getFreeMask(w); free != 0; free &= free - 1) {
+				actions[count] = edges - (w << 6) - Long.numberOfTrailingZeros(free) - 1;
+				count++;
+			}
+		}
+
+		return count;
+	}
+
+	/**
+	 * Gets one word of the edge bits.
+	 *
+	 * @param word
+	 *            The index of the word (0 is the lowest).
+	 * @return The word.
+	 */
+	public long getWord(int word) {
+		return bits[word];
+	}
+
+	/**
+	 * Gets the free edges in one word as a mask.
+	 *
+	 * @param word
+	 *            The index of the word (0 is the lowest).
+	 * @return The mask of the free edges in the word.
+	 */
+	private long getFreeMask(int word) {
+		int count = edges - (word << 6);
+
+		return count >= 64 ? ~bits[word] : ~bits[word] & ((1L << count) - 1);
+	}
+
+	/**
+	 * Gets the number of taken sides of a box.
+	 *
+	 * @param box
+	 *            The box.
+	 * @return The number of taken sides (0 - 4).
+	 */
+	public int getSides(int box) {
+		return sides[box];
+	}
+
+	/**
+	 * Gets the net score for player one.
+	 *
+	 * @return The net score.
+	 */
+	public int getNetScore() {
+		return p1Net;
+	}
+
+	/**
+	 * Checks whether player one is to move.
+	 *
+	 * @return True if player one is to move.
+	 */
+	public boolean isPlayerOne() {
+		return playerOne;
+	}
+
+	/**
+	 * Gets the result of the game for player one from the current net score.
+	 *
+	 * @return 1 for a win, -1 for a loss, or 0 for a tie.
+	 */
+	public int getResult() {
+		return p1Net > 0 ? 1 : p1Net < 0 ? -1 : 0;
+	}
+
+	/**
+	 * Gets the exact result of the game if only long chains and loops are left. @see ChainAnalyzer.getEndgameValue
+	 *
+	 * @return The net score for player one at the end of the game under perfect play, or ChainAnalyzer.NOT_ENDGAME.
+	 */
+	public int getEndgameNetScore() {
+		int value = getEndgameValue();
+
+		if (value == ChainAnalyzer.NOT_ENDGAME) {
+			return value;
+		}
+
+		return p1Net + (playerOne ? value : -value);
+	}
+
+	/**
+	 * Gets the net score still to be won by the player to move if only long chains and loops are left.
+	 *
+	 * @return The net score the player to move will gain under perfect play, or ChainAnalyzer.NOT_ENDGAME.
+	 */
+	public int getEndgameValue() {
+		if (twoOrFour < sides.length || freeEdges == 0) {
+			return ChainAnalyzer.NOT_ENDGAME;
+		}
+
+		return analyzer.getEndgameValue(bits);
+	}
+
+	/**
+	 * Plays random moves until every edge is taken.
+	 *
+	 * @param random
+	 *            The source of random moves.
+	 * @return The result for player one (-1 for a loss, 0 for a tie, and 1 for a win).
+	 */
+	public int playout(Random random) {
+		return playout(random, false);
+	}
+
+	/**
+	 * Plays random moves until every edge is taken or, if exactEndgame is true, until only long chains and loops
+	 * are left, in which case the result is found exactly.
+	 *
+	 * @param random
+	 *            The source of random moves.
+	 * @param exactEndgame
+	 *            True to stop at positions of only long chains and loops.
+	 * @return The result for player one (-1 for a loss, 0 for a tie, and 1 for a win).
+	 */
+	public int playout(Random random, boolean exactEndgame) {
+		while (freeEdges > 0) {
+			if (exactEndgame && twoOrFour == sides.length) {
+				int net = getEndgameNetScore();
+
+				if (net != ChainAnalyzer.NOT_ENDGAME) {
+					return net > 0 ? 1 : net < 0 ? -1 : 0;
+				}
+			}
+
+			apply(getFreeEdge(random.nextInt(freeEdges)));
+		}
+
+		return getResult();
+	}
+}
@@ -0,0 +1,182 @@
+//package MCTS;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * Runs the simulations of a move on several threads which each search a tree of their own (root parallelism). Each
+ * thread builds a new tree of the same kind from the current position with its share of the simulations, and the
+ * trees are then merged into the tree of the player (see SearchTree.merge), so the move is chosen from the sums of
+ * the statistics of all threads and the player keeps the combined tree for later moves.
+ * <p>
+ * The threads need no synchronization while simulating, but each builds its own copy of the upper levels of the
+ * tree. The searches and the merge run on one ForkJoinPool.
+ */
+
+public class RootParallelSearch implements ThreadedSearch {
+
+	/**
+	 * The threads which search and merge the trees.
+	 */
+	private final ForkJoinPool pool;
+
+	/**
+	 * The state of each tree, kept from one search to the next.
+	 */
+	private final Worker[] workers;
+
+	/**
+	 * Constructor for the RootParallelSearch.
+	 *
+	 * @param game
+	 *            The game to be simulated. Searches may use other games on a board of the same size.
+	 * @param threads
+	 *            The number of threads (and of trees).
+	 */
+	public RootParallelSearch(DotsAndBoxes game, int threads) {
+		workers = new Worker[Math.max(1, threads)];
+		pool = new ForkJoinPool(workers.length);
+
+		for (int t = 0; t < workers.length; t++) {
+			workers[t] = new Worker(game);
+		}
+	}
+
+	@Override
+	public int getThreads() {
+		return workers.length;
+	}
+
+	@Override
+	public int search(TreePath position, int p1Net, SearchTree tree, DotsAndBoxes game, int simulations) {
+		ForkJoinTask<?>[] tasks = new ForkJoinTask<?>[workers.length];
+		SearchTree[] trees = new SearchTree[workers.length];
+		int performed = 0;
+
+		for (int t = 0; t < workers.length; t++) {
+			int share = simulations / workers.length + (t < simulations % workers.length ? 1 : 0);
+
+			workers[t].start(position, p1Net, game, share);
+			tasks[t] = pool.submit(workers[t]);
+		}
+
+		for (int t = 0; t < workers.length; t++) {
+			tasks[t].join();
+
+			trees[t] = workers[t].tree;
+			performed += workers[t].performed;
+			MonteCarloTreeSearch.addSimulationMoves(workers[t].moves);
+		}
+
+		tree.merge(trees, pool);
+
+		for (Worker worker : workers) {
+			worker.tree.close();
+			worker.tree = null;
+		}
+
+		return performed;
+	}
+
+	/**
+	 * Builds a tree from the position of the current search with a share of its simulations.
+	 */
+	private class Worker implements Runnable {
+
+		/**
+		 * The position used by the simulations of this tree.
+		 */
+		private PlayoutContext context;
+
+		/**
+		 * The endgame solver of this tree, or null if positions are not solved.
+		 */
+		private EndgameSolver solver;
+
+		/**
+		 * The random number generator of this tree.
+		 */
+		private final Random random = new Random();
+
+		/**
+		 * The position, score, and game of the current search, and the number of simulations of this tree.
+		 */
+		private TreePath position;
+		private int p1Net;
+		private DotsAndBoxes game;
+		private int simulations;
+
+		/**
+		 * The tree built in the current search.
+		 */
+		private SearchTree tree;
+
+		/**
+		 * The number of simulations performed in the current search.
+		 */
+		private int performed;
+
+		/**
+		 * The number of simulations of this thread which began with each action, added to
+		 * MonteCarloTreeSearch.simulationMoves after the search.
+		 */
+		private int[] moves;
+
+		/**
+		 * Constructor for the Worker.
+		 *
+		 * @param game
+		 *            The game to be simulated.
+		 */
+		Worker(DotsAndBoxes game) {
+			context = new PlayoutContext(game);
+		}
+
+		/**
+		 * Prepares the worker for a search.
+		 *
+		 * @param position
+		 *            The path of the current position on the tree of the player.
+		 * @param p1Net
+		 *            The net score for player one at the node.
+		 * @param game
+		 *            The game to be used.
+		 * @param simulations
+		 *            The number of simulations of this tree.
+		 */
+		void start(TreePath position, int p1Net, DotsAndBoxes game, int simulations) {
+			this.position = position;
+			this.p1Net = p1Net;
+			this.game = game;
+			this.simulations = simulations;
+
+			performed = 0;
+
+			if (moves == null || moves.length != game.edges) {
+				moves = new int[game.edges];
+			}
+
+			if (!context.fits(game)) {
+				context = new PlayoutContext(game);
+			}
+
+			if (MonteCarloTreeSearch.solverEdges > 0 && (solver == null || !solver.fits(game))) {
+				solver = new EndgameSolver(game, MonteCarloTreeSearch.solverEdges, 20);
+			}
+		}
+
+		@Override
+		public void run() {
+			tree = position.getTree().newTree(position.getState(), position.getDepth());
+
+			TreePath root = tree.newPath();
+
+			/* a node solved in the tree of the player needs no simulations */
+			while (performed < simulations && position.getSolvedAction() < 0 && root.getSolvedAction() < 0) {
+				MonteCarloTreeSearch.simulate(root, p1Net, game, context, solver, random, false, null, moves);
+				performed++;
+			}
+		}
+	}
+}
@@ -0,0 +1,171 @@
+//package MCTS;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+
+/**
+ * A Monte Carlo tree as seen by the game loop and the searches of MonteCarloTreeSearch, whatever its nodes are: MCNode
+ * objects (MCTree) or ids into primitive storage (IdTree). The nodes are reached through TreePaths, so the selection
+ * walk and the backup are written once for every kind of tree.
+ * <p>
+ * The counters are kept here so every tree reports the same statistics. Trees which several threads change at once
+ * update them with the atomic updaters; the others may simply assign them.
+ */
+
+public abstract class SearchTree {
+
+	/**
+	 * The number of nodes in the tree.
+	 */
+	public volatile int numNodes = 0;
+
+	/**
+	 * The number of nodes that have been removed from the tree.
+	 */
+	public volatile int deletedNodes = 0;
+
+	/**
+	 * The combined depth of all nodes in the tree.
+	 */
+	public volatile long totalDepth = 0;
+
+	/**
+	 * The total number of leaves (nodes with no children) on the tree.
+	 */
+	public volatile int leaves = 0;
+
+	/**
+	 * The depth of the deepest node in the tree.
+	 */
+	public volatile int maximumDepth = 0;
+
+	/**
+	 * The largest number of nodes the tree has held, and the bytes of storage
+	 * it used then (0 if the tree does not measure its storage, see
+	 * getUsedBytes).
+	 */
+	public volatile int maximumNodes = 0;
+	public volatile long maximumUsedBytes = 0;
+
+	/**
+	 * The number of times the tree has been compacted.
+	 */
+	public volatile int compactions = 0;
+
+	/**
+	 * Atomic updates of the statistics above, so they stay exact while
+	 * several threads add nodes at once.
+	 */
+	protected static final AtomicIntegerFieldUpdater<SearchTree> NUM_NODES = AtomicIntegerFieldUpdater
+			.newUpdater(SearchTree.class, "numNodes");
+	protected static final AtomicIntegerFieldUpdater<SearchTree> DELETED_NODES = AtomicIntegerFieldUpdater
+			.newUpdater(SearchTree.class, "deletedNodes");
+	protected static final AtomicLongFieldUpdater<SearchTree> TOTAL_DEPTH = AtomicLongFieldUpdater
+			.newUpdater(SearchTree.class, "totalDepth");
+	protected static final AtomicIntegerFieldUpdater<SearchTree> LEAVES = AtomicIntegerFieldUpdater
+			.newUpdater(SearchTree.class, "leaves");
+	protected static final AtomicIntegerFieldUpdater<SearchTree> MAXIMUM_DEPTH = AtomicIntegerFieldUpdater
+			.newUpdater(SearchTree.class, "maximumDepth");
+	protected static final AtomicIntegerFieldUpdater<SearchTree> MAXIMUM_NODES = AtomicIntegerFieldUpdater
+			.newUpdater(SearchTree.class, "maximumNodes");
+
+	/**
+	 * The MCGame to be used by this tree.
+	 */
+	public MCGame game;
+
+	/**
+	 * Constructor for the SearchTree.
+	 *
+	 * @param game
+	 *            MCGame to be used by this tree.
+	 */
+	protected SearchTree(MCGame game) {
+		this.game = game;
+	}
+
+	/**
+	 * Creates a path holding only the root.
+	 *
+	 * @return The path.
+	 */
+	public abstract TreePath newPath();
+
+	/**
+	 * Creates an empty tree of the same kind whose root is a node deeper in
+	 * the game tree, to be searched on its own and merged into this one (see
+	 * RootParallelSearch).
+	 *
+	 * @param state
+	 *            The state of the root node.
+	 * @param depth
+	 *            The depth of the root node.
+	 * @return The tree.
+	 */
+	public abstract SearchTree newTree(GameState state, int depth);
+
+	/**
+	 * Merges other trees of the same kind into this one, summing the
+	 * statistics of equivalent nodes and linking their children (see
+	 * MCTree.merge).
+	 *
+	 * @param trees
+	 *            The trees to merge into this one. They are not changed.
+	 * @param pool
+	 *            The pool whose threads may merge the nodes.
+	 */
+	public abstract void merge(SearchTree[] trees, ForkJoinPool pool);
+
+	/**
+	 * Evicts the least visited nodes from the tree until it has at most the
+	 * given number of nodes (see MCTree.evict). Must not be called while other
+	 * threads search the tree.
+	 *
+	 * @param keep
+	 *            A path ending at the node of the current position, which is
+	 *            kept with every node from which it can be reached.
+	 * @param target
+	 *            The number of nodes to be left in the tree.
+	 * @return The number of nodes deleted.
+	 */
+	public abstract int evict(TreePath keep, int target);
+
+	/**
+	 * Checks whether several threads may walk and back up the tree at once.
+	 * Otherwise the searches hold the lock of the tree while they walk it or
+	 * back up a result, and only play out concurrently.
+	 *
+	 * @return True if the tree may be searched without locking it.
+	 */
+	public abstract boolean isConcurrent();
+
+	/**
+	 * Called by the game loop once a real move has been made, with the path
+	 * of the new position. A tree may drop the nodes which can no longer be
+	 * reached, updating the path (see ArenaTree). Nothing is done by default.
+	 *
+	 * @param position
+	 *            The path holding only the node of the new position.
+	 */
+	public void afterMove(TreePath position) {
+	}
+
+	/**
+	 * Gets the number of bytes of storage the tree uses for its nodes. Trees
+	 * of objects leave the storage to the garbage collector and do not
+	 * measure it.
+	 *
+	 * @return The number of bytes, or 0 if it is not known.
+	 */
+	public long getUsedBytes() {
+		return 0;
+	}
+
+	/**
+	 * Releases the storage of the tree. The tree must not be used afterwards.
+	 * Only storage outside the heap needs to be released (see ArenaTree).
+	 */
+	public void close() {
+	}
+}
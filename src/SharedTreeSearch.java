@@ -0,0 +1,183 @@
+//package MCTS;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs the simulations of a move on several threads which all search the same tree, so the tree is not duplicated
+ * for each thread and no results need to be merged afterwards.
+ * <p>
+ * Each thread has its own position, endgame solver, and random number generator, and shares the tree. While a
+ * thread is below a node, the action it selected there carries a virtual loss (see MCNode.addVirtualLoss), which
+ * steers the other threads onto other paths until its result is backed up. Backups are made while holding the lock
+ * of each node, and new nodes are installed with compareAndSet (see MCNode.installChild and StripedNodeTable).
+ * A tree which is not concurrent (see SearchTree.isConcurrent) is instead locked while each thread walks it or backs
+ * up a result, so only the playouts run in parallel. The threads are kept in one ForkJoinPool from one search to the
+ * next.
+ */
+
+public class SharedTreeSearch implements ThreadedSearch {
+
+	/**
+	 * The threads which search the tree.
+	 */
+	private final ForkJoinPool pool;
+
+	/**
+	 * The state of each thread, kept from one search to the next.
+	 */
+	private final Worker[] workers;
+
+	/**
+	 * The number of simulations of the current search not yet started.
+	 */
+	private final AtomicInteger remaining = new AtomicInteger();
+
+	/**
+	 * Constructor for the SharedTreeSearch.
+	 *
+	 * @param game
+	 *            The game to be simulated. Searches may use other games on a board of the same size.
+	 * @param threads
+	 *            The number of threads.
+	 */
+	public SharedTreeSearch(DotsAndBoxes game, int threads) {
+		workers = new Worker[Math.max(1, threads)];
+		pool = new ForkJoinPool(workers.length);
+
+		for (int t = 0; t < workers.length; t++) {
+			workers[t] = new Worker(game);
+		}
+	}
+
+	@Override
+	public int getThreads() {
+		return workers.length;
+	}
+
+	@Override
+	public int search(TreePath position, int p1Net, SearchTree tree, DotsAndBoxes game, int simulations) {
+		ForkJoinTask<?>[] tasks = new ForkJoinTask<?>[workers.length];
+
+		remaining.set(simulations);
+
+		for (int t = 0; t < workers.length; t++) {
+			workers[t].start(position, p1Net, game);
+			tasks[t] = pool.submit(workers[t]);
+		}
+
+		int performed = 0;
+
+		for (int t = 0; t < tasks.length; t++) {
+			tasks[t].join();
+
+			if (workers[t].failure != null) {
+				throw new IllegalStateException("search thread " + t + " failed", workers[t].failure);
+			}
+
+			performed += workers[t].performed;
+			MonteCarloTreeSearch.addSimulationMoves(workers[t].moves);
+		}
+
+		return performed;
+	}
+
+	/**
+	 * Simulates from the node of the current search until no simulations remain.
+	 */
+	private class Worker implements Runnable {
+
+		/**
+		 * The position used by the simulations of this thread.
+		 */
+		private PlayoutContext context;
+
+		/**
+		 * The endgame solver of this thread, or null if positions are not solved.
+		 */
+		private EndgameSolver solver;
+
+		/**
+		 * The random number generator of this thread.
+		 */
+		private final Random random = new Random();
+
+		/**
+		 * The position, score, and game of the current search.
+		 */
+		private TreePath position;
+		private int p1Net;
+		private DotsAndBoxes game;
+
+		/**
+		 * The number of simulations performed by this thread in the current search.
+		 */
+		private int performed;
+
+		/**
+		 * The number of simulations of this thread which began with each action, added to
+		 * MonteCarloTreeSearch.simulationMoves after the search.
+		 */
+		private int[] moves;
+
+		/**
+		 * The exception which stopped this thread, or null.
+		 */
+		private Throwable failure;
+
+		/**
+		 * Constructor for the Worker.
+		 *
+		 * @param game
+		 *            The game to be simulated.
+		 */
+		Worker(DotsAndBoxes game) {
+			context = new PlayoutContext(game);
+		}
+
+		/**
+		 * Prepares the worker for a search.
+		 *
+		 * @param position
+		 *            The path of the current position on the tree to be used and updated.
+		 * @param p1Net
+		 *            The net score for player one at the node.
+		 * @param game
+		 *            The game to be used.
+		 */
+		void start(TreePath position, int p1Net, DotsAndBoxes game) {
+			this.position = position;
+			this.p1Net = p1Net;
+			this.game = game;
+
+			performed = 0;
+			failure = null;
+
+			if (moves == null || moves.length != game.edges) {
+				moves = new int[game.edges];
+			}
+
+			if (!context.fits(game)) {
+				context = new PlayoutContext(game);
+			}
+
+			if (MonteCarloTreeSearch.solverEdges > 0 && (solver == null || !solver.fits(game))) {
+				solver = new EndgameSolver(game, MonteCarloTreeSearch.solverEdges, 20);
+			}
+		}
+
+		@Override
+		public void run() {
+			try {
+				while (position.getSolvedAction() < 0 && remaining.getAndDecrement() > 0) {
+					MonteCarloTreeSearch.simulate(position, p1Net, game, context, solver, random, true, null, moves);
+					performed++;
+				}
+			} catch (Throwable e) {
+				failure = e;
+			}
+		}
+	}
+}
@@ -0,0 +1,209 @@
+import java.util.ArrayDeque;
+import java.util.IdentityHashMap;
+import java.util.Random;
+import java.util.concurrent.CyclicBarrier;
+
+/**
+ * Stress test of a tree searched by several threads at once. Each round first has every thread expand random paths
+ * of a new tree at the same moment (with MCNode.getNode and BEHAVIOR_EXPANSION_ALWAYS, so the threads race to
+ * install the same children), then runs a SharedTreeSearch on it. After each phase the tree is walked and checked:
+ * <ul>
+ * <li>every node is the one in the node table for its state (no duplicates),</li>
+ * <li>numNodes, leaves, totalDepth, and maximumDepth match the nodes reached,</li>
+ * <li>parents is the number of links to each node and isLeaf is true only for nodes without children,</li>
+ * <li>timesReached - 1 is the sum of the counts of the links of each node, no virtual losses are left, and the root
+ * was reached once per simulation.</li>
+ * </ul>
+ * Prints each failure and exits with status 1 if there were any.
+ *
+ * Usage: java SharedTreeStressTest [board size] [threads] [simulations per round] [rounds]
+ */
+
+public class SharedTreeStressTest {
+
+	public static void main(String[] args) throws Exception {
+		int size = args.length > 0 ? Integer.parseInt(args[0]) : 3;
+		int threads = args.length > 1 ? Integer.parseInt(args[1]) : 8;
+		int simulations = args.length > 2 ? Integer.parseInt(args[2]) : 50000;
+		int rounds = args.length > 3 ? Integer.parseInt(args[3]) : 5;
+
+		DotsAndBoxes game = new DotsAndBoxes(size, size, false, false);
+		MonteCarloTreeSearch.game = game;
+		MonteCarloTreeSearch.width = size;
+		MonteCarloTreeSearch.height = size;
+		MonteCarloTreeSearch.edges = game.edges;
+		MonteCarloTreeSearch.simulationMoves = new int[game.edges];
+		MonteCarloTreeSearch.c = 1.4;
+
+		SharedTreeSearch search = new SharedTreeSearch(game, threads);
+		int failures = 0;
+
+		for (int round = 0; round < rounds; round++) {
+			MCTree tree = new MCTree(game, new GameState(0));
+
+			expand(tree, threads, 500, round);
+			failures += check(tree, 0, size + "x" + size + " round " + round + " expansion");
+
+			long begin = System.nanoTime();
+			int performed = search.search(tree.newPath(), 0, tree, game, simulations);
+			double elapsed = (System.nanoTime() - begin) / 1e9;
+
+			if (performed != simulations) {
+				System.out.println("FAIL: " + performed + " of " + simulations + " simulations performed");
+				failures++;
+			}
+
+			failures += check(tree, simulations, size + "x" + size + " round " + round + " search ("
+					+ String.format("%.0f", performed / elapsed) + " simulations/s)");
+		}
+
+		if (failures > 0) {
+			System.out.println(failures + " failures");
+			System.exit(1);
+		}
+
+		System.out.println("all checks passed");
+	}
+
+	/**
+	 * Has several threads, released together, each expand random paths from the root to the end of the game.
+	 *
+	 * @param tree The tree.
+	 * @param threads The number of threads.
+	 * @param paths The number of paths expanded by each thread.
+	 * @param seed The seed of the random paths.
+	 */
+	private static void expand(final MCTree tree, int threads, final int paths, int seed) throws InterruptedException {
+		final CyclicBarrier start = new CyclicBarrier(threads);
+		Thread[] workers = new Thread[threads];
+		final Throwable[] failure = new Throwable[1];
+
+		for (int t = 0; t < threads; t++) {
+			final Random random = new Random(seed * 1000L + t);
+
+			workers[t] = new Thread() {
+				@Override
+				public void run() {
+					try {
+						start.await();
+
+						for (int p = 0; p < paths; p++) {
+							MCNode node = tree.root;
+
+							while (node != null && node.links.length > 0) {
+								int action = node.links[random.nextInt(node.links.length)].action;
+								node = node.getNode(action, MonteCarloTreeSearch.BEHAVIOR_EXPANSION_ALWAYS);
+							}
+						}
+					} catch (Throwable e) {
+						failure[0] = e;
+					}
+				}
+			};
+			workers[t].start();
+		}
+
+		for (Thread worker : workers) {
+			worker.join();
+		}
+
+		if (failure[0] != null) {
+			throw new IllegalStateException("expansion failed", failure[0]);
+		}
+	}
+
+	/**
+	 * Walks a tree and checks its nodes and statistics.
+	 *
+	 * @param tree The tree.
+	 * @param simulations The number of simulations run from the root.
+	 * @param name The name of the check, printed with the result.
+	 * @return The number of failed checks.
+	 */
+	private static int check(MCTree tree, int simulations, String name) {
+		IdentityHashMap<MCNode, Integer> links = new IdentityHashMap<MCNode, Integer>();
+		ArrayDeque<MCNode> queue = new ArrayDeque<MCNode>();
+		int leaves = 0, maximumDepth = 0, duplicates = 0, badParents = 0, badLeaves = 0, badVisits = 0;
+		long totalDepth = 0, virtualLosses = 0;
+
+		links.put(tree.root, 0);
+		queue.add(tree.root);
+
+		while (!queue.isEmpty()) {
+			MCNode node = queue.poll();
+			int chosen = 0;
+			boolean hasChild = false;
+
+			if (tree.findNode(node) != node) {
+				duplicates++;
+			}
+
+			for (MCNode.ActionLink link : node.links) {
+				chosen += link.timesChosen;
+				virtualLosses += Math.abs(link.virtualLosses);
+
+				if (link.child != null) {
+					hasChild = true;
+					Integer count = links.get(link.child);
+
+					if (count == null) {
+						queue.add(link.child);
+					}
+
+					links.put(link.child, count == null ? 1 : count + 1);
+				}
+			}
+
+			if (node.timesReached - 1 != chosen) {
+				badVisits++;
+			}
+
+			if (node.isLeaf == hasChild) {
+				badLeaves++;
+			}
+
+			leaves += hasChild ? 0 : 1;
+			totalDepth += node.depth;
+			maximumDepth = Math.max(maximumDepth, node.depth);
+		}
+
+		for (MCNode node : links.keySet()) {
+			if (node.parents != links.get(node)) {
+				badParents++;
+			}
+		}
+
+		int failures = 0;
+
+		failures += expect(name, "numNodes", tree.numNodes, links.size());
+		failures += expect(name, "leaves", tree.leaves, leaves);
+		failures += expect(name, "totalDepth", tree.totalDepth, totalDepth);
+		failures += expect(name, "maximumDepth", tree.maximumDepth, maximumDepth);
+		failures += expect(name, "root visits", tree.root.timesReached - 1, simulations);
+		failures += expect(name, "duplicate nodes", duplicates, 0);
+		failures += expect(name, "nodes with wrong parents", badParents, 0);
+		failures += expect(name, "nodes with wrong isLeaf", badLeaves, 0);
+		failures += expect(name, "nodes with wrong visit totals", badVisits, 0);
+		failures += expect(name, "virtual losses left", virtualLosses, 0);
+
+		if (failures == 0) {
+			System.out.println("ok: " + name + ", " + links.size() + " nodes");
+		}
+
+		return failures;
+	}
+
+	/**
+	 * Compares a statistic with its expected value, printing it if they differ.
+	 *
+	 * @return 1 if they differ, 0 otherwise.
+	 */
+	private static int expect(String name, String what, long actual, long expected) {
+		if (actual == expected) {
+			return 0;
+		}
+
+		System.out.println("FAIL: " + name + ": " + what + " is " + actual + ", expected " + expected);
+		return 1;
+	}
+}
@@ -0,0 +1,189 @@
+//package MCTS;
+
+/**
+ * A table of MCNodes keyed on their states which several threads may use at once.
+ * <p>
+ * The table is split into stripes, each a NodeTable guarded by its own lock. A state always falls in the same stripe
+ * (chosen by the high bits of its key), so threads only wait for each other when they look up states of the same
+ * stripe, and each stripe grows on its own. Equal states are only ever added once, so threads which add equal nodes
+ * at the same time all get the node of the first.
+ */
+
+public class StripedNodeTable {
+
+	/**
+	 * The default number of stripes. Must be a power of two.
+	 */
+	public static final int DEFAULT_STRIPES = 64;
+
+	/**
+	 * The smallest initial number of slots of a stripe.
+	 */
+	private static final int MIN_STRIPE_CAPACITY = 16;
+
+	/**
+	 * The stripes. Each is only used while holding its lock.
+	 */
+	private final NodeTable[] stripes;
+
+	/**
+	 * The number of bits of a key which are not used to choose the stripe.
+	 */
+	private final int shift;
+
+	/**
+	 * Constructor for the StripedNodeTable.
+	 */
+	public StripedNodeTable() {
+		this(DEFAULT_STRIPES, NodeTable.INITIAL_CAPACITY);
+	}
+
+	/**
+	 * Constructor for the StripedNodeTable.
+	 *
+	 * @param stripes
+	 *            The number of stripes. Rounded up to a power of two.
+	 * @param capacity
+	 *            The initial number of slots of the whole table.
+	 */
+	public StripedNodeTable(int stripes, int capacity) {
+		int count = Integer.highestOneBit(Math.max(stripes, 2) - 1) << 1;
+
+		this.stripes = new NodeTable[count];
+		this.shift = 64 - Integer.numberOfTrailingZeros(count);
+
+		for (int i = 0; i < count; i++) {
+			this.stripes[i] = new NodeTable(Math.max(MIN_STRIPE_CAPACITY, capacity / count));
+		}
+	}
+
+	/**
+	 * Gets the stripe which holds a state.
+	 *
+	 * @param state
+	 *            The state.
+	 * @return The stripe for the state.
+	 */
+	private NodeTable stripeFor(GameState state) {
+		/* the same key for equal states, however the stripe keys them */
+		long hash = state.isPacked() ? GameState.mix(state.packedKey()) : state.hashKey();
+
+		return stripes[(int) (hash >>> shift)];
+	}
+
+	/**
+	 * Gets the node with the given state.
+	 *
+	 * @param state
+	 *            The state searched for.
+	 * @return The node with an equal state, or null if there is none.
+	 */
+	public MCNode get(GameState state) {
+		NodeTable stripe = stripeFor(state);
+
+		synchronized (stripe) {
+			return stripe.get(state);
+		}
+	}
+
+	/**
+	 * Adds a node to the table unless a node with an equal state is already present.
+	 *
+	 * @param node
+	 *            The node to be added.
+	 * @return The node already in the table, or null if the given node was added.
+	 */
+	public MCNode putIfAbsent(MCNode node) {
+		NodeTable stripe = stripeFor(node.state);
+
+		synchronized (stripe) {
+			return stripe.putIfAbsent(node);
+		}
+	}
+
+	/**
+	 * Removes the node with the given state.
+	 *
+	 * @param state
+	 *            The state of the node to be removed.
+	 * @return The node removed, or null if there was none.
+	 */
+	public MCNode remove(GameState state) {
+		NodeTable stripe = stripeFor(state);
+
+		synchronized (stripe) {
+			return stripe.remove(state);
+		}
+	}
+
+	/**
+	 * Gets every node in the table. Nodes added or removed while this runs may or may not be included.
+	 *
+	 * @return An array of the nodes in the table, in no particular order.
+	 */
+	public MCNode[] values() {
+		MCNode[][] parts = new MCNode[stripes.length][];
+		int size = 0;
+
+		for (int i = 0; i < stripes.length; i++) {
+			synchronized (stripes[i]) {
+				parts[i] = stripes[i].values();
+			}
+
+			size += parts[i].length;
+		}
+
+		MCNode[] values = new MCNode[size];
+		int index = 0;
+
+		for (MCNode[] part : parts) {
+			System.arraycopy(part, 0, values, index, part.length);
+			index += part.length;
+		}
+
+		return values;
+	}
+
+	/**
+	 * Gets the number of nodes in the table.
+	 *
+	 * @return The number of nodes.
+	 */
+	public int size() {
+		int size = 0;
+
+		for (NodeTable stripe : stripes) {
+			synchronized (stripe) {
+				size += stripe.size();
+			}
+		}
+
+		return size;
+	}
+
+	/**
+	 * Gets the statistics of the table.
+	 *
+	 * @return A String with the size, capacity, load, and probe statistics of all stripes.
+	 */
+	public String toString() {
+		long size = 0, capacity = 0, lookups = 0;
+		double probes = 0;
+		int maxProbes = 0, resizes = 0;
+
+		for (NodeTable stripe : stripes) {
+			synchronized (stripe) {
+				size += stripe.size();
+				capacity += stripe.capacity();
+				lookups += stripe.getLookups();
+				probes += stripe.getAverageProbes() * stripe.getLookups();
+				maxProbes = Math.max(maxProbes, stripe.getMaxProbes());
+				resizes += stripe.getResizes();
+			}
+		}
+
+		return "nodes=" + size + " capacity=" + capacity + " load=" + String.format("%.3f", (double) size / capacity)
+				+ " lookups=" + lookups + " avgProbes=" + String.format("%.3f", lookups == 0 ? 0 : probes / lookups)
+				+ " maxProbes=" + maxProbes + " resizes=" + resizes + " stripes=" + stripes.length;
+	}
+}
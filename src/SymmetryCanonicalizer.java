@@ -0,0 +1,297 @@
+//package MCTS;
+
+/**
+ * Finds the canonical representation of a state under a group of symmetries of the board.
+ * <p>
+ * Each symmetry is a permutation of the edges. It is applied to the bits of a state with precomputed lookup tables:
+ * the state is split into 8-bit chunks, and each chunk value indexes a table entry holding the image bits of that
+ * chunk. The image is the OR of one entry per chunk, so transforming a 60-edge state costs 8 table reads. The
+ * canonical state is the largest image (comparing states as unsigned integers), matching the choice made by the
+ * original string-based removeSymmetries.
+ */
+
+public class SymmetryCanonicalizer {
+
+	/**
+	 * The number of edges (bits) in a state.
+	 */
+	private final int edges;
+
+	/**
+	 * The number of 64-bit words in a state.
+	 */
+	private final int stateWords;
+
+	/**
+	 * The number of 8-bit chunks in a state.
+	 */
+	private final int chunks;
+
+	/**
+	 * The lookup tables of each symmetry. Entry (chunk * 256 + value) * stateWords + word holds the bits of the
+	 * given word of the image of the given chunk value.
+	 */
+	private final long[][] tables;
+
+	/**
+	 * Constructor for the SymmetryCanonicalizer.
+	 * 
+	 * @param edges
+	 *            The number of edges on the board.
+	 * @param maps
+	 *            The symmetries other than the identity. Position j in maps[t] contains the edge which becomes edge
+	 *            j under symmetry t (the same convention as DotsAndBoxes.rotate).
+	 */
+	public SymmetryCanonicalizer(int edges, int[][] maps) {
+		this.edges = edges;
+		this.stateWords = (edges + 63) / 64;
+		this.chunks = (edges + 7) / 8;
+		this.tables = new long[maps.length][];
+
+		for (int t = 0; t < maps.length; t++) {
+			long[] table = new long[chunks * 256 * stateWords];
+
+			for (int j = 0; j < edges; j++) {
+				int from = edges - maps[t][j] - 1;
+				int to = edges - j - 1;
+				int chunk = from >>> 3;
+				int chunkBit = 1 << (from & 7);
+
+				/* every chunk value with the source bit set gets the destination bit */
+				for (int value = 0; value < 256; value++) {
+					if ((value & chunkBit) != 0) {
+						table[(chunk * 256 + value) * stateWords + (to >>> 6)] |= 1L << to;
+					}
+				}
+			}
+
+			tables[t] = table;
+		}
+	}
+
+	/**
+	 * Gets the number of symmetries other than the identity.
+	 * 
+	 * @return The number of symmetries.
+	 */
+	public int getSymmetries() {
+		return tables.length;
+	}
+
+	/**
+	 * Applies a symmetry to a state which fits in a single long.
+	 * 
+	 * @param state
+	 *            The bits of the state.
+	 * @param symmetry
+	 *            The index of the symmetry.
+	 * @return The bits of the image of the state.
+	 */
+	public long transform(long state, int symmetry) {
+		long[] table = tables[symmetry];
+		long image = 0;
+
+		for (int c = 0; c < chunks; c++) {
+			int value = (int) (state >>> (c << 3)) & 0xFF;
+
+			if (value != 0) {
+				image |= table[(c << 8) + value];
+			}
+		}
+
+		return image;
+	}
+
+	/**
+	 * Applies a symmetry to a state.
+	 * 
+	 * @param state
+	 *            The state to transform.
+	 * @param symmetry
+	 *            The index of the symmetry.
+	 * @param image
+	 *            An array of stateWords words to receive the image, lowest word first.
+	 */
+	public void transform(GameState state, int symmetry, long[] image) {
+		transform(getWords(state), symmetry, image);
+	}
+
+	/**
+	 * Copies the words of a state into an array of stateWords words.
+	 * 
+	 * @param state
+	 *            The state.
+	 * @return The words of the state, lowest word first.
+	 */
+	private long[] getWords(GameState state) {
+		long[] words = new long[stateWords];
+
+		for (int w = 0; w < stateWords; w++) {
+			words[w] = state.getWord(w);
+		}
+
+		return words;
+	}
+
+	/**
+	 * Applies a symmetry to the words of a state.
+	 * 
+	 * @param state
+	 *            The words of the state, lowest word first.
+	 * @param symmetry
+	 *            The index of the symmetry.
+	 * @param image
+	 *            An array of stateWords words to receive the image, lowest word first.
+	 */
+	private void transform(long[] state, int symmetry, long[] image) {
+		long[] table = tables[symmetry];
+
+		for (int w = 0; w < stateWords; w++) {
+			image[w] = 0;
+		}
+
+		for (int c = 0; c < chunks; c++) {
+			int value = (int) (state[c >>> 3] >>> ((c & 7) << 3)) & 0xFF;
+
+			if (value != 0) {
+				int base = ((c << 8) + value) * stateWords;
+
+				for (int w = 0; w < stateWords; w++) {
+					image[w] |= table[base + w];
+				}
+			}
+		}
+	}
+
+	/**
+	 * Finds the symmetries which map a state onto itself (the stabilizer of the state).
+	 * 
+	 * @param state
+	 *            The state.
+	 * @return An array in which position t is true if symmetry t fixes the state.
+	 */
+	public boolean[] getStabilizer(GameState state) {
+		boolean[] fixed = new boolean[tables.length];
+
+		if (stateWords == 1) {
+			for (int t = 0; t < tables.length; t++) {
+				fixed[t] = transform(state.longState, t) == state.longState;
+			}
+
+			return fixed;
+		}
+
+		long[] source = getWords(state);
+		long[] image = new long[stateWords];
+
+		for (int t = 0; t < tables.length; t++) {
+			transform(source, t, image);
+			fixed[t] = compare(image, source) == 0;
+		}
+
+		return fixed;
+	}
+
+	/**
+	 * Gets the canonical bits of a state which fits in a single long.
+	 * 
+	 * @param state
+	 *            The bits of the state.
+	 * @return The largest image of the state under the symmetries.
+	 */
+	public long canonical(long state) {
+		long best = state;
+
+		for (int t = 0; t < tables.length; t++) {
+			long image = transform(state, t);
+
+			if (Long.compareUnsigned(image, best) > 0) {
+				best = image;
+			}
+		}
+
+		return best;
+	}
+
+	/**
+	 * Gets the canonical words of a state.
+	 * 
+	 * @param state
+	 *            The state.
+	 * @return The words of the largest image of the state, or null if the state itself is the largest.
+	 */
+	private long[] canonicalWords(GameState state) {
+		long[] source = getWords(state);
+		long[] best = source;
+		long[] image = new long[stateWords];
+
+		for (int t = 0; t < tables.length; t++) {
+			transform(source, t, image);
+
+			if (compare(image, best) > 0) {
+				if (best == source) {
+					best = new long[stateWords];
+				}
+
+				System.arraycopy(image, 0, best, 0, stateWords);
+			}
+		}
+
+		return best == source ? null : best;
+	}
+
+	/**
+	 * Compares two states as unsigned integers.
+	 * 
+	 * @param first
+	 *            The words of the first state.
+	 * @param second
+	 *            The words of the second state.
+	 * @return A positive number if first is larger, negative if it is smaller, or zero if they are equal.
+	 */
+	private int compare(long[] first, long[] second) {
+		for (int w = stateWords - 1; w >= 0; w--) {
+			int c = Long.compareUnsigned(first[w], second[w]);
+
+			if (c != 0) {
+				return c;
+			}
+		}
+
+		return 0;
+	}
+
+	/**
+	 * Gets the canonical representation of a state.
+	 * 
+	 * @param state
+	 *            The state to transform.
+	 * @return The largest image of the state (the state itself if it is the largest).
+	 */
+	public GameState canonicalize(GameState state) {
+		if (stateWords == 1) {
+			long best = canonical(state.longState);
+			return best == state.longState ? state : new GameState(best);
+		}
+
+		long[] best = canonicalWords(state);
+		return best == null ? state : new GameState(best);
+	}
+
+	/**
+	 * Gets the canonical representation of a scored state.
+	 * 
+	 * @param state
+	 *            The state to transform.
+	 * @return The largest image of the state with the same net score (the state itself if it is the largest).
+	 */
+	public GameStateScored canonicalize(GameStateScored state) {
+		if (stateWords == 1) {
+			long best = canonical(state.longState);
+			return best == state.longState ? state : new GameStateScored(best, state.playerNetScore);
+		}
+
+		long[] best = canonicalWords(state);
+		return best == null ? state : new GameStateScored(best, state.playerNetScore);
+	}
+}
@@ -0,0 +1,387 @@
+//package MCTS;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * A perfect-play table for a small Dots and Boxes board, held in a memory-mapped file. For every set of taken edges
+ * it stores the net score the player to move will gain from there under perfect play, as one signed byte.
+ * <p>
+ * The table is indexed directly by the edge bits of a state (the longState of a GameState), so every edge set has an
+ * entry and lookups need no canonicalization; the entries of symmetrical states are equal. This is 2^edges bytes, 16
+ * megabytes for a 3x3 board, so only boards of at most MAX_EDGES edges are supported.
+ * <p>
+ * The table is generated by retrograde analysis, from the full board back to the empty one, one layer of equal edge
+ * counts at a time. Each layer depends only on the next, so it is split among several threads.
+ * <p>
+ * Usage: java Tablebase height width path [threads]
+ */
+
+public class Tablebase {
+
+	/**
+	 * The largest number of edges a board may have.
+	 */
+	public static final int MAX_EDGES = 24;
+
+	/**
+	 * The size of the file header (the height and width of the board) in bytes.
+	 */
+	private static final int HEADER = 8;
+
+	/**
+	 * The height (in boxes) of the board.
+	 */
+	private final int height;
+
+	/**
+	 * The width (in boxes) of the board.
+	 */
+	private final int width;
+
+	/**
+	 * The number of edges on the board.
+	 */
+	private final int edges;
+
+	/**
+	 * The edge bits of each box.
+	 */
+	private final long[] boxMasks;
+
+	/**
+	 * The boxes adjoining each edge, indexed by action.
+	 */
+	private final int[][] edgeBoxes;
+
+	/**
+	 * The mapped file, header included.
+	 */
+	private final MappedByteBuffer values;
+
+	/**
+	 * Constructor for the Tablebase.
+	 *
+	 * @param game
+	 *            The game (board) of the table.
+	 * @param values
+	 *            The mapped file.
+	 */
+	private Tablebase(DotsAndBoxes game, MappedByteBuffer values) {
+		this.height = game.height;
+		this.width = game.width;
+		this.edges = game.edges;
+		this.edgeBoxes = game.edgeBoxes;
+		this.values = values;
+		this.boxMasks = new long[game.boxEdges.length];
+
+		for (int b = 0; b < boxMasks.length; b++) {
+			for (int edge : game.boxEdges[b]) {
+				boxMasks[b] |= 1L << (edges - edge - 1);
+			}
+		}
+	}
+
+	/**
+	 * Checks whether a table can be made for a game.
+	 *
+	 * @param game
+	 *            The game.
+	 * @return True if the board has at most MAX_EDGES edges.
+	 */
+	public static boolean supports(DotsAndBoxes game) {
+		return game.edges <= MAX_EDGES;
+	}
+
+	/**
+	 * Opens the table file for a game, generating it first if it does not exist.
+	 *
+	 * @param game
+	 *            The game (board) of the table.
+	 * @param path
+	 *            The table file.
+	 * @param threads
+	 *            The number of threads used if the table is generated.
+	 * @return The table.
+	 * @throws IOException
+	 *             If the file cannot be read or written, or holds the table of another board.
+	 */
+	public static Tablebase open(DotsAndBoxes game, String path, int threads) throws IOException {
+		if (!supports(game)) {
+			throw new IllegalArgumentException("a " + game.height + "x" + game.width + " board has more than "
+					+ MAX_EDGES + " edges");
+		}
+
+		if (new File(path).exists()) {
+			return load(game, path);
+		}
+
+		return generate(game, path, threads);
+	}
+
+	/**
+	 * Opens an existing table file.
+	 *
+	 * @param game
+	 *            The game (board) of the table.
+	 * @param path
+	 *            The table file.
+	 * @return The table.
+	 * @throws IOException
+	 *             If the file cannot be read, or holds the table of another board.
+	 */
+	public static Tablebase load(DotsAndBoxes game, String path) throws IOException {
+		long size = HEADER + (1L << game.edges);
+
+		try (RandomAccessFile file = new RandomAccessFile(path, "r")) {
+			if (file.length() != size) {
+				throw new IOException(path + " is not a table for a " + game.height + "x" + game.width + " board");
+			}
+
+			MappedByteBuffer values = file.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, size);
+
+			if (values.getInt(0) != game.height || values.getInt(4) != game.width) {
+				throw new IOException(path + " is a table for a " + values.getInt(0) + "x" + values.getInt(4)
+						+ " board");
+			}
+
+			return new Tablebase(game, values);
+		}
+	}
+
+	/**
+	 * Generates the table file for a game, replacing any existing file.
+	 *
+	 * @param game
+	 *            The game (board) of the table.
+	 * @param path
+	 *            The table file.
+	 * @param threads
+	 *            The number of threads to use.
+	 * @return The table.
+	 * @throws IOException
+	 *             If the file cannot be written.
+	 */
+	public static Tablebase generate(DotsAndBoxes game, String path, int threads) throws IOException {
+		long size = HEADER + (1L << game.edges);
+		Tablebase table;
+
+		try (RandomAccessFile file = new RandomAccessFile(path, "rw")) {
+			file.setLength(size);
+
+			table = new Tablebase(game, file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size));
+		}
+
+		table.values.putInt(0, game.height);
+		table.values.putInt(4, game.width);
+
+		/* the full board is worth nothing, and each layer needs only the one after it */
+		table.values.put(HEADER + (int) ((1L << game.edges) - 1), (byte) 0);
+
+		for (int layer = game.edges - 1; layer >= 0; layer--) {
+			Layer[] workers = new Layer[Math.max(1, threads)];
+			long count = 1L << game.edges;
+
+			for (int t = 0; t < workers.length; t++) {
+				workers[t] = table.new Layer(layer, count * t / workers.length, count * (t + 1) / workers.length);
+				workers[t].start();
+			}
+
+			for (Layer worker : workers) {
+				try {
+					worker.join();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new IOException("interrupted while generating " + path);
+				}
+			}
+		}
+
+		table.values.force();
+
+		return table;
+	}
+
+	/**
+	 * Solves the states of one layer (one number of taken edges) within a range of the table.
+	 */
+	private class Layer extends Thread {
+
+		/**
+		 * The number of taken edges.
+		 */
+		private final int layer;
+
+		/**
+		 * The first state of the range.
+		 */
+		private final long from;
+
+		/**
+		 * The state after the last one of the range.
+		 */
+		private final long to;
+
+		/**
+		 * Constructor for the Layer.
+		 *
+		 * @param layer
+		 *            The number of taken edges.
+		 * @param from
+		 *            The first state of the range.
+		 * @param to
+		 *            The state after the last one of the range.
+		 */
+		Layer(int layer, long from, long to) {
+			this.layer = layer;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		public void run() {
+			for (long state = from; state < to; state++) {
+				if (Long.bitCount(state) == layer) {
+					values.put(HEADER + (int) state, (byte) solve(state));
+				}
+			}
+		}
+	}
+
+	/**
+	 * Finds the value of a state from the values of the states after it.
+	 *
+	 * @param state
+	 *            The edge bits, with at least one edge free.
+	 * @return The net score the player to move will gain under perfect play.
+	 */
+	private int solve(long state) {
+		int best = Integer.MIN_VALUE;
+
+		for (long free = ~state & ((1L << edges) - 1); free != 0; free &= free - 1) {
+			int action = edges - Long.numberOfTrailingZeros(free) - 1;
+
+			best = Math.max(best, getActionValue(state, action));
+		}
+
+		return best;
+	}
+
+	/**
+	 * Gets the value of a state.
+	 *
+	 * @param state
+	 *            The edge bits (the longState of a GameState).
+	 * @return The net score the player to move will gain from here under perfect play.
+	 */
+	public int getValue(long state) {
+		return values.get(HEADER + (int) state);
+	}
+
+	/**
+	 * Gets the value of a state.
+	 *
+	 * @param state
+	 *            The state.
+	 * @return The net score the player to move will gain from here under perfect play.
+	 */
+	public int getValue(GameState state) {
+		return getValue(state.longState);
+	}
+
+	/**
+	 * Gets the value of taking an edge.
+	 *
+	 * @param state
+	 *            The edge bits before the action (the longState of a GameState).
+	 * @param action
+	 *            The edge to take. Must be free.
+	 * @return The net score the player taking the edge will gain from here under perfect play.
+	 */
+	public int getActionValue(long state, int action) {
+		long next = state | (1L << (edges - action - 1));
+		int taken = 0;
+
+		for (int box : edgeBoxes[action]) {
+			if ((next & boxMasks[box]) == boxMasks[box]) {
+				taken++;
+			}
+		}
+
+		/* the same player moves again after completing a box */
+		return taken > 0 ? taken + getValue(next) : -getValue(next);
+	}
+
+	/**
+	 * Gets the best of a list of actions. Ties go to the first.
+	 *
+	 * @param state
+	 *            The edge bits (the longState of a GameState).
+	 * @param actions
+	 *            The actions to choose from (free edges of the state).
+	 * @return The best action, or -1 if the list is empty.
+	 */
+	public int getBestAction(long state, int[] actions) {
+		int best = Integer.MIN_VALUE;
+		int bestAction = -1;
+
+		for (int action : actions) {
+			int value = getActionValue(state, action);
+
+			if (value > best) {
+				best = value;
+				bestAction = action;
+			}
+		}
+
+		return bestAction;
+	}
+
+	/**
+	 * Checks whether an action is optimal. This is used to measure how well a search plays.
+	 *
+	 * @param state
+	 *            The edge bits (the longState of a GameState).
+	 * @param action
+	 *            The edge taken. Must be free.
+	 * @return True if no action gains more.
+	 */
+	public boolean isBestAction(long state, int action) {
+		return getActionValue(state, action) == getValue(state);
+	}
+
+	/**
+	 * Checks whether this table can be used for a game.
+	 *
+	 * @param game
+	 *            The game.
+	 * @return True if the game is played on a board of the same size.
+	 */
+	public boolean fits(DotsAndBoxes game) {
+		return game.height == height && game.width == width;
+	}
+
+	/**
+	 * Generates (or opens) a table and prints the value of the empty board.
+	 *
+	 * @param args
+	 *            height, width, path, and optionally the number of threads
+	 */
+	public static void main(String[] args) throws IOException {
+		int height = Integer.parseInt(args[0]);
+		int width = Integer.parseInt(args[1]);
+		String path = args[2];
+		int threads = args.length > 3 ? Integer.parseInt(args[3]) : Runtime.getRuntime().availableProcessors();
+
+		DotsAndBoxes game = new DotsAndBoxes(height, width, false, false);
+		long start = System.currentTimeMillis();
+		Tablebase table = open(game, path, threads);
+
+		System.out.println(height + "x" + width + " table " + path + " ready in "
+				+ (System.currentTimeMillis() - start) + "ms");
+		System.out.println("value of the empty board for the first player: " + table.getValue(0));
+	}
+}
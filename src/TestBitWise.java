@@ -14,6 +14,11 @@ public class TestBitWise {
 //		*state is long! 
 		System.out.println(Integer.bitCount(2397 & getBitEdge(7))); //10101
 		
+		// the symmetry maps permute the bits of states, and must agree with the hand-written tables
+		if (!DotsAndBoxes.verifySymmetryTables()) {
+			System.out.println("FAIL: symmetry maps differ from the tables");
+			System.exit(1);
+		}
 	}
 	
 	public static int getBitEdge(int edge) {
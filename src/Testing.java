@@ -5,6 +5,13 @@ public class Testing {
 
 
 public static void main (String [] args) {
+    // the generated symmetry maps must agree with the hand-written tables
+    System.out.println ("TESTING - generated symmetry maps against rotationMap and reflectionMap");
+    if (!DotsAndBoxes.verifySymmetryTables()) {
+        System.out.println ("FAIL: symmetry maps differ from the tables");
+        System.exit(1);
+    }
+
     DotsAndBoxes game = new DotsAndBoxes(2, 2, false, false);
 
   
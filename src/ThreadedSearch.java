@@ -0,0 +1,34 @@
+//package MCTS;
+
+/**
+ * Runs the simulations of a move on several threads (see the threads and threadMode arguments of
+ * MonteCarloTreeSearch).
+ */
+
+public interface ThreadedSearch {
+
+	/**
+	 * Runs simulations from a node until the given number is reached or the node is solved. When this returns, the
+	 * statistics of the node are those used to choose the move.
+	 *
+	 * @param position
+	 *            The path of the current position on the tree.
+	 * @param p1Net
+	 *            The net score for player one at the node.
+	 * @param tree
+	 *            The tree of the player to move.
+	 * @param game
+	 *            The game of the player to move.
+	 * @param simulations
+	 *            The number of simulations.
+	 * @return The number of simulations performed.
+	 */
+	int search(TreePath position, int p1Net, SearchTree tree, DotsAndBoxes game, int simulations);
+
+	/**
+	 * Gets the number of threads.
+	 *
+	 * @return The number of threads used by each search.
+	 */
+	int getThreads();
+}
@@ -0,0 +1,196 @@
+//package MCTS;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Fixed-size records held outside the Java heap, in segments of memory-mapped file (or direct memory if no
+ * directory is given). Used by ArenaTree to hold its nodes, edges, and table.
+ * <p>
+ * Record i lies in segment i / recordsPerSegment, so records never span segments and a segment is added whenever
+ * a record beyond the current capacity is needed. The segments of a file are consecutive regions of it, and the
+ * file is deleted when the arena is closed. New records read as zero.
+ */
+
+public class TreeArena {
+
+	/**
+	 * The default size of a segment in bytes.
+	 */
+	public static final int SEGMENT_BYTES = 1 << 22;
+
+	/**
+	 * The size of a record in bytes.
+	 */
+	private final int recordBytes;
+
+	/**
+	 * The base-2 logarithm of the number of records in a segment.
+	 */
+	private final int shift;
+
+	/**
+	 * The number of records in a segment minus one.
+	 */
+	private final int mask;
+
+	/**
+	 * The segments, in order.
+	 */
+	private ByteBuffer[] segments = new ByteBuffer[0];
+
+	/**
+	 * The backing file, or null if the segments are direct memory.
+	 */
+	private File file;
+
+	/**
+	 * The open backing file, or null if the segments are direct memory.
+	 */
+	private RandomAccessFile access;
+
+	/**
+	 * Constructor for the TreeArena.
+	 *
+	 * @param recordBytes
+	 *            The size of a record in bytes.
+	 * @param segmentBytes
+	 *            The largest size of a segment in bytes. A segment holds the largest power of two of records which fits.
+	 * @param directory
+	 *            The directory for the backing file, or null to use direct memory.
+	 * @throws IOException
+	 *             If the backing file cannot be created.
+	 */
+	public TreeArena(int recordBytes, int segmentBytes, File directory) throws IOException {
+		this.recordBytes = recordBytes;
+		this.shift = 31 - Integer.numberOfLeadingZeros(Math.max(1, segmentBytes / recordBytes));
+		this.mask = (1 << shift) - 1;
+
+		if (directory != null) {
+			file = File.createTempFile("tree", ".arena", directory);
+			file.deleteOnExit();
+			access = new RandomAccessFile(file, "rw");
+		}
+	}
+
+	/**
+	 * Makes sure records up to a given index exist, adding segments if needed.
+	 *
+	 * @param records
+	 *            The number of records needed.
+	 */
+	public void ensure(long records) {
+		while (getCapacity() < records) {
+			int bytes = recordBytes << shift;
+			ByteBuffer segment;
+
+			if (access == null) {
+				segment = ByteBuffer.allocateDirect(bytes);
+			} else {
+				try {
+					segment = access.getChannel().map(FileChannel.MapMode.READ_WRITE, (long) segments.length * bytes,
+							bytes);
+				} catch (IOException e) {
+					throw new IllegalStateException("cannot grow " + file, e);
+				}
+			}
+
+			ByteBuffer[] grown = new ByteBuffer[segments.length + 1];
+			System.arraycopy(segments, 0, grown, 0, segments.length);
+			grown[segments.length] = segment;
+			segments = grown;
+		}
+	}
+
+	/**
+	 * Gets the number of records which can be held without adding a segment.
+	 *
+	 * @return The capacity in records.
+	 */
+	public long getCapacity() {
+		return (long) segments.length << shift;
+	}
+
+	/**
+	 * Gets the number of bytes held by the segments.
+	 *
+	 * @return The size in bytes.
+	 */
+	public long getBytes() {
+		return getCapacity() * recordBytes;
+	}
+
+	/**
+	 * Gets the size of a record.
+	 *
+	 * @return The size in bytes.
+	 */
+	public int getRecordBytes() {
+		return recordBytes;
+	}
+
+	/**
+	 * Releases the segments and deletes the backing file. The arena must not be used afterwards.
+	 */
+	public void close() {
+		segments = new ByteBuffer[0];
+
+		if (access != null) {
+			try {
+				access.close();
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+
+			file.delete();
+			access = null;
+		}
+	}
+
+	/*
+	 * Field accessors: record is the index of the record and offset the position of the field within it in bytes.
+	 */
+
+	public int getInt(int record, int offset) {
+		return segments[record >>> shift].getInt((record & mask) * recordBytes + offset);
+	}
+
+	public void putInt(int record, int offset, int value) {
+		segments[record >>> shift].putInt((record & mask) * recordBytes + offset, value);
+	}
+
+	public long getLong(int record, int offset) {
+		return segments[record >>> shift].getLong((record & mask) * recordBytes + offset);
+	}
+
+	public void putLong(int record, int offset, long value) {
+		segments[record >>> shift].putLong((record & mask) * recordBytes + offset, value);
+	}
+
+	public double getDouble(int record, int offset) {
+		return segments[record >>> shift].getDouble((record & mask) * recordBytes + offset);
+	}
+
+	public void putDouble(int record, int offset, double value) {
+		segments[record >>> shift].putDouble((record & mask) * recordBytes + offset, value);
+	}
+
+	public short getShort(int record, int offset) {
+		return segments[record >>> shift].getShort((record & mask) * recordBytes + offset);
+	}
+
+	public void putShort(int record, int offset, short value) {
+		segments[record >>> shift].putShort((record & mask) * recordBytes + offset, value);
+	}
+
+	public byte getByte(int record, int offset) {
+		return segments[record >>> shift].get((record & mask) * recordBytes + offset);
+	}
+
+	public void putByte(int record, int offset, byte value) {
+		segments[record >>> shift].put((record & mask) * recordBytes + offset, value);
+	}
+}
@@ -0,0 +1,147 @@
+import java.io.IOException;
+import java.util.Random;
+
+/**
+ * Measures the memory taken per node by each kind of tree: MCTree (objects), FlatTree (flat arrays), and ArenaTree
+ * (records outside the heap, in direct memory here). Each tree is
+ * grown by the same number of walks from the empty board, as in TreeWalkBenchmark: a walk follows getNextAction and
+ * getNode until it leaves the tree, then backs up a random result, so each walk adds one node. The heap in use is
+ * measured after a garbage collection before and after the tree is grown, and the difference is divided by the
+ * number of nodes. For an IdTree, the bytes of its storage in use and allocated per node are also printed; for an
+ * ArenaTree these are outside the heap. The ArenaTree is then compacted to the subtree of the most visited first
+ * move, as after a real move.
+ *
+ * Usage: java TreeMemoryBenchmark [walks] [board size] [c]
+ */
+
+public class TreeMemoryBenchmark {
+
+	public static void main(String[] args) throws IOException {
+		int walks = args.length > 0 ? Integer.parseInt(args[0]) : 200000;
+		int size = args.length > 1 ? Integer.parseInt(args[1]) : 4;
+		double c = args.length > 2 ? Double.parseDouble(args[2]) : 1.4;
+
+		DotsAndBoxes game = new DotsAndBoxes(size, size, false, false);
+
+		MonteCarloTreeSearch.width = size;
+		MonteCarloTreeSearch.height = size;
+		MonteCarloTreeSearch.edges = game.edges;
+
+		/* warm up, so the classes and the code do not count as tree memory */
+		grow(new MCTree(game, new GameState(0)), game.edges, Math.min(walks, 10000), c, new Random(0));
+		grow(new FlatTree(game, new GameState(0), game.stateWords), game.edges, Math.min(walks, 10000), c,
+				new Random(0));
+
+		long before = usedHeap();
+		MCTree tree = new MCTree(game, new GameState(0));
+		grow(tree, game.edges, walks, c, new Random(1));
+		long heap = usedHeap() - before;
+
+		print("object", tree.numNodes, heap);
+
+		tree = null;
+		before = usedHeap();
+		FlatTree flat = new FlatTree(game, new GameState(0), game.stateWords);
+		grow(flat, game.edges, walks, c, new Random(1));
+		heap = usedHeap() - before;
+
+		print("flat", flat.numNodes, heap);
+		printStorage(flat);
+
+		flat = null;
+		before = usedHeap();
+		ArenaTree arena = new ArenaTree(game, new GameState(0), game.stateWords, null);
+		grow(arena, game.edges, walks, c, new Random(1));
+		heap = usedHeap() - before;
+
+		print("arena", arena.numNodes, heap);
+		printStorage(arena);
+
+		int action = arena.getNextAction(arena.root, 0);
+		arena.compact(arena.getNode(arena.root, action, MonteCarloTreeSearch.BEHAVIOR_EXPANSION_ALWAYS));
+
+		System.out.println("  after the move " + action + ":");
+		printStorage(arena);
+		arena.close();
+	}
+
+	/**
+	 * Gets the heap in use after a garbage collection.
+	 *
+	 * @return The number of bytes.
+	 */
+	static long usedHeap() {
+		Runtime runtime = Runtime.getRuntime();
+
+		for (int i = 0; i < 3; i++) {
+			System.gc();
+		}
+
+		return runtime.totalMemory() - runtime.freeMemory();
+	}
+
+	static void print(String kind, int nodes, long heap) {
+		System.out.println(kind + ": " + nodes + " nodes, " + heap + " heap bytes, "
+				+ String.format("%.1f", (double) heap / nodes) + " heap bytes/node");
+	}
+
+	static void printStorage(IdTree tree) {
+		System.out.println("  storage: " + String.format("%.1f", (double) tree.getUsedBytes() / tree.numNodes)
+				+ " used bytes/node, " + String.format("%.1f", (double) tree.getAllocatedBytes() / tree.numNodes)
+				+ " allocated bytes/node (" + tree + ")");
+	}
+
+	/**
+	 * Grows an MCTree by a number of walks.
+	 */
+	static void grow(MCTree tree, int edges, int walks, double c, Random random) {
+		MCNode[] nodes = new MCNode[edges];
+		int[] actions = new int[edges];
+
+		for (int walk = 0; walk < walks; walk++) {
+			int length = 0;
+			MCNode node = tree.root;
+
+			while (node != null && node.links.length > 0) {
+				actions[length] = node.getNextAction(c);
+				nodes[length] = node;
+				length++;
+				node = node.getNode(actions[length - 1], MonteCarloTreeSearch.BEHAVIOR_EXPANSION_STANDARD);
+			}
+
+			int result = random.nextInt(3) - 1;
+
+			for (int i = length - 1; i >= 0; i--) {
+				nodes[i].addValue(actions[i], result);
+				result = -result;
+			}
+		}
+	}
+
+	/**
+	 * Grows an IdTree by a number of walks.
+	 */
+	static void grow(IdTree tree, int edges, int walks, double c, Random random) {
+		int[] nodes = new int[edges];
+		int[] actions = new int[edges];
+
+		for (int walk = 0; walk < walks; walk++) {
+			int length = 0;
+			int node = tree.root;
+
+			while (node != IdTree.NONE && tree.getActionCount(node) > 0) {
+				actions[length] = tree.getNextAction(node, c);
+				nodes[length] = node;
+				length++;
+				node = tree.getNode(node, actions[length - 1], MonteCarloTreeSearch.BEHAVIOR_EXPANSION_STANDARD);
+			}
+
+			int result = random.nextInt(3) - 1;
+
+			for (int i = length - 1; i >= 0; i--) {
+				tree.addValue(nodes[i], actions[i], result);
+				result = -result;
+			}
+		}
+	}
+}
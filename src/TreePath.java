@@ -0,0 +1,267 @@
+//package MCTS;
+
+import java.util.Random;
+
+/**
+ * A path of nodes from a node of a SearchTree down towards the leaves. The game loop keeps a path holding only the
+ * node of the current position, and each simulation walks a path from there (see MonteCarloTreeSearch.select) and
+ * backs up its result to every node on it. Unless stated otherwise, the methods act on the last node of the path.
+ * <p>
+ * A path of an MCTree holds MCNodes and one of an IdTree holds node ids, so the walk and the backup do not depend on
+ * how the nodes are stored. A path is only used by one thread at a time.
+ */
+
+public abstract class TreePath {
+
+	/**
+	 * The number of nodes on the path.
+	 */
+	protected int length;
+
+	/**
+	 * Gets the tree of the path.
+	 *
+	 * @return The tree.
+	 */
+	public abstract SearchTree getTree();
+
+	/**
+	 * Gets the number of nodes on the path.
+	 *
+	 * @return The length.
+	 */
+	public int length() {
+		return length;
+	}
+
+	/**
+	 * Makes the last node of another path of the same tree the only node of this path.
+	 *
+	 * @param position
+	 *            The path.
+	 */
+	public abstract void start(TreePath position);
+
+	/**
+	 * Moves the last node of the path to its start, dropping the others.
+	 */
+	protected abstract void keepLast();
+
+	/**
+	 * Drops the last node of the path.
+	 */
+	public void removeLast() {
+		length--;
+	}
+
+	/**
+	 * Adds the successor of the last node for an action to the path.
+	 *
+	 * @param action
+	 *            An integer representing the action to be made.
+	 * @param behavior
+	 *            Defines under which conditions a node is created.
+	 * @return True if the successor was added, false if there is none (the path is not changed).
+	 */
+	public abstract boolean follow(int action, int behavior);
+
+	/**
+	 * Adds the successor of the last node equal to a state under the symmetries of the board to the path (see
+	 * MCNode.getNode).
+	 *
+	 * @param state
+	 *            The state equivalent to the one needed.
+	 * @param behavior
+	 *            Defines under which conditions a node is created.
+	 * @return True if the successor was added, false if there is none (the path is not changed).
+	 */
+	public abstract boolean follow(GameState state, int behavior);
+
+	/**
+	 * Replaces the path with the successor of its last node for an action. This is how the game loop makes a real
+	 * move.
+	 *
+	 * @param action
+	 *            An integer representing the action to be made.
+	 * @param behavior
+	 *            Defines under which conditions a node is created.
+	 * @return True if the path moved, false if there is no successor (the path is not changed).
+	 */
+	public boolean moveTo(int action, int behavior) {
+		if (!follow(action, behavior)) {
+			return false;
+		}
+
+		keepLast();
+
+		return true;
+	}
+
+	/**
+	 * Replaces the path with the successor of its last node equal to a state under the symmetries of the board.
+	 *
+	 * @param state
+	 *            The state equivalent to the one needed.
+	 * @param behavior
+	 *            Defines under which conditions a node is created.
+	 * @return True if the path moved, false if there is no successor (the path is not changed).
+	 */
+	public boolean moveTo(GameState state, int behavior) {
+		if (!follow(state, behavior)) {
+			return false;
+		}
+
+		keepLast();
+
+		return true;
+	}
+
+	/*---------------------------------- last node ----------------------------------*/
+
+	/**
+	 * Gets the state of the last node.
+	 *
+	 * @return The state (which may be created for the call).
+	 */
+	public abstract GameState getState();
+
+	/**
+	 * Checks whether the board of a position is the state of the last node, without creating the state.
+	 *
+	 * @param context
+	 *            The position.
+	 * @return True if the boards are equal.
+	 */
+	public abstract boolean matches(PlayoutContext context);
+
+	/**
+	 * Gets the depth of the last node.
+	 *
+	 * @return The depth.
+	 */
+	public abstract int getDepth();
+
+	/**
+	 * Gets the number of possible actions of the last node.
+	 *
+	 * @return The number of actions, 0 for a finished game.
+	 */
+	public abstract int getActionCount();
+
+	/**
+	 * Gets the possible actions of the last node.
+	 *
+	 * @return A new array of the actions.
+	 */
+	public abstract int[] getArrayOfActions();
+
+	/**
+	 * Gets the best action from the last node as proven by the endgame solver.
+	 *
+	 * @return The action, or -1 if the node has not been solved.
+	 */
+	public abstract int getSolvedAction();
+
+	/**
+	 * Gets the net score the player to move gains from the last node under perfect play.
+	 *
+	 * @return The value. Only meaningful if the node has been solved.
+	 */
+	public abstract int getSolvedValue();
+
+	/**
+	 * Records the perfect-play value and best action of the last node.
+	 *
+	 * @param value
+	 *            The net score the player to move gains.
+	 * @param action
+	 *            The best action, or -1 if the node could not be solved.
+	 */
+	public abstract void setSolved(int value, int action);
+
+	/**
+	 * Gets the next action from the last node based on the average result Q(s,a) and the uncertainty bonus (see
+	 * MCNode.getNextAction).
+	 *
+	 * @param c
+	 *            The uncertainty constant to be applied when calculating the bonuses of each action.
+	 * @param random
+	 *            The random number generator used during ties.
+	 * @return An integer representing the action selected.
+	 */
+	public abstract int getNextAction(double c, Random random);
+
+	/**
+	 * Marks an action of the last node as being tried by this walk, so other walks prefer other actions until its
+	 * result is backed up (see MCNode.addVirtualLoss).
+	 *
+	 * @param action
+	 *            An integer representing the action selected.
+	 */
+	public abstract void addVirtualLoss(int action);
+
+	/**
+	 * Describes the actions of a node of the path for the error file.
+	 *
+	 * @param index
+	 *            The index of the node on the path.
+	 * @param c
+	 *            The uncertainty constant.
+	 * @return A line for each action with its times chosen, rewards, and bonus.
+	 */
+	public abstract String describeActions(int index, double c);
+
+	/*---------------------------------- backup ----------------------------------*/
+
+	/**
+	 * Adds a reward to an action of a node of the path (see MCNode.addValue).
+	 *
+	 * @param index
+	 *            The index of the node on the path.
+	 * @param action
+	 *            An integer representing the action selected.
+	 * @param value
+	 *            The reward to be added.
+	 */
+	public abstract void addValue(int index, int action, int value);
+
+	/**
+	 * Adds the results of several playouts to an action of a node of the path (see MCNode.addValues).
+	 *
+	 * @param index
+	 *            The index of the node on the path.
+	 * @param action
+	 *            An integer representing the action selected.
+	 * @param total
+	 *            The sum of the rewards to be added.
+	 * @param count
+	 *            The number of rewards.
+	 */
+	public abstract void addValues(int index, int action, int total, int count);
+
+	/**
+	 * Adds a reward to an action of a node of the path and removes the virtual loss of this walk, while other
+	 * threads may back up results to the node (see MCNode.addSharedValue).
+	 *
+	 * @param index
+	 *            The index of the node on the path.
+	 * @param action
+	 *            An integer representing the action selected.
+	 * @param value
+	 *            The reward to be added.
+	 */
+	public abstract void addSharedValue(int index, int action, int value);
+
+	/**
+	 * Adds a reward to an action of a node of the path and removes the virtual loss of this walk, from the only
+	 * thread which backs up results (see MCNode.addPipelinedValue).
+	 *
+	 * @param index
+	 *            The index of the node on the path.
+	 * @param action
+	 *            An integer representing the action selected.
+	 * @param value
+	 *            The reward to be added.
+	 */
+	public abstract void addPipelinedValue(int index, int action, int value);
+}
@@ -0,0 +1,73 @@
+import java.util.Random;
+
+/**
+ * Measures the tree walk of a simulation (selection, expansion, and backup, without the playout) on an MCTree. Each
+ * walk follows getNextAction and getNode from the root until it leaves the tree, then backs up a random result
+ * along the path with addValue. The tree grows by one node per walk, so later walks are longer.
+ *
+ * Usage: java TreeWalkBenchmark [walks per round] [rounds] [board size] [c]
+ */
+
+public class TreeWalkBenchmark {
+
+	public static void main(String[] args) {
+		int walks = args.length > 0 ? Integer.parseInt(args[0]) : 200000;
+		int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+		int size = args.length > 2 ? Integer.parseInt(args[2]) : 5;
+		double c = args.length > 3 ? Double.parseDouble(args[3]) : 1.4;
+
+		DotsAndBoxes game = new DotsAndBoxes(size, size, false, false);
+		Random random = new Random(1);
+
+		for (int round = 0; round < rounds; round++) {
+			MCTree tree = new MCTree(game, new GameState(0));
+			MCNode.r = new Random(round);
+
+			long begin = System.nanoTime();
+			long steps = 0;
+
+			for (int i = 0; i < walks; i++) {
+				steps += walk(tree, game.edges, c, random);
+			}
+
+			double elapsed = (System.nanoTime() - begin) / 1e9;
+
+			System.out.println(size + "x" + size + " round " + round + ": "
+					+ String.format("%.0f", walks / elapsed) + " walks/s, "
+					+ String.format("%.1f", elapsed * 1e9 / steps) + " ns/step, " + tree.numNodes + " nodes, "
+					+ String.format("%.2f", (double) steps / walks) + " steps/walk");
+		}
+	}
+
+	/**
+	 * Walks the tree from the root until it leaves the tree, then backs up a random result.
+	 *
+	 * @param tree The tree.
+	 * @param edges The number of edges on the board.
+	 * @param c The uncertainty constant.
+	 * @param random The source of the results.
+	 * @return The number of nodes on the path.
+	 */
+	private static int walk(MCTree tree, int edges, double c, Random random) {
+		MCNode[] nodes = new MCNode[edges];
+		int[] actions = new int[edges];
+		int length = 0;
+		MCNode node = tree.root;
+
+		while (node != null && node.links.length > 0) {
+			actions[length] = node.getNextAction(c);
+			nodes[length] = node;
+			length++;
+			node = node.getNode(actions[length - 1], MonteCarloTreeSearch.BEHAVIOR_EXPANSION_STANDARD);
+		}
+
+		int result = random.nextInt(3) - 1;
+
+		for (int i = length - 1; i >= 0; i--) {
+			nodes[i].addValue(actions[i], result);
+			result = -result;
+		}
+
+		return length;
+	}
+}
@@ -0,0 +1,85 @@
+//package MCTS;
+
+/**
+ * Zobrist keys for states. Every bit of a state has a fixed random 64-bit key, and the key of a state is the XOR of
+ * the keys of its set bits (and of its net score for scored states). Setting a bit therefore updates the key with a
+ * single XOR, so successors can be keyed in constant time at any board size.
+ * <p>
+ * The keys are generated from a fixed seed, so they are identical in every process and every run.
+ */
+
+public class Zobrist {
+
+	/**
+	 * The largest number of bits which can be keyed. Enough for a 15x15 board.
+	 */
+	public static final int MAX_BITS = 512;
+
+	/**
+	 * The key of each bit of a state.
+	 */
+	private static final long[] BIT_KEYS = new long[MAX_BITS];
+
+	/**
+	 * The seed from which the net score keys are derived.
+	 */
+	private static final long SCORE_SEED;
+
+	static {
+		/* splitmix64 from a fixed seed */
+		long seed = 0x2545f4914f6cdd1dL;
+
+		for (int i = 0; i < MAX_BITS; i++) {
+			seed += 0x9e3779b97f4a7c15L;
+			BIT_KEYS[i] = GameState.mix(seed);
+		}
+
+		seed += 0x9e3779b97f4a7c15L;
+		SCORE_SEED = GameState.mix(seed);
+	}
+
+	/**
+	 * Gets the key of a single bit.
+	 * 
+	 * @param index
+	 *            The index of the bit (0 is the least significant).
+	 * @return The key of the bit.
+	 */
+	public static long bitKey(int index) {
+		return BIT_KEYS[index];
+	}
+
+	/**
+	 * Gets the key of a net score. A score of zero has a key of zero, so an unscored state and a scored state with
+	 * no net score have the same key.
+	 * 
+	 * @param score
+	 *            The net score.
+	 * @return The key of the score.
+	 */
+	public static long scoreKey(int score) {
+		return score == 0 ? 0 : GameState.mix(SCORE_SEED + score);
+	}
+
+	/**
+	 * Computes the key of the bits of a state from scratch.
+	 * 
+	 * @param state
+	 *            The state to key.
+	 * @return The XOR of the keys of every set bit of the state.
+	 */
+	public static long bitsKey(GameState state) {
+		long key = 0;
+
+		for (int w = 0; w < state.getWordCount(); w++) {
+			long word = state.getWord(w);
+
+			while (word != 0) {
+				key ^= BIT_KEYS[(w << 6) + Long.numberOfTrailingZeros(word)];
+				word &= word - 1;
+			}
+		}
+
+		return key;
+	}
+}